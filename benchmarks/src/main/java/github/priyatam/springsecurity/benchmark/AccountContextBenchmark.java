@@ -0,0 +1,76 @@
+package github.priyatam.springsecurity.benchmark;
+
+import github.priyatam.springsecurity.domain.AccountContext;
+import github.priyatam.springsecurity.domain.RoleSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AccountContext role checks across role-set sizes. The required roles are the last half of the
+ * user's roles plus one missing role, so that hasAllRoles fails late and hasAnyRole succeeds late.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AccountContextBenchmark {
+
+    @Param({"4", "16", "64"})
+    public int roleCount;
+
+    private AccountContext accountContext;
+    private String lastRole;
+    private String[] required;
+    private RoleSet requiredSet;
+
+    @Setup
+    public void setUp() {
+        List<String> roles = Fixtures.roleNames(roleCount);
+        accountContext = new AccountContext();
+        accountContext.setRoles(roles);
+
+        lastRole = roles.get(roleCount - 1).toLowerCase();
+        List<String> half = roles.subList(roleCount / 2, roleCount);
+        required = half.toArray(new String[half.size() + 1]);
+        required[half.size()] = "ROLE_MISSING";
+        requiredSet = RoleSet.of(required);
+    }
+
+    @Benchmark
+    public boolean hasRole() {
+        return accountContext.hasRole(lastRole);
+    }
+
+    @Benchmark
+    public boolean hasAllRoles() {
+        return accountContext.hasAllRoles(required);
+    }
+
+    @Benchmark
+    public boolean hasAnyRole() {
+        return accountContext.hasAnyRole(required);
+    }
+
+    @Benchmark
+    public boolean hasNoRole() {
+        return accountContext.hasNoRole(required);
+    }
+
+    @Benchmark
+    public boolean hasAllRolesPrecompiled() {
+        return accountContext.hasAllRoles(requiredSet);
+    }
+
+    @Benchmark
+    public boolean hasAnyRolePrecompiled() {
+        return accountContext.hasAnyRole(requiredSet);
+    }
+}
@@ -0,0 +1,124 @@
+package github.priyatam.springsecurity.benchmark;
+
+import github.priyatam.springsecurity.cache.AccountCache;
+import github.priyatam.springsecurity.cache.UnknownUserCache;
+import github.priyatam.springsecurity.domain.Role;
+import github.priyatam.springsecurity.domain.User;
+import github.priyatam.springsecurity.utils.AccountContextSupport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AccountContextSupport.obtainAccount against an embedded H2 database, with a cold and a warm
+ * account cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AccountContextSupportBenchmark {
+
+    private static final int USER_COUNT = 1000;
+
+    @Param({"8"})
+    public int roleCount;
+
+    private EntityManagerFactory entityManagerFactory;
+
+    @Setup(Level.Trial)
+    public void createDatabase() {
+        entityManagerFactory = Persistence.createEntityManagerFactory("benchmark");
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        entityManager.getTransaction().begin();
+
+        List<Role> roles = new ArrayList<Role>();
+        for (String roleName : Fixtures.roleNames(roleCount)) {
+            Role role = new Role(roleName);
+            entityManager.persist(role);
+            roles.add(role);
+        }
+        for (int i = 0; i < USER_COUNT; i++) {
+            User user = new User("secret", "user" + i);
+            for (Role role : roles) {
+                user.addRole(role);
+            }
+            entityManager.persist(user);
+        }
+
+        entityManager.getTransaction().commit();
+        entityManager.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void dropDatabase() {
+        entityManagerFactory.close();
+    }
+
+    /**
+     * One AccountContextSupport, and its EntityManager, per benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class Support {
+        AccountContextSupport accountContextSupport;
+        AccountCache accountCache;
+        EntityManager entityManager;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp(AccountContextSupportBenchmark benchmark) {
+            entityManager = benchmark.entityManagerFactory.createEntityManager();
+            accountCache = new AccountCache();
+            accountCache.initialize();
+            accountContextSupport = new AccountContextSupport();
+            ReflectionTestUtils.setField(accountContextSupport, "entityManager", entityManager);
+            ReflectionTestUtils.setField(accountContextSupport, "accountCache", accountCache);
+            UnknownUserCache unknownUserCache = new UnknownUserCache();
+            unknownUserCache.initialize();
+            ReflectionTestUtils.setField(accountContextSupport, "unknownUserCache", unknownUserCache);
+
+            // warm the cache for obtainAccountCached
+            for (int i = 0; i < USER_COUNT; i++) {
+                accountContextSupport.obtainAccount(nextUsername());
+            }
+            entityManager.clear();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            entityManager.close();
+        }
+
+        String nextUsername() {
+            next = (next + 1) % USER_COUNT;
+            return "user" + next;
+        }
+    }
+
+    @Benchmark
+    public User obtainAccountUncached(Support support) {
+        String username = support.nextUsername();
+        support.accountCache.invalidate(username);
+        support.entityManager.clear();
+        return support.accountContextSupport.obtainAccount(username);
+    }
+
+    @Benchmark
+    public User obtainAccountCached(Support support) {
+        return support.accountContextSupport.obtainAccount(support.nextUsername());
+    }
+}
@@ -0,0 +1,81 @@
+package github.priyatam.springsecurity.benchmark;
+
+import github.priyatam.springsecurity.waffle.CustomAuthenticationFilter;
+import github.priyatam.springsecurity.waffle.CustomAuthenticationTokenFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import waffle.servlet.spi.SecurityFilterProvider;
+import waffle.servlet.spi.SecurityFilterProviderCollection;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CustomAuthenticationFilter.doFilter with a Negotiate handshake completing at once: measures header
+ * parsing, WindowsPrincipal construction, role load (stubbed) and token publication.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AuthenticationFilterBenchmark {
+
+    @Param({"4", "32"})
+    public int groupCount;
+
+    @Param({"0", "300"})
+    public long authenticationMaxAge;
+
+    private CustomAuthenticationFilter filter;
+    private CustomAuthenticationTokenFactory tokenFactory;
+
+    private static final FilterChain NO_OP_CHAIN = new FilterChain() {
+        public void doFilter(ServletRequest request, ServletResponse response) {
+        }
+    };
+
+    @Setup
+    public void setUp() {
+        StubWindowsIdentity identity = new StubWindowsIdentity(Fixtures.DOMAIN, "jdoe", groupCount);
+
+        tokenFactory = new CustomAuthenticationTokenFactory();
+        tokenFactory.setAccountContextSupport(new StubAccountContextSupport("jdoe", 8));
+        tokenFactory.initialize();
+
+        filter = new CustomAuthenticationFilter();
+        filter.setProvider(new SecurityFilterProviderCollection(
+                new SecurityFilterProvider[]{new StubSecurityFilterProvider(identity)}));
+        filter.setPrincipalFormat("fqn");
+        filter.setRoleFormat("both");
+        filter.setAllowGuestLogin(false);
+        filter.setAuthenticationMaxAge(authenticationMaxAge);
+        filter.setTokenFactory(tokenFactory);
+    }
+
+    @TearDown
+    public void tearDown() {
+        tokenFactory.destroy();
+        SecurityContextHolder.clearContext();
+    }
+
+    @Benchmark
+    public Object doFilter() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/app/home");
+        request.addHeader("Authorization", "Negotiate TlRMTVNTUAABAAAAB4IIogAAAAAAAAAAAAAAAAAAAAAGAbEdAAAADw==");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, NO_OP_CHAIN);
+        return SecurityContextHolder.getContext().getAuthentication();
+    }
+}
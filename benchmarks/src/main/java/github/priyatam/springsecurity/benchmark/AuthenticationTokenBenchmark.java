@@ -0,0 +1,63 @@
+package github.priyatam.springsecurity.benchmark;
+
+import github.priyatam.springsecurity.spring.SpringSecurityContext;
+import github.priyatam.springsecurity.waffle.CustomAuthenticationToken;
+import github.priyatam.springsecurity.waffle.CustomAuthenticationTokenFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.security.core.GrantedAuthority;
+import waffle.servlet.WindowsPrincipal;
+import waffle.windows.auth.PrincipalFormat;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CustomAuthenticationToken construction, with and without the WindowsPrincipal and role load.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AuthenticationTokenBenchmark {
+
+    @Param({"4", "32"})
+    public int roleCount;
+
+    private StubWindowsIdentity identity;
+    private WindowsPrincipal principal;
+    private Collection<GrantedAuthority> authorities;
+    private CustomAuthenticationTokenFactory tokenFactory;
+
+    @Setup
+    public void setUp() {
+        identity = new StubWindowsIdentity(Fixtures.DOMAIN, "jdoe", roleCount);
+        principal = new WindowsPrincipal(identity, PrincipalFormat.fqn, PrincipalFormat.both);
+        authorities = SpringSecurityContext.toGrantedAuthorities(Fixtures.roleNames(roleCount));
+
+        tokenFactory = new CustomAuthenticationTokenFactory();
+        tokenFactory.setAccountContextSupport(new StubAccountContextSupport("jdoe", roleCount));
+        tokenFactory.initialize();
+    }
+
+    @TearDown
+    public void tearDown() {
+        tokenFactory.destroy();
+    }
+
+    @Benchmark
+    public CustomAuthenticationToken newToken() {
+        return new CustomAuthenticationToken(principal, authorities);
+    }
+
+    @Benchmark
+    public CustomAuthenticationToken createToken() {
+        return tokenFactory.createToken(identity, PrincipalFormat.fqn, PrincipalFormat.both);
+    }
+}
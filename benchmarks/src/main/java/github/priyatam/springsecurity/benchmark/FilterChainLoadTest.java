@@ -0,0 +1,275 @@
+package github.priyatam.springsecurity.benchmark;
+
+import github.priyatam.springsecurity.metrics.LatencyHistogram;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.codec.Base64;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test of the whole Spring Security filter chain of waffle-security-filter.xml, without Win32 nor Db: the
+ * Windows provider is a {@link FixtureWindowsAuthProvider} and the roles come from a {@link StubAccountContextSupport}
+ * (see load-test.xml).
+ * <p/>
+ * N concurrent clients, each with its own address, log in over and over on a new connection: a two-leg Negotiate
+ * handshake or a Basic logon. Reports the handshake throughput, the p50/p99 latencies and the errors (any
+ * unexpected status or exception). Options, with their defaults:
+ * <pre>
+ * -clients 16 -duration 30 -warmup 5 (seconds) -scheme mixed (negotiate, basic or mixed)
+ * -users 1000 -groups 16 (synthetic users and groups per user; -users 0 keeps the fixture users)
+ * -latency 0 -jitter 0 (ms per provider call) -failureRate 0 (0..1 per provider call)
+ * </pre>
+ */
+public class FilterChainLoadTest {
+
+    private static final String NTLM_TYPE1 = "TlRMTVNTUAABAAAAB4IIogAAAAAAAAAAAAAAAAAAAAAGAbEdAAAADw==";
+
+    private final Filter filterChain;
+    private final List<String[]> credentials;
+    private final String scheme;
+
+    private final LatencyHistogram negotiateLatency = new LatencyHistogram();
+    private final LatencyHistogram basicLatency = new LatencyHistogram();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final ConcurrentMap<String, AtomicLong> errorCounts = new ConcurrentHashMap<String, AtomicLong>();
+    private final AtomicInteger ports = new AtomicInteger();
+
+    private volatile boolean running = true;
+
+    public FilterChainLoadTest(Filter filterChain, List<String[]> credentials, String scheme) {
+        this.filterChain = filterChain;
+        this.credentials = credentials;
+        this.scheme = scheme;
+    }
+
+    public static void main(String[] args) throws Exception {
+        // before any logger is created
+        if (System.getProperty("logback.configurationFile") == null) {
+            System.setProperty("logback.configurationFile", "logback-load-test.xml");
+        }
+
+        Map<String, String> options = new HashMap<String, String>();
+        options.put("clients", "16");
+        options.put("duration", "30");
+        options.put("warmup", "5");
+        options.put("scheme", "mixed");
+        options.put("users", "1000");
+        options.put("groups", "16");
+        options.put("latency", "0");
+        options.put("jitter", "0");
+        options.put("failureRate", "0");
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("-") || !options.containsKey(args[i].substring(1))) {
+                System.err.println("Unknown option " + args[i]);
+                System.exit(1);
+            }
+            options.put(args[i].substring(1), args[i + 1]);
+        }
+
+        ClassPathXmlApplicationContext context = new ClassPathXmlApplicationContext(
+                "META-INF/spring/waffle-security-filter.xml", "META-INF/spring/load-test.xml");
+        try {
+            FixtureWindowsAuthProvider provider = context.getBean("waffleWindowsAuthProvider", FixtureWindowsAuthProvider.class);
+            List<String[]> credentials = createUsers(provider, Integer.parseInt(options.get("users")),
+                    Integer.parseInt(options.get("groups")));
+            provider.setLatency(Long.parseLong(options.get("latency")));
+            provider.setLatencyJitter(Long.parseLong(options.get("jitter")));
+            provider.setFailureRate(Double.parseDouble(options.get("failureRate")));
+
+            FilterChainLoadTest loadTest = new FilterChainLoadTest(
+                    context.getBean("springSecurityFilterChain", Filter.class), credentials, options.get("scheme"));
+            System.out.println("Load test of the filter chain: " + options);
+            loadTest.run(Integer.parseInt(options.get("clients")), Integer.parseInt(options.get("warmup")),
+                    Integer.parseInt(options.get("duration")));
+        } finally {
+            context.close();
+        }
+    }
+
+    /**
+     * Add synthetic users to the provider, or use the fixture users when <code>count</code> is 0.
+     * Returns the username and password pairs the clients log in with.
+     */
+    static List<String[]> createUsers(FixtureWindowsAuthProvider provider, int count, int groupsPerUser) {
+        List<String[]> credentials = new ArrayList<String[]>();
+        if (count == 0) {
+            credentials.add(new String[]{"csr", "csr"});
+            credentials.add(new String[]{"ops", "ops"});
+            credentials.add(new String[]{"supervisor", "supervisor"});
+            credentials.add(new String[]{"manager", "manager"});
+            return credentials;
+        }
+
+        String[] groupNames = new String[groupsPerUser];
+        for (int i = 0; i < groupsPerUser; i++) {
+            groupNames[i] = "loadgroup" + i;
+            provider.addGroup(groupNames[i], 5000 + i);
+        }
+        for (int i = 0; i < count; i++) {
+            provider.addUser("loaduser" + i, "password" + i, 10000 + i, false, groupNames);
+            credentials.add(new String[]{"loaduser" + i, "password" + i});
+        }
+        return credentials;
+    }
+
+    public void run(int clients, int warmupSeconds, int durationSeconds) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(clients);
+        for (int i = 0; i < clients; i++) {
+            final String address = "10.0." + (i / 250) + "." + (i % 250 + 1);
+            new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        while (running) {
+                            login(address);
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "client-" + i).start();
+        }
+
+        TimeUnit.SECONDS.sleep(warmupSeconds);
+        reset();
+        long start = System.nanoTime();
+        TimeUnit.SECONDS.sleep(durationSeconds);
+        long elapsed = System.nanoTime() - start;
+        report(clients, elapsed);
+
+        running = false;
+        done.await();
+    }
+
+    private void login(String address) {
+        String[] user = credentials.get(ThreadLocalRandom.current().nextInt(credentials.size()));
+        boolean negotiate = "negotiate".equals(scheme)
+                || (!"basic".equals(scheme) && ThreadLocalRandom.current().nextBoolean());
+        int port = 1024 + (ports.incrementAndGet() & 0x7fff);
+
+        long start = System.nanoTime();
+        try {
+            String error = negotiate ? negotiate(address, port, user) : basic(address, port, user);
+            if (error != null) {
+                error(error);
+            } else {
+                (negotiate ? negotiateLatency : basicLatency).record(System.nanoTime() - start);
+            }
+        } catch (Exception e) {
+            error((negotiate ? "negotiate" : "basic") + ": " + e.getClass().getSimpleName() + " " + e.getMessage());
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+
+    /**
+     * Returns the error of the handshake, or null if the client got through the filter chain.
+     */
+    private String negotiate(String address, int port, String[] user) throws Exception {
+        MockHttpServletResponse response = send(address, port, "Negotiate " + NTLM_TYPE1);
+        if (response.getStatus() != 401) {
+            return "negotiate leg 1: status " + response.getStatus();
+        }
+        byte[] challenge = null;
+        for (Object header : response.getHeaders("WWW-Authenticate")) {
+            String value = String.valueOf(header);
+            if (value.startsWith("Negotiate ")) {
+                challenge = Base64.decode(value.substring(10).getBytes("UTF-8"));
+            }
+        }
+        if (challenge == null) {
+            return "negotiate leg 1: status 401 without challenge";
+        }
+
+        byte[] token = FixtureWindowsAuthProvider.authenticateToken(user[0], user[1], challenge);
+        response = send(address, port, "Negotiate " + new String(Base64.encode(token), "UTF-8"));
+        return response.getStatus() == 200 ? null : "negotiate leg 2: status " + response.getStatus();
+    }
+
+    private String basic(String address, int port, String[] user) throws Exception {
+        String token = new String(Base64.encode((user[0] + ":" + user[1]).getBytes("UTF-8")), "UTF-8");
+        MockHttpServletResponse response = send(address, port, "Basic " + token);
+        return response.getStatus() == 200 ? null : "basic: status " + response.getStatus();
+    }
+
+    private MockHttpServletResponse send(String address, int port, String authorization) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/app/home");
+        request.setServletPath("/app/home");
+        request.setRemoteAddr(address);
+        request.setRemotePort(port);
+        request.addHeader("Authorization", authorization);
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+
+        requests.incrementAndGet();
+        filterChain.doFilter(request, response, new FilterChain() {
+            public void doFilter(ServletRequest request, ServletResponse response) {
+            }
+        });
+        return response;
+    }
+
+    private void error(String error) {
+        errors.incrementAndGet();
+        AtomicLong count = errorCounts.get(error);
+        if (count == null) {
+            AtomicLong created = new AtomicLong();
+            count = errorCounts.putIfAbsent(error, created);
+            if (count == null) {
+                count = created;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    private void reset() {
+        negotiateLatency.reset();
+        basicLatency.reset();
+        requests.set(0);
+        errors.set(0);
+        errorCounts.clear();
+    }
+
+    private void report(int clients, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        long logins = negotiateLatency.getCount() + basicLatency.getCount();
+        long attempts = logins + errors.get();
+
+        System.out.println(String.format("%d clients, %.1f s", clients, seconds));
+        System.out.println(String.format("logins    %10d  %10.1f/s", logins, logins / seconds));
+        System.out.println(String.format("requests  %10d  %10.1f/s", requests.get(), requests.get() / seconds));
+        report("negotiate", negotiateLatency);
+        report("basic", basicLatency);
+        System.out.println(String.format("errors    %10d  %9.3f%%", errors.get(),
+                attempts == 0 ? 0 : 100.0 * errors.get() / attempts));
+        for (Map.Entry<String, AtomicLong> error : new TreeMap<String, AtomicLong>(errorCounts).entrySet()) {
+            System.out.println(String.format("  %10d  %s", error.getValue().get(), error.getKey()));
+        }
+    }
+
+    private static void report(String name, LatencyHistogram histogram) {
+        if (histogram.getCount() == 0) {
+            return;
+        }
+        System.out.println(String.format("%-9s %10d  p50 %8.3f ms  p99 %8.3f ms  max %8.3f ms", name,
+                histogram.getCount(), histogram.getPercentile(0.5) / 1e6, histogram.getPercentile(0.99) / 1e6,
+                histogram.getMax() / 1e6));
+    }
+}
@@ -0,0 +1,69 @@
+package github.priyatam.springsecurity.benchmark;
+
+import com.sun.jna.platform.win32.Sspi.CtxtHandle;
+import com.sun.jna.platform.win32.Sspi.SecBufferDesc;
+import waffle.windows.auth.IWindowsIdentity;
+import waffle.windows.auth.IWindowsImpersonationContext;
+import waffle.windows.auth.IWindowsSecurityContext;
+
+/**
+ * Result of a {@link FixtureWindowsAuthProvider} handshake leg: either a continue token (the challenge) or the
+ * authenticated identity. There is no SSPI handle behind it.
+ */
+class FixtureSecurityContext implements IWindowsSecurityContext {
+
+    private final String securityPackage;
+    private final byte[] token;
+    private final IWindowsIdentity identity;
+
+    FixtureSecurityContext(String securityPackage, byte[] token, IWindowsIdentity identity) {
+        this.securityPackage = securityPackage;
+        this.token = token;
+        this.identity = identity;
+    }
+
+    public String getSecurityPackage() {
+        return securityPackage;
+    }
+
+    public byte[] getToken() {
+        return token;
+    }
+
+    public boolean getContinue() {
+        return identity == null;
+    }
+
+    /**
+     * Same as {@link #getContinue()}, the name used by later Waffle versions.
+     */
+    public boolean isContinue() {
+        return getContinue();
+    }
+
+    public CtxtHandle getHandle() {
+        return null;
+    }
+
+    public String getPrincipalName() {
+        return identity != null ? identity.getFqn() : null;
+    }
+
+    public IWindowsIdentity getIdentity() {
+        return identity;
+    }
+
+    public IWindowsImpersonationContext impersonate() {
+        if (identity == null) {
+            throw new IllegalStateException("The handshake is not complete");
+        }
+        return identity.impersonate();
+    }
+
+    public void dispose() {
+    }
+
+    public void initialize(CtxtHandle continueCtx, SecBufferDesc continueToken, String targetName) {
+        throw new UnsupportedOperationException("Client-side security contexts are not supported");
+    }
+}
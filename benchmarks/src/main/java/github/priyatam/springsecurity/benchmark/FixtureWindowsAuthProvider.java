@@ -0,0 +1,337 @@
+package github.priyatam.springsecurity.benchmark;
+
+import github.priyatam.springsecurity.waffle.CustomAuthenticationToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.io.Resource;
+import waffle.windows.auth.IWindowsAccount;
+import waffle.windows.auth.IWindowsAuthProvider;
+import waffle.windows.auth.IWindowsComputer;
+import waffle.windows.auth.IWindowsDomain;
+import waffle.windows.auth.IWindowsIdentity;
+import waffle.windows.auth.IWindowsSecurityContext;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Pure-Java stand-in for WindowsAuthProviderImpl, for the load tests without Win32: the users,
+ * groups and SIDs come from a fixture file, and each call can be slowed down or failed on purpose.
+ * <p/>
+ * The fixture is a properties file:
+ * <pre>
+ * domain=LDAP_DOMAIN
+ * domainSid=S-1-5-21-1004336348-1177238915-682003330
+ * group.&lt;name&gt;=&lt;relative id&gt;
+ * user.&lt;name&gt;=&lt;password&gt;;&lt;relative id&gt;;&lt;group&gt;,&lt;group&gt;...[;guest]
+ * </pre>
+ * Basic logons check the password. Negotiate and NTLM handshakes take two legs on the same connection: the
+ * first token, whatever its content, is answered with a continue token carrying a random challenge, and the
+ * second one must be {@link #authenticateToken(String, String, byte[])} of that challenge.
+ */
+public class FixtureWindowsAuthProvider implements IWindowsAuthProvider, InitializingBean {
+
+    Logger logger = LoggerFactory.getLogger(FixtureWindowsAuthProvider.class);
+
+    private static final String LOGON_FAILURE = "Logon failure: unknown user name or bad password.";
+
+    private Resource fixture;
+    private String domain = CustomAuthenticationToken.LDAP_DOMAIN;
+    private String domainSid = "S-1-5-21-1004336348-1177238915-682003330";
+    private long latency = 0;
+    private long latencyJitter = 0;
+    private double failureRate = 0;
+
+    private final Map<String, FixtureWindowsIdentity.Account> groups = new ConcurrentHashMap<String, FixtureWindowsIdentity.Account>();
+    private final Map<String, FixtureUser> users = new ConcurrentHashMap<String, FixtureUser>();
+    private final ConcurrentMap<String, byte[]> challenges = new ConcurrentHashMap<String, byte[]>();
+
+    public void afterPropertiesSet() throws IOException {
+        if (fixture == null) {
+            return;
+        }
+
+        Properties properties = new Properties();
+        InputStream in = fixture.getInputStream();
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+
+        domain = properties.getProperty("domain", domain);
+        domainSid = properties.getProperty("domainSid", domainSid);
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith("group.")) {
+                addGroup(key.substring(6), Long.parseLong(properties.getProperty(key).trim()));
+            }
+        }
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith("user.")) {
+                String[] fields = properties.getProperty(key).split(";", -1);
+                if (fields.length < 2) {
+                    throw new IllegalArgumentException("Invalid fixture user " + key + " in " + fixture.getDescription());
+                }
+                String[] groupNames = fields.length > 2 && fields[2].trim().length() > 0
+                        ? fields[2].trim().split("\\s*,\\s*") : new String[0];
+                boolean guest = fields.length > 3 && "guest".equalsIgnoreCase(fields[3].trim());
+                addUser(key.substring(5), fields[0], Long.parseLong(fields[1].trim()), guest, groupNames);
+            }
+        }
+        logger.info("Loaded " + users.size() + " users and " + groups.size() + " groups of domain " + domain
+                + " from " + fixture.getDescription());
+    }
+
+    /**
+     * Add a group to the fixture; its SID is the domain SID followed by the relative id.
+     */
+    public void addGroup(String name, long relativeId) {
+        groups.put(key(name), new FixtureWindowsIdentity.Account(domain, name, domainSid + "-" + relativeId));
+    }
+
+    /**
+     * Add a user to the fixture, member of the passed groups, which must have been added before.
+     */
+    public void addUser(String name, String password, long relativeId, boolean guest, String... groupNames) {
+        IWindowsAccount[] memberOf = new IWindowsAccount[groupNames.length];
+        for (int i = 0; i < groupNames.length; i++) {
+            memberOf[i] = groups.get(key(groupNames[i]));
+            if (memberOf[i] == null) {
+                throw new IllegalArgumentException("Unknown group " + groupNames[i] + " of user " + name);
+            }
+        }
+        FixtureWindowsIdentity.Account account = new FixtureWindowsIdentity.Account(domain, name, domainSid + "-" + relativeId);
+        users.put(key(name), new FixtureUser(password, new FixtureWindowsIdentity(account, memberOf, guest)));
+    }
+
+    public IWindowsSecurityContext acceptSecurityToken(String connectionId, byte[] token, String securityPackage) {
+        simulateCall("AcceptSecurityContext");
+
+        String message = toString(token);
+        int colon = message.indexOf(':');
+        if (colon < 0) {
+            // first leg: challenge the client
+            byte[] challenge = new byte[8];
+            ThreadLocalRandom.current().nextBytes(challenge);
+            challenges.put(connectionId, challenge);
+            return new FixtureSecurityContext(securityPackage, challenge, null);
+        }
+
+        byte[] challenge = challenges.remove(connectionId);
+        if (challenge == null) {
+            throw new RuntimeException("The token supplied to the function is invalid (no handshake on connection "
+                    + connectionId + ")");
+        }
+        FixtureUser user = users.get(key(message.substring(0, colon)));
+        if (user == null || !MessageDigest.isEqual(toBytes(response(user.password, challenge)),
+                toBytes(message.substring(colon + 1)))) {
+            throw new RuntimeException("The logon attempt failed");
+        }
+        return new FixtureSecurityContext(securityPackage, null, user.identity);
+    }
+
+    public void resetSecurityToken(String connectionId) {
+        challenges.remove(connectionId);
+    }
+
+    public IWindowsIdentity logonUser(String username, String password) {
+        simulateCall("LogonUser");
+
+        FixtureUser user = users.get(key(username));
+        if (user == null || !MessageDigest.isEqual(toBytes(user.password), toBytes(password))) {
+            throw new RuntimeException(LOGON_FAILURE);
+        }
+        return user.identity;
+    }
+
+    public IWindowsIdentity logonDomainUser(String username, String domain, String password) {
+        return logonUser(username, password);
+    }
+
+    public IWindowsIdentity logonDomainUserEx(String username, String domain, String password, int logonType,
+                                              int logonProvider) {
+        return logonUser(username, password);
+    }
+
+    public IWindowsAccount lookupAccount(String username) {
+        simulateCall("LookupAccountName");
+
+        FixtureUser user = users.get(key(username));
+        if (user != null) {
+            return user.identity.getAccount();
+        }
+        IWindowsAccount group = groups.get(key(username));
+        if (group == null) {
+            throw new RuntimeException("No mapping between account names and security IDs was done.");
+        }
+        return group;
+    }
+
+    public IWindowsComputer getCurrentComputer() {
+        final List<String> groupNames = new ArrayList<String>();
+        for (IWindowsAccount group : groups.values()) {
+            groupNames.add(group.getFqn());
+        }
+        return new IWindowsComputer() {
+            public String getComputerName() {
+                return "FIXTURE";
+            }
+
+            public String getJoinStatus() {
+                return "NetSetupDomainName";
+            }
+
+            public String getMemberOf() {
+                return domain;
+            }
+
+            public String[] getGroups() {
+                return groupNames.toArray(new String[groupNames.size()]);
+            }
+        };
+    }
+
+    public IWindowsDomain[] getDomains() {
+        return new IWindowsDomain[]{new IWindowsDomain() {
+            public String getFqn() {
+                return domain;
+            }
+
+            public String getTrustDirectionString() {
+                return "Bidirectional";
+            }
+
+            public String getTrustTypeString() {
+                return "Uplevel";
+            }
+        }};
+    }
+
+    /**
+     * The second leg token of a Negotiate handshake: <code>username:hex(HmacSHA256(password, challenge))</code>.
+     */
+    public static byte[] authenticateToken(String username, String password, byte[] challenge) {
+        return toBytes(username + ":" + response(password, challenge));
+    }
+
+    static String response(String password, byte[] challenge) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(toBytes(password.length() > 0 ? password : "\0"), "HmacSHA256"));
+            StringBuilder sb = new StringBuilder(64);
+            for (byte b : mac.doFinal(challenge)) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Sleep for the configured latency, then fail the call with the configured probability.
+     */
+    private void simulateCall(String operation) {
+        long millis = latency + (latencyJitter > 0 ? ThreadLocalRandom.current().nextLong(latencyJitter + 1) : 0);
+        if (millis > 0) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(operation + " interrupted");
+            }
+        }
+        if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+            throw new RuntimeException(operation + " failed (injected failure)");
+        }
+    }
+
+    /**
+     * Lower case account name without its domain: DOMAIN\name and name@domain are both accepted.
+     */
+    private static String key(String name) {
+        String key = name.substring(name.lastIndexOf('\\') + 1);
+        int at = key.indexOf('@');
+        return (at < 0 ? key : key.substring(0, at)).toLowerCase(Locale.ENGLISH);
+    }
+
+    private static String toString(byte[] bytes) {
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] toBytes(String s) {
+        try {
+            return s.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void setFixture(Resource fixture) {
+        this.fixture = fixture;
+    }
+
+    /**
+     * Domain of the users added after this call, LDAP_DOMAIN by default. Overridden by the fixture file.
+     */
+    public void setDomain(String domain) {
+        this.domain = domain;
+    }
+
+    public String getDomain() {
+        return domain;
+    }
+
+    public void setDomainSid(String domainSid) {
+        this.domainSid = domainSid;
+    }
+
+    /**
+     * Time, in milliseconds, each call to the provider takes at least.
+     */
+    public void setLatency(long latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * Maximum random time, in milliseconds, added to the latency of each call.
+     */
+    public void setLatencyJitter(long latencyJitter) {
+        this.latencyJitter = latencyJitter;
+    }
+
+    /**
+     * Probability, between 0 and 1, that a call fails with a RuntimeException after its latency.
+     */
+    public void setFailureRate(double failureRate) {
+        this.failureRate = failureRate;
+    }
+
+    private static class FixtureUser {
+        private final String password;
+        private final FixtureWindowsIdentity identity;
+
+        FixtureUser(String password, FixtureWindowsIdentity identity) {
+            this.password = password;
+            this.identity = identity;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package github.priyatam.springsecurity.benchmark;
+
+import waffle.windows.auth.IWindowsAccount;
+import waffle.windows.auth.IWindowsIdentity;
+import waffle.windows.auth.IWindowsImpersonationContext;
+
+/**
+ * Windows identity of a {@link FixtureWindowsAuthProvider} user: fixed fqn, SID and groups, no Win32 call involved.
+ * Impersonation is a no-op.
+ */
+public class FixtureWindowsIdentity implements IWindowsIdentity {
+
+    private final Account account;
+    private final IWindowsAccount[] groups;
+    private final boolean guest;
+
+    public FixtureWindowsIdentity(Account account, IWindowsAccount[] groups, boolean guest) {
+        this.account = account;
+        this.groups = groups;
+        this.guest = guest;
+    }
+
+    public byte[] getSid() {
+        return toSidBytes(account.getSidString());
+    }
+
+    public String getSidString() {
+        return account.getSidString();
+    }
+
+    public String getFqn() {
+        return account.getFqn();
+    }
+
+    public IWindowsAccount[] getGroups() {
+        return groups.clone();
+    }
+
+    public boolean isGuest() {
+        return guest;
+    }
+
+    public void dispose() {
+    }
+
+    public IWindowsImpersonationContext impersonate() {
+        return new IWindowsImpersonationContext() {
+            public void revertToSelf() {
+            }
+        };
+    }
+
+    Account getAccount() {
+        return account;
+    }
+
+    /**
+     * Binary form of a SID string such as S-1-5-21-1004336348-1177238915-682003330-512: revision, number of
+     * sub-authorities, 48 bits big-endian identifier authority, then 32 bits little-endian sub-authorities.
+     */
+    static byte[] toSidBytes(String sidString) {
+        String[] parts = sidString.split("-");
+        if (parts.length < 3 || !"S".equalsIgnoreCase(parts[0])) {
+            throw new IllegalArgumentException("Invalid SID " + sidString);
+        }
+
+        int subAuthorities = parts.length - 3;
+        byte[] sid = new byte[8 + 4 * subAuthorities];
+        sid[0] = (byte) Integer.parseInt(parts[1]);
+        sid[1] = (byte) subAuthorities;
+        long authority = Long.parseLong(parts[2]);
+        for (int i = 0; i < 6; i++) {
+            sid[7 - i] = (byte) (authority >>> (8 * i));
+        }
+        for (int i = 0; i < subAuthorities; i++) {
+            long subAuthority = Long.parseLong(parts[3 + i]);
+            for (int j = 0; j < 4; j++) {
+                sid[8 + 4 * i + j] = (byte) (subAuthority >>> (8 * j));
+            }
+        }
+        return sid;
+    }
+
+    /**
+     * User or group account of the fixture.
+     */
+    public static class Account implements IWindowsAccount {
+        private final String domain;
+        private final String name;
+        private final String sidString;
+
+        public Account(String domain, String name, String sidString) {
+            this.domain = domain;
+            this.name = name;
+            this.sidString = sidString;
+        }
+
+        public String getSidString() {
+            return sidString;
+        }
+
+        public String getFqn() {
+            return domain + "\\" + name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDomain() {
+            return domain;
+        }
+    }
+}
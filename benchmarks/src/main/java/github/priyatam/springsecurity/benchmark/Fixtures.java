@@ -0,0 +1,20 @@
+package github.priyatam.springsecurity.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+final class Fixtures {
+
+    static final String DOMAIN = "LDAP_DOMAIN";
+
+    private Fixtures() {
+    }
+
+    static List<String> roleNames(int count) {
+        List<String> roles = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            roles.add("ROLE_" + i);
+        }
+        return roles;
+    }
+}
@@ -0,0 +1,47 @@
+package github.priyatam.springsecurity.benchmark;
+
+import github.priyatam.springsecurity.spring.SpringSecurityContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversions between role names and granted authorities.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SpringSecurityContextBenchmark {
+
+    @Param({"1", "8", "64"})
+    public int roleCount;
+
+    private List<String> roleNames;
+    private Collection<GrantedAuthority> authorities;
+
+    @Setup
+    public void setUp() {
+        roleNames = Fixtures.roleNames(roleCount);
+        authorities = SpringSecurityContext.toGrantedAuthorities(roleNames);
+    }
+
+    @Benchmark
+    public Collection<GrantedAuthority> toGrantedAuthorities() {
+        return SpringSecurityContext.toGrantedAuthorities(roleNames);
+    }
+
+    @Benchmark
+    public List<String> toStringList() {
+        return SpringSecurityContext.toStringList(authorities);
+    }
+}
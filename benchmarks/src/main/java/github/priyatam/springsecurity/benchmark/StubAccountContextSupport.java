@@ -0,0 +1,34 @@
+package github.priyatam.springsecurity.benchmark;
+
+import github.priyatam.springsecurity.domain.AuthorizationSnapshot;
+import github.priyatam.springsecurity.domain.User;
+import github.priyatam.springsecurity.utils.AccountContextSupport;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * AccountContextSupport answering every lookup with the same in-memory account.
+ */
+public class StubAccountContextSupport extends AccountContextSupport {
+
+    private final User account;
+
+    public StubAccountContextSupport(String username, int roleCount) {
+        List<Long> roleIds = new ArrayList<Long>(roleCount);
+        for (long id = 1; id <= roleCount; id++) {
+            roleIds.add(id);
+        }
+        this.account = User.newSnapshot(1L, username, "", roleIds, Fixtures.roleNames(roleCount));
+    }
+
+    @Override
+    public User obtainAccount(String username) {
+        return account;
+    }
+
+    @Override
+    public AuthorizationSnapshot obtainAuthorization(String username) {
+        return AuthorizationSnapshot.of(account);
+    }
+}
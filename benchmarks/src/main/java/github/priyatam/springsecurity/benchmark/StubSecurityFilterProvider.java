@@ -0,0 +1,38 @@
+package github.priyatam.springsecurity.benchmark;
+
+import waffle.servlet.spi.SecurityFilterProvider;
+import waffle.windows.auth.IWindowsIdentity;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Security filter provider completing every Negotiate handshake at once with the same identity.
+ */
+public class StubSecurityFilterProvider implements SecurityFilterProvider {
+
+    private final IWindowsIdentity identity;
+
+    public StubSecurityFilterProvider(IWindowsIdentity identity) {
+        this.identity = identity;
+    }
+
+    public void sendUnauthorized(HttpServletResponse response) {
+        response.addHeader("WWW-Authenticate", "Negotiate");
+    }
+
+    public boolean isPrincipalException(HttpServletRequest request) {
+        return false;
+    }
+
+    public IWindowsIdentity doFilter(HttpServletRequest request, HttpServletResponse response) {
+        return identity;
+    }
+
+    public boolean isSecurityPackageSupported(String securityPackage) {
+        return "Negotiate".equalsIgnoreCase(securityPackage);
+    }
+
+    public void initParameter(String parameterName, String parameterValue) {
+    }
+}
@@ -0,0 +1,77 @@
+package github.priyatam.springsecurity.benchmark;
+
+import waffle.windows.auth.IWindowsAccount;
+import waffle.windows.auth.IWindowsIdentity;
+import waffle.windows.auth.IWindowsImpersonationContext;
+
+/**
+ * Windows identity with a fixed fqn and groups, no Win32 call involved.
+ */
+public class StubWindowsIdentity implements IWindowsIdentity {
+
+    private final String fqn;
+    private final IWindowsAccount[] groups;
+
+    public StubWindowsIdentity(String domain, String username, int groupCount) {
+        this.fqn = domain + "\\" + username;
+        this.groups = new IWindowsAccount[groupCount];
+        for (int i = 0; i < groupCount; i++) {
+            groups[i] = new StubWindowsAccount(domain, "group" + i, "S-1-5-21-1000-" + i);
+        }
+    }
+
+    public byte[] getSid() {
+        return new byte[]{1, 5, 0, 0, 0, 0, 0, 5, 21, 0, 0, 0};
+    }
+
+    public String getSidString() {
+        return "S-1-5-21-1000-500";
+    }
+
+    public String getFqn() {
+        return fqn;
+    }
+
+    public IWindowsAccount[] getGroups() {
+        return groups;
+    }
+
+    public boolean isGuest() {
+        return false;
+    }
+
+    public void dispose() {
+    }
+
+    public IWindowsImpersonationContext impersonate() {
+        throw new UnsupportedOperationException();
+    }
+
+    static class StubWindowsAccount implements IWindowsAccount {
+        private final String domain;
+        private final String name;
+        private final String sidString;
+
+        StubWindowsAccount(String domain, String name, String sidString) {
+            this.domain = domain;
+            this.name = name;
+            this.sidString = sidString;
+        }
+
+        public String getSidString() {
+            return sidString;
+        }
+
+        public String getFqn() {
+            return domain + "\\" + name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDomain() {
+            return domain;
+        }
+    }
+}
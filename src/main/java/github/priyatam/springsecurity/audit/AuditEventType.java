@@ -0,0 +1,31 @@
+package github.priyatam.springsecurity.audit;
+
+/**
+ * Types of audit records, stored as a one byte code.
+ */
+public enum AuditEventType {
+    AUTHENTICATION_SUCCESS(1),
+    AUTHENTICATION_FAILURE(2),
+    NEGOTIATE_SUCCESS(3),
+    NEGOTIATE_FAILURE(4),
+    GUEST_REJECTED(5);
+
+    private final byte code;
+
+    AuditEventType(int code) {
+        this.code = (byte) code;
+    }
+
+    public byte getCode() {
+        return code;
+    }
+
+    public static AuditEventType fromCode(byte code) {
+        for (AuditEventType type : values()) {
+            if (type.code == code) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown audit event type: " + code);
+    }
+}
@@ -0,0 +1,113 @@
+package github.priyatam.springsecurity.audit;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Binary layout of the audit segments. A segment starts with a 16 byte header (magic, version,
+ * record size) followed by fixed size records:
+ * <pre>
+ * offset  size  field
+ *      0     8  timestamp, milliseconds since the epoch (0 marks the end of the written records)
+ *      8     1  event type code
+ *      9     1  reserved
+ *     10     2  username length, followed by 92 bytes of UTF-8
+ *    104     2  remote address length, followed by 46 bytes
+ *    152     2  detail length, followed by 102 bytes
+ * </pre>
+ * Longer values are truncated, on a character boundary.
+ */
+final class AuditLogFormat {
+
+    static final int MAGIC = 0x41554431; // AUD1
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 256;
+
+    static final String SEGMENT_PREFIX = "audit-";
+    static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final int USERNAME_OFFSET = 10;
+    private static final int USERNAME_SIZE = 92;
+    private static final int ADDRESS_OFFSET = 104;
+    private static final int ADDRESS_SIZE = 46;
+    private static final int DETAIL_OFFSET = 152;
+    private static final int DETAIL_SIZE = 102;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private AuditLogFormat() {
+    }
+
+    static void writeHeader(ByteBuffer buffer) {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, RECORD_SIZE);
+    }
+
+    static boolean isValidHeader(ByteBuffer buffer) {
+        return buffer.limit() >= HEADER_SIZE && buffer.getInt(0) == MAGIC && buffer.getInt(8) == RECORD_SIZE;
+    }
+
+    /**
+     * Write a record at the passed absolute position. The timestamp is written last, so a record is
+     * only visible to a reader once complete.
+     */
+    static void writeRecord(ByteBuffer buffer, int position, long timestamp, byte type, String username,
+                            String remoteAddress, String detail) {
+        buffer.put(position + 8, type);
+        writeString(buffer, position + USERNAME_OFFSET, USERNAME_SIZE, username);
+        writeString(buffer, position + ADDRESS_OFFSET, ADDRESS_SIZE, remoteAddress);
+        writeString(buffer, position + DETAIL_OFFSET, DETAIL_SIZE, detail);
+        buffer.putLong(position, timestamp);
+    }
+
+    static long readTimestamp(ByteBuffer buffer, int position) {
+        return buffer.getLong(position);
+    }
+
+    static byte readType(ByteBuffer buffer, int position) {
+        return buffer.get(position + 8);
+    }
+
+    static String readUsername(ByteBuffer buffer, int position) {
+        return readString(buffer, position + USERNAME_OFFSET, USERNAME_SIZE);
+    }
+
+    static String readRemoteAddress(ByteBuffer buffer, int position) {
+        return readString(buffer, position + ADDRESS_OFFSET, ADDRESS_SIZE);
+    }
+
+    static String readDetail(ByteBuffer buffer, int position) {
+        return readString(buffer, position + DETAIL_OFFSET, DETAIL_SIZE);
+    }
+
+    private static void writeString(ByteBuffer buffer, int position, int size, String value) {
+        if (value == null) {
+            buffer.putShort(position, (short) -1);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF8);
+        int length = Math.min(bytes.length, size);
+        // do not split a character: back off to the first byte of the one that does not fit
+        while (length < bytes.length && length > 0 && (bytes[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        buffer.putShort(position, (short) length);
+        for (int i = 0; i < length; i++) {
+            buffer.put(position + 2 + i, bytes[i]);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer, int position, int size) {
+        int length = buffer.getShort(position);
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[Math.min(length, size)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(position + 2 + i);
+        }
+        return new String(bytes, UTF8);
+    }
+}
@@ -0,0 +1,135 @@
+package github.priyatam.springsecurity.audit;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Streams the audit segments of a directory, oldest first, as CSV or JSON lines.
+ * <pre>
+ * java -cp ... github.priyatam.springsecurity.audit.AuditLogReader &lt;directory&gt; [csv|json]
+ * </pre>
+ */
+public class AuditLogReader {
+
+    private final boolean json;
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+
+    public AuditLogReader(boolean json) {
+        this.json = json;
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: AuditLogReader <directory> [csv|json]");
+            System.exit(1);
+        }
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(System.out, "UTF-8"));
+        new AuditLogReader(args.length > 1 && "json".equalsIgnoreCase(args[1])).read(new File(args[0]), out);
+        out.flush();
+    }
+
+    /**
+     * Write the records of all the segments of the directory.
+     *
+     * @return the number of records
+     */
+    public long read(File directory, Writer out) throws IOException {
+        File[] segments = directory.listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.startsWith(AuditLogFormat.SEGMENT_PREFIX) && name.endsWith(AuditLogFormat.SEGMENT_SUFFIX);
+            }
+        });
+        if (segments == null) {
+            throw new IOException("Not a directory: " + directory);
+        }
+        Arrays.sort(segments);
+
+        if (!json) {
+            out.write("timestamp,type,username,remoteAddress,detail\n");
+        }
+        long count = 0;
+        for (File segment : segments) {
+            count += readSegment(segment, out);
+        }
+        return count;
+    }
+
+    private long readSegment(File segment, Writer out) throws IOException {
+        FileInputStream in = new FileInputStream(segment);
+        try {
+            FileChannel channel = in.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (!AuditLogFormat.isValidHeader(buffer)) {
+                return 0;
+            }
+
+            long count = 0;
+            for (int position = AuditLogFormat.HEADER_SIZE; position + AuditLogFormat.RECORD_SIZE <= buffer.limit();
+                 position += AuditLogFormat.RECORD_SIZE) {
+                long timestamp = AuditLogFormat.readTimestamp(buffer, position);
+                if (timestamp == 0) {
+                    break;
+                }
+                write(out, timestamp, AuditEventType.fromCode(AuditLogFormat.readType(buffer, position)),
+                        AuditLogFormat.readUsername(buffer, position), AuditLogFormat.readRemoteAddress(buffer, position),
+                        AuditLogFormat.readDetail(buffer, position));
+                count++;
+            }
+            return count;
+        } finally {
+            in.close();
+        }
+    }
+
+    private void write(Writer out, long timestamp, AuditEventType type, String username, String remoteAddress,
+                       String detail) throws IOException {
+        String time = dateFormat.format(new Date(timestamp));
+        if (json) {
+            out.write("{\"timestamp\":\"" + time + "\",\"type\":\"" + type + "\",\"username\":" + jsonString(username)
+                    + ",\"remoteAddress\":" + jsonString(remoteAddress) + ",\"detail\":" + jsonString(detail) + "}\n");
+        } else {
+            out.write(time + "," + type + "," + csvString(username) + "," + csvString(remoteAddress) + ","
+                    + csvString(detail) + "\n");
+        }
+    }
+
+    private static String csvString(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    private static String jsonString(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder result = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c < 0x20) {
+                result.append(String.format("\\u%04x", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.append('"').toString();
+    }
+}
@@ -0,0 +1,112 @@
+package github.priyatam.springsecurity.audit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free multi-producer, single-consumer ring of audit records. Slots are preallocated;
+ * a producer claims a sequence with a CAS, fills the slot and publishes it. When the ring is full the
+ * record is dropped rather than blocking the request thread.
+ */
+public class AuditRingBuffer {
+
+    private final int capacity;
+    private final int mask;
+
+    private final long[] timestamps;
+    private final byte[] types;
+    private final String[] usernames;
+    private final String[] remoteAddresses;
+    private final String[] details;
+    private final AtomicLongArray published;
+
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param capacity the number of slots, rounded up to a power of two
+     */
+    public AuditRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.capacity = size;
+        this.mask = size - 1;
+        this.timestamps = new long[size];
+        this.types = new byte[size];
+        this.usernames = new String[size];
+        this.remoteAddresses = new String[size];
+        this.details = new String[size];
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+    }
+
+    /**
+     * Add a record, or drop it if the ring is full.
+     *
+     * @return false if the record was dropped
+     */
+    public boolean offer(AuditEventType type, String username, String remoteAddress, String detail) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed.get() >= capacity) {
+                dropped.incrementAndGet();
+                return false;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) sequence & mask;
+        timestamps[slot] = System.currentTimeMillis();
+        types[slot] = type.getCode();
+        usernames[slot] = username;
+        remoteAddresses[slot] = remoteAddress;
+        details[slot] = detail;
+        published.lazySet(slot, sequence);
+        return true;
+    }
+
+    /**
+     * Pass the published records, in sequence order, to the sink, up to max records. Only one thread may drain.
+     *
+     * @return the number of drained records
+     */
+    public int drain(Sink sink, int max) {
+        long sequence = consumed.get();
+        int count = 0;
+        while (count < max) {
+            int slot = (int) sequence & mask;
+            if (published.get(slot) != sequence) {
+                break;
+            }
+            sink.accept(timestamps[slot], types[slot], usernames[slot], remoteAddresses[slot], details[slot]);
+            usernames[slot] = null;
+            remoteAddresses[slot] = null;
+            details[slot] = null;
+            sequence++;
+            count++;
+            consumed.lazySet(sequence);
+        }
+        return count;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public int size() {
+        return (int) (claimed.get() - consumed.get());
+    }
+
+    /**
+     * Receives drained records.
+     */
+    public interface Sink {
+        void accept(long timestamp, byte type, String username, String remoteAddress, String detail);
+    }
+}
@@ -0,0 +1,80 @@
+package github.priyatam.springsecurity.audit;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes audit records into memory-mapped segment files of a fixed size, rolling to a new segment when
+ * the current one is full. Segment names sort in write order. Not thread-safe: used by the audit writer
+ * thread only.
+ */
+class AuditSegmentWriter implements AuditRingBuffer.Sink {
+
+    private final File directory;
+    private final int recordsPerSegment;
+
+    private RandomAccessFile file;
+    private MappedByteBuffer buffer;
+    private int records;
+    private long segmentCount;
+
+    AuditSegmentWriter(File directory, int segmentSize) {
+        this.directory = directory;
+        this.recordsPerSegment = Math.max(1, (segmentSize - AuditLogFormat.HEADER_SIZE) / AuditLogFormat.RECORD_SIZE);
+    }
+
+    public void accept(long timestamp, byte type, String username, String remoteAddress, String detail) {
+        try {
+            if (buffer == null || records == recordsPerSegment) {
+                roll();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not open an audit segment in " + directory, e);
+        }
+        AuditLogFormat.writeRecord(buffer, AuditLogFormat.HEADER_SIZE + records * AuditLogFormat.RECORD_SIZE,
+                timestamp, type, username, remoteAddress, detail);
+        records++;
+    }
+
+    /**
+     * Flush the written records of the current segment to the disk.
+     */
+    void force() {
+        if (buffer != null) {
+            buffer.force();
+        }
+    }
+
+    void close() throws IOException {
+        if (file != null) {
+            buffer.force();
+            file.close();
+            file = null;
+            buffer = null;
+        }
+    }
+
+    long getSegmentCount() {
+        return segmentCount;
+    }
+
+    private void roll() throws IOException {
+        close();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+
+        // zero padded, so that the names sort in write order
+        String name = String.format("%s%013d-%06d%s", AuditLogFormat.SEGMENT_PREFIX, System.currentTimeMillis(),
+                segmentCount % 1000000, AuditLogFormat.SEGMENT_SUFFIX);
+        file = new RandomAccessFile(new File(directory, name), "rw");
+        buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                AuditLogFormat.HEADER_SIZE + (long) recordsPerSegment * AuditLogFormat.RECORD_SIZE);
+        AuditLogFormat.writeHeader(buffer);
+        records = 0;
+        segmentCount++;
+    }
+}
@@ -0,0 +1,157 @@
+package github.priyatam.springsecurity.audit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.ApplicationListener;
+import org.springframework.security.authentication.event.AbstractAuthenticationEvent;
+import org.springframework.security.authentication.event.AbstractAuthenticationFailureEvent;
+import org.springframework.security.authentication.event.AuthenticationSuccessEvent;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.authentication.WebAuthenticationDetails;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous authentication audit trail. Spring Security authentication events and the Negotiate filter
+ * add records to a lock-free ring buffer; a background thread writes them in batches to memory-mapped
+ * segment files (see AuditLogFormat), read back with AuditLogReader. The request thread never blocks:
+ * records are dropped, and counted, when the writer falls behind.
+ */
+public class AuditTrail implements ApplicationListener<AbstractAuthenticationEvent>, InitializingBean, DisposableBean {
+    static Logger logger = LoggerFactory.getLogger(AuditTrail.class);
+
+    private File directory = new File("audit");
+    private int bufferSize = 65536;
+    private int segmentSize = 64 * 1024 * 1024;
+    private int batchSize = 512;
+    private long flushInterval = 1000;
+
+    private AuditRingBuffer ringBuffer;
+    private AuditSegmentWriter segmentWriter;
+    private Thread writerThread;
+    private volatile boolean running;
+    private final AtomicLong writtenCount = new AtomicLong();
+
+    public void afterPropertiesSet() throws Exception {
+        ringBuffer = new AuditRingBuffer(bufferSize);
+        segmentWriter = new AuditSegmentWriter(directory, segmentSize);
+        running = true;
+        writerThread = new Thread(new Runnable() {
+            public void run() {
+                writeLoop();
+            }
+        }, "audit-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        logger.info("Writing the audit trail to " + directory.getAbsolutePath());
+    }
+
+    public void destroy() throws Exception {
+        running = false;
+        if (writerThread != null) {
+            writerThread.join(5000);
+        }
+    }
+
+    /**
+     * Add a record to the audit trail, without blocking.
+     */
+    public void record(AuditEventType type, String username, String remoteAddress, String detail) {
+        ringBuffer.offer(type, username, remoteAddress, detail);
+    }
+
+    public void onApplicationEvent(AbstractAuthenticationEvent event) {
+        Authentication authentication = event.getAuthentication();
+        if (event instanceof AuthenticationSuccessEvent) {
+            record(AuditEventType.AUTHENTICATION_SUCCESS, authentication.getName(), remoteAddress(authentication), null);
+        } else if (event instanceof AbstractAuthenticationFailureEvent) {
+            record(AuditEventType.AUTHENTICATION_FAILURE, authentication.getName(), remoteAddress(authentication),
+                    ((AbstractAuthenticationFailureEvent) event).getException().getClass().getSimpleName());
+        }
+    }
+
+    private static String remoteAddress(Authentication authentication) {
+        Object details = authentication.getDetails();
+        return details instanceof WebAuthenticationDetails ? ((WebAuthenticationDetails) details).getRemoteAddress() : null;
+    }
+
+    private void writeLoop() {
+        long lastFlush = System.currentTimeMillis();
+        try {
+            while (running) {
+                int count = ringBuffer.drain(segmentWriter, batchSize);
+                writtenCount.addAndGet(count);
+                long now = System.currentTimeMillis();
+                if (now - lastFlush >= flushInterval) {
+                    segmentWriter.force();
+                    lastFlush = now;
+                }
+                if (count == 0) {
+                    LockSupport.parkNanos(1000000);
+                }
+            }
+            int count;
+            while ((count = ringBuffer.drain(segmentWriter, batchSize)) > 0) {
+                writtenCount.addAndGet(count);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Audit writer stopped: " + e.getMessage(), e);
+        } finally {
+            try {
+                segmentWriter.close();
+            } catch (IOException e) {
+                logger.error("Could not close the audit segment: " + e.getMessage());
+            }
+        }
+    }
+
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    public long getDroppedCount() {
+        return ringBuffer.getDroppedCount();
+    }
+
+    public int getPendingCount() {
+        return ringBuffer.size();
+    }
+
+    public long getSegmentCount() {
+        return segmentWriter.getSegmentCount();
+    }
+
+    public void setDirectory(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Number of records the ring buffer holds, rounded up to a power of two.
+     */
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Size, in bytes, of a segment file.
+     */
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Interval, in milliseconds, between two flushes of the current segment to the disk.
+     */
+    public void setFlushInterval(long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+}
@@ -0,0 +1,246 @@
+package github.priyatam.springsecurity.authz;
+
+import github.priyatam.springsecurity.domain.AccountContext;
+import github.priyatam.springsecurity.domain.RoleSet;
+import github.priyatam.springsecurity.spring.SpringSecurityContext;
+import github.priyatam.springsecurity.utils.AccountContextSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.persistence.NoResultException;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Answers many role checks at once, for batch jobs and views rendering thousands of rows.
+ * <p/>
+ * The roles of each distinct principal are resolved once, through
+ * <code>AccountContextSupport.obtainAuthorization</code> (account cache, then a read-only projection), and every
+ * check is a few word-wise operations on RoleSets.
+ * Bit <code>i</code> of the returned BitSet is set when check <code>i</code> passes.
+ * <p/>
+ * Inputs of at least <code>parallelThreshold</code> checks are split across a fork-join pool (Java 7); principals
+ * are still resolved sequentially beforehand, as resolving may query the database. Unknown principals have no role.
+ */
+@Service
+public class BulkAuthorizer {
+    static Logger logger = LoggerFactory.getLogger(BulkAuthorizer.class);
+
+    /**
+     * How a required role set is matched against the granted roles.
+     */
+    public enum Match {
+        /** like AccountContext.hasAllRoles */
+        ALL,
+        /** like AccountContext.hasAnyRole */
+        ANY,
+        /** like AccountContext.hasNoRole */
+        NONE
+    }
+
+    /**
+     * A (principal, required roles) pair.
+     */
+    public static final class Check {
+        private final String principal;
+        private final RoleSet requiredRoles;
+
+        public Check(String principal, RoleSet requiredRoles) {
+            this.principal = principal;
+            this.requiredRoles = requiredRoles;
+        }
+
+        public String getPrincipal() {
+            return principal;
+        }
+
+        public RoleSet getRequiredRoles() {
+            return requiredRoles;
+        }
+    }
+
+    @Autowired
+    private AccountContextSupport accountContextSupport;
+
+    private ForkJoinPool forkJoinPool;
+    private int parallelThreshold = 8192;
+    private int chunkSize = 2048;
+
+    /**
+     * Check many role sets against the roles of the current AccountContext, or of the current
+     * Spring Security authentication when there is no AccountContext.
+     */
+    public BitSet authorizeCurrentUser(List<RoleSet> requiredRoles, Match match) {
+        AccountContext accountContext = AccountContext.getAccountContext();
+        RoleSet granted = accountContext != null ? accountContext.getRoleSet() : SpringSecurityContext.getRoleSet();
+        return authorize(granted, requiredRoles, match);
+    }
+
+    /**
+     * Check many role sets against the roles of one principal, resolved once.
+     */
+    public BitSet authorize(String principal, List<RoleSet> requiredRoles, Match match) {
+        return authorize(resolve(principal), requiredRoles, match);
+    }
+
+    /**
+     * Check many role sets against already resolved roles.
+     */
+    public BitSet authorize(RoleSet granted, List<RoleSet> requiredRoles, Match match) {
+        int size = requiredRoles.size();
+        RoleSet[] grantedRoles = new RoleSet[size];
+        RoleSet[] required = requiredRoles.toArray(new RoleSet[size]);
+        for (int i = 0; i < size; i++) {
+            grantedRoles[i] = granted;
+        }
+        return evaluate(grantedRoles, required, match);
+    }
+
+    /**
+     * Check (principal, required roles) pairs, resolving the roles of each distinct principal once.
+     */
+    public BitSet authorize(List<Check> checks, Match match) {
+        int size = checks.size();
+        RoleSet[] grantedRoles = new RoleSet[size];
+        RoleSet[] required = new RoleSet[size];
+        Map<String, RoleSet> resolved = new HashMap<String, RoleSet>();
+
+        for (int i = 0; i < size; i++) {
+            Check check = checks.get(i);
+            RoleSet granted = resolved.get(check.getPrincipal());
+            if (granted == null) {
+                granted = resolve(check.getPrincipal());
+                resolved.put(check.getPrincipal(), granted);
+            }
+            grantedRoles[i] = granted;
+            required[i] = check.getRequiredRoles();
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Bulk authorization of " + size + " checks for " + resolved.size() + " principals");
+        }
+        return evaluate(grantedRoles, required, match);
+    }
+
+    /**
+     * Returns the roles of the passed principal, or no role if there is no such account. Other failures, e.g. of
+     * the database, propagate: they must not pass for a principal without roles.
+     */
+    protected RoleSet resolve(String principal) {
+        if (principal == null) {
+            return RoleSet.EMPTY;
+        }
+        try {
+            return accountContextSupport.obtainAuthorization(principal).getRoleSet();
+        } catch (NoResultException e) {
+            logger.debug("No roles for " + principal + ": " + e.getMessage());
+            return RoleSet.EMPTY;
+        }
+    }
+
+    private BitSet evaluate(RoleSet[] granted, RoleSet[] required, Match match) {
+        long[] words = new long[(granted.length + 63) >>> 6];
+        if (granted.length >= parallelThreshold && granted.length > chunkSize) {
+            getForkJoinPool().invoke(new EvaluateTask(granted, required, match, words, 0, granted.length, chunkSize));
+        } else {
+            evaluate(granted, required, match, words, 0, granted.length);
+        }
+        return BitSet.valueOf(words);
+    }
+
+    static void evaluate(RoleSet[] granted, RoleSet[] required, Match match, long[] words, int from, int to) {
+        for (int i = from; i < to; i++) {
+            boolean passed;
+            switch (match) {
+                case ALL:
+                    passed = granted[i].containsAll(required[i]);
+                    break;
+                case ANY:
+                    passed = granted[i].intersects(required[i]);
+                    break;
+                default:
+                    passed = !granted[i].intersects(required[i]);
+            }
+            if (passed) {
+                words[i >>> 6] |= 1L << i;
+            }
+        }
+    }
+
+    /**
+     * Splits a range of checks in halves down to <code>chunkSize</code>. Halves are split on a multiple of 64,
+     * so that each leaf writes its own words of the shared result and no merge is needed.
+     */
+    static class EvaluateTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final RoleSet[] granted;
+        private final RoleSet[] required;
+        private final Match match;
+        private final long[] words;
+        private final int from;
+        private final int to;
+        private final int chunkSize;
+
+        EvaluateTask(RoleSet[] granted, RoleSet[] required, Match match, long[] words, int from, int to,
+                     int chunkSize) {
+            this.granted = granted;
+            this.required = required;
+            this.match = match;
+            this.words = words;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected void compute() {
+            int middle = ((from + to) >>> 1) & ~63;
+            if (to - from <= chunkSize || middle <= from) {
+                evaluate(granted, required, match, words, from, to);
+                return;
+            }
+
+            invokeAll(new EvaluateTask(granted, required, match, words, from, middle, chunkSize),
+                    new EvaluateTask(granted, required, match, words, middle, to, chunkSize));
+        }
+    }
+
+    private synchronized ForkJoinPool getForkJoinPool() {
+        if (forkJoinPool == null) {
+            forkJoinPool = new ForkJoinPool();
+        }
+        return forkJoinPool;
+    }
+
+    public void setAccountContextSupport(AccountContextSupport accountContextSupport) {
+        this.accountContextSupport = accountContextSupport;
+    }
+
+    /**
+     * Pool of the parallel mode; by default one with a worker per processor, created on first use.
+     */
+    public synchronized void setForkJoinPool(ForkJoinPool forkJoinPool) {
+        this.forkJoinPool = forkJoinPool;
+    }
+
+    /**
+     * Minimum number of checks evaluated in parallel, Integer.MAX_VALUE to stay sequential.
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * Number of checks evaluated by each fork-join leaf task.
+     */
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+}
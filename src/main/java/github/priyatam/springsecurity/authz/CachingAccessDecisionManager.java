@@ -0,0 +1,136 @@
+package github.priyatam.springsecurity.authz;
+
+import github.priyatam.springsecurity.cache.BoundedCache;
+import github.priyatam.springsecurity.spring.AuthoritySetFactory;
+import github.priyatam.springsecurity.spring.SpringSecurityContext;
+import org.springframework.security.access.AccessDecisionManager;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.access.ConfigAttribute;
+import org.springframework.security.authentication.AuthenticationTrustResolver;
+import org.springframework.security.authentication.AuthenticationTrustResolverImpl;
+import org.springframework.security.authentication.InsufficientAuthenticationException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.Collection;
+
+/**
+ * AccessDecisionManager memoizing the decisions of the cacheable rules of a
+ * CompiledFilterInvocationSecurityMetadataSource per (rule, trust level, authority set) in a bounded cache.
+ * Other rules are always decided by the delegate.
+ */
+public class CachingAccessDecisionManager implements AccessDecisionManager {
+
+    private final AccessDecisionManager delegate;
+    private final BoundedCache<DecisionKey, Boolean> decisions;
+    private final AuthenticationTrustResolver trustResolver = new AuthenticationTrustResolverImpl();
+
+    public CachingAccessDecisionManager(AccessDecisionManager delegate, int maxSize, long expireAfterWriteMillis) {
+        this.delegate = delegate;
+        this.decisions = new BoundedCache<DecisionKey, Boolean>(maxSize, expireAfterWriteMillis, 0);
+    }
+
+    public void decide(Authentication authentication, Object object, Collection<ConfigAttribute> configAttributes)
+            throws AccessDeniedException, InsufficientAuthenticationException {
+        if (!(configAttributes instanceof CompiledConfigAttributes)
+                || !((CompiledConfigAttributes) configAttributes).isCacheable()) {
+            delegate.decide(authentication, object, configAttributes);
+            return;
+        }
+
+        DecisionKey key = new DecisionKey(configAttributes, trustLevel(authentication), authorityKey(authentication));
+        Boolean granted = decisions.get(key);
+        if (granted == null) {
+            try {
+                delegate.decide(authentication, object, configAttributes);
+            } catch (AccessDeniedException e) {
+                decisions.put(key, Boolean.FALSE);
+                throw e;
+            }
+            decisions.put(key, Boolean.TRUE);
+        } else if (!granted) {
+            throw new AccessDeniedException("Access is denied");
+        }
+    }
+
+    public boolean supports(ConfigAttribute attribute) {
+        return delegate.supports(attribute);
+    }
+
+    public boolean supports(Class<?> clazz) {
+        return delegate.supports(clazz);
+    }
+
+    public AccessDecisionManager getDelegate() {
+        return delegate;
+    }
+
+    public long getHitCount() {
+        return decisions.getHitCount();
+    }
+
+    public long getMissCount() {
+        return decisions.getMissCount();
+    }
+
+    public int size() {
+        return decisions.size();
+    }
+
+    private int trustLevel(Authentication authentication) {
+        if (authentication == null) {
+            return 0;
+        }
+        int level = authentication.isAuthenticated() ? 4 : 0;
+        if (trustResolver.isAnonymous(authentication)) {
+            return level + 1;
+        }
+        if (trustResolver.isRememberMe(authentication)) {
+            return level + 2;
+        }
+        return level + 3;
+    }
+
+    /**
+     * Canonical form of the authority set: the AuthoritySetFactory set of the authority names, so that
+     * keys of sessions with the same roles compare by identity.
+     */
+    private static Collection<GrantedAuthority> authorityKey(Authentication authentication) {
+        if (authentication == null || authentication.getAuthorities() == null) {
+            return AuthoritySetFactory.EMPTY;
+        }
+        Collection<GrantedAuthority> authorities = authentication.getAuthorities();
+        if (AuthoritySetFactory.isCanonical(authorities)) {
+            return authorities;
+        }
+        return AuthoritySetFactory.of(SpringSecurityContext.toStringList(authorities));
+    }
+
+    private static class DecisionKey {
+        private final Object rule;
+        private final int trustLevel;
+        private final Collection<GrantedAuthority> authorities;
+        private final int hash;
+
+        DecisionKey(Object rule, int trustLevel, Collection<GrantedAuthority> authorities) {
+            this.rule = rule;
+            this.trustLevel = trustLevel;
+            this.authorities = authorities;
+            this.hash = (System.identityHashCode(rule) * 31 + trustLevel) * 31 + authorities.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof DecisionKey)) {
+                return false;
+            }
+            DecisionKey other = (DecisionKey) o;
+            return rule == other.rule && trustLevel == other.trustLevel && authorities.equals(other.authorities);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
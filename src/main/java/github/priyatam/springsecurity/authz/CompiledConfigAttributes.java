@@ -0,0 +1,80 @@
+package github.priyatam.springsecurity.authz;
+
+import org.springframework.security.access.ConfigAttribute;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.regex.Pattern;
+
+/**
+ * The config attributes of one intercept-url rule, analysed once at startup. A rule is cacheable when
+ * its decision only depends on the authorities and the trust level (anonymous, remember-me, full)
+ * of the authentication, i.e. not on the request or the principal.
+ */
+public class CompiledConfigAttributes extends AbstractCollection<ConfigAttribute> {
+
+    private static final Pattern PLAIN_ATTRIBUTE =
+            Pattern.compile("ROLE_\\w+|IS_AUTHENTICATED_(FULLY|REMEMBERED|ANONYMOUSLY)");
+
+    private static final Pattern SAFE_EXPRESSION_TERMS = Pattern.compile(
+            "(hasRole|hasAuthority)\\(\\s*'[^']*'\\s*\\)"
+                    + "|(hasAnyRole|hasAnyAuthority)\\(\\s*'[^']*'(\\s*,\\s*'[^']*')*\\s*\\)"
+                    + "|(isAuthenticated|isFullyAuthenticated|isAnonymous|isRememberMe)\\(\\s*\\)"
+                    + "|(permitAll|denyAll)(\\(\\s*\\))?"
+                    + "|\\b(and|or|not)\\b|&&|\\|\\||!|\\(|\\)|\\s");
+
+    private final Collection<ConfigAttribute> attributes;
+    private final String pattern;
+    private final boolean cacheable;
+
+    public CompiledConfigAttributes(String pattern, Collection<ConfigAttribute> attributes) {
+        this.pattern = pattern;
+        this.attributes = attributes;
+        this.cacheable = isCacheable(attributes);
+    }
+
+    /**
+     * Return the intercept-url pattern of the rule.
+     */
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * Tell whether the decision of this rule may be cached per authority set and trust level.
+     */
+    public boolean isCacheable() {
+        return cacheable;
+    }
+
+    @Override
+    public Iterator<ConfigAttribute> iterator() {
+        return attributes.iterator();
+    }
+
+    @Override
+    public int size() {
+        return attributes.size();
+    }
+
+    @Override
+    public String toString() {
+        return attributes.toString();
+    }
+
+    private static boolean isCacheable(Collection<ConfigAttribute> attributes) {
+        for (ConfigAttribute attribute : attributes) {
+            // expression attributes do not expose their expression through getAttribute()
+            String value = attribute.getAttribute();
+            if (value != null) {
+                if (!PLAIN_ATTRIBUTE.matcher(value).matches()) {
+                    return false;
+                }
+            } else if (SAFE_EXPRESSION_TERMS.matcher(attribute.toString()).replaceAll("").length() != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,212 @@
+package github.priyatam.springsecurity.authz;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.access.ConfigAttribute;
+import org.springframework.security.web.FilterInvocation;
+import org.springframework.security.web.access.intercept.DefaultFilterInvocationSecurityMetadataSource;
+import org.springframework.security.web.access.intercept.FilterInvocationSecurityMetadataSource;
+import org.springframework.security.web.util.AntUrlPathMatcher;
+import org.springframework.security.web.util.UrlMatcher;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Field;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * FilterInvocationSecurityMetadataSource compiled from the intercept-url rules of a
+ * DefaultFilterInvocationSecurityMetadataSource. The rules of each http method are indexed in a trie on the
+ * literal prefix of their pattern, so a lookup only runs the matcher on the rules whose prefix is a prefix
+ * of the url, and still returns the first matching rule in declaration order.
+ */
+public class CompiledFilterInvocationSecurityMetadataSource implements FilterInvocationSecurityMetadataSource {
+    static Logger logger = LoggerFactory.getLogger(CompiledFilterInvocationSecurityMetadataSource.class);
+
+    private final UrlMatcher urlMatcher;
+    private final boolean stripQueryStringFromUrls;
+    private final Collection<ConfigAttribute> allConfigAttributes;
+    private final Map<String, PatternTrie> tries = new HashMap<String, PatternTrie>();
+
+    public CompiledFilterInvocationSecurityMetadataSource(UrlMatcher urlMatcher, boolean stripQueryStringFromUrls,
+                                                          Map<String, Map<Object, Collection<ConfigAttribute>>> httpMethodMap,
+                                                          Collection<ConfigAttribute> allConfigAttributes) {
+        this.urlMatcher = urlMatcher;
+        this.stripQueryStringFromUrls = stripQueryStringFromUrls;
+        this.allConfigAttributes = allConfigAttributes;
+        for (Map.Entry<String, Map<Object, Collection<ConfigAttribute>>> entry : httpMethodMap.entrySet()) {
+            tries.put(entry.getKey(), new PatternTrie(urlMatcher, entry.getValue()));
+        }
+    }
+
+    /**
+     * Compile the rules of the passed metadata source, or return null if its internal layout is not the
+     * one of Spring Security 3.0.
+     */
+    @SuppressWarnings("unchecked")
+    public static CompiledFilterInvocationSecurityMetadataSource compile(DefaultFilterInvocationSecurityMetadataSource source) {
+        Field httpMethodMap = ReflectionUtils.findField(DefaultFilterInvocationSecurityMetadataSource.class, "httpMethodMap");
+        Field urlMatcher = ReflectionUtils.findField(DefaultFilterInvocationSecurityMetadataSource.class, "urlMatcher");
+        Field stripQueryString = ReflectionUtils.findField(DefaultFilterInvocationSecurityMetadataSource.class,
+                "stripQueryStringFromUrls");
+        if (httpMethodMap == null || urlMatcher == null || stripQueryString == null) {
+            logger.warn("Unknown layout of " + source.getClass().getName() + ", intercept-url rules are not compiled");
+            return null;
+        }
+        ReflectionUtils.makeAccessible(httpMethodMap);
+        ReflectionUtils.makeAccessible(urlMatcher);
+        ReflectionUtils.makeAccessible(stripQueryString);
+
+        return new CompiledFilterInvocationSecurityMetadataSource(
+                (UrlMatcher) ReflectionUtils.getField(urlMatcher, source),
+                (Boolean) ReflectionUtils.getField(stripQueryString, source),
+                (Map<String, Map<Object, Collection<ConfigAttribute>>>) ReflectionUtils.getField(httpMethodMap, source),
+                source.getAllConfigAttributes());
+    }
+
+    public Collection<ConfigAttribute> getAttributes(Object object) {
+        FilterInvocation invocation = (FilterInvocation) object;
+        return lookupAttributes(invocation.getRequestUrl(), invocation.getHttpRequest().getMethod());
+    }
+
+    /**
+     * Same lookup as DefaultFilterInvocationSecurityMetadataSource: the rules of the http method first,
+     * then the rules for any method.
+     */
+    public Collection<ConfigAttribute> lookupAttributes(String url, String method) {
+        if (stripQueryStringFromUrls) {
+            int query = url.indexOf('?');
+            if (query != -1) {
+                url = url.substring(0, query);
+            }
+        }
+        if (urlMatcher.requiresLowerCaseUrl()) {
+            url = url.toLowerCase();
+        }
+
+        Collection<ConfigAttribute> attributes = null;
+        PatternTrie trie = method != null ? tries.get(method) : null;
+        if (trie != null) {
+            attributes = trie.lookup(url);
+        }
+        if (attributes == null) {
+            trie = tries.get(null);
+            if (trie != null) {
+                attributes = trie.lookup(url);
+            }
+        }
+        return attributes;
+    }
+
+    public Collection<ConfigAttribute> getAllConfigAttributes() {
+        return allConfigAttributes;
+    }
+
+    public boolean supports(Class<?> clazz) {
+        return FilterInvocation.class.isAssignableFrom(clazz);
+    }
+
+    /**
+     * Trie on the literal prefixes of the ordered rules of one http method.
+     */
+    static class PatternTrie {
+        private final UrlMatcher urlMatcher;
+        private final Object[] patterns;
+        private final CompiledConfigAttributes[] attributes;
+        private final Node root = new Node();
+
+        PatternTrie(UrlMatcher urlMatcher, Map<Object, Collection<ConfigAttribute>> rules) {
+            this.urlMatcher = urlMatcher;
+            this.patterns = new Object[rules.size()];
+            this.attributes = new CompiledConfigAttributes[rules.size()];
+
+            int index = 0;
+            for (Map.Entry<Object, Collection<ConfigAttribute>> rule : rules.entrySet()) {
+                patterns[index] = rule.getKey();
+                attributes[index] = new CompiledConfigAttributes(rule.getKey().toString(), rule.getValue());
+                Node node = root;
+                for (char c : literalPrefix(rule.getKey()).toCharArray()) {
+                    node = node.child(c, true);
+                }
+                node.add(index++);
+            }
+        }
+
+        /**
+         * Return the attributes of the first rule, in declaration order, matching the url.
+         */
+        Collection<ConfigAttribute> lookup(String url) {
+            int best = Integer.MAX_VALUE;
+            Node node = root;
+            int position = 0;
+            while (node != null) {
+                for (int i = 0; i < node.size && node.rules[i] < best; i++) {
+                    if (urlMatcher.pathMatchesUrl(patterns[node.rules[i]], url)) {
+                        best = node.rules[i];
+                        break;
+                    }
+                }
+                node = position < url.length() ? node.child(url.charAt(position++), false) : null;
+            }
+            return best == Integer.MAX_VALUE ? null : attributes[best];
+        }
+
+        /**
+         * Only ant patterns have a literal prefix; other patterns are candidates for every url. The prefix
+         * stops before the last '/' preceding a wildcard, as a wildcard segment may also match nothing:
+         * /admin/** matches /admin. The matcher has the final say on every candidate.
+         */
+        String literalPrefix(Object pattern) {
+            if (!(urlMatcher instanceof AntUrlPathMatcher) || !(pattern instanceof String)) {
+                return "";
+            }
+            String ant = (String) pattern;
+            int end = 0;
+            while (end < ant.length() && "*?{".indexOf(ant.charAt(end)) < 0) {
+                end++;
+            }
+            if (end == ant.length()) {
+                return ant;
+            }
+            return ant.substring(0, Math.max(ant.lastIndexOf('/', end - 1), 0));
+        }
+    }
+
+    static class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private int[] rules = new int[0];
+        private int size;
+
+        Node child(char c, boolean create) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c) {
+                    return children[i];
+                }
+            }
+            if (!create) {
+                return null;
+            }
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[keys.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, keys.length);
+            System.arraycopy(children, 0, newChildren, 0, keys.length);
+            newKeys[keys.length] = c;
+            newChildren[keys.length] = new Node();
+            keys = newKeys;
+            children = newChildren;
+            return children[keys.length - 1];
+        }
+
+        /**
+         * Rules are added in declaration order, so they stay sorted.
+         */
+        void add(int rule) {
+            int[] newRules = new int[size + 1];
+            System.arraycopy(rules, 0, newRules, 0, size);
+            newRules[size++] = rule;
+            rules = newRules;
+        }
+    }
+}
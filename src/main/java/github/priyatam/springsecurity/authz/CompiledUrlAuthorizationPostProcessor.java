@@ -0,0 +1,85 @@
+package github.priyatam.springsecurity.authz;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.security.access.AccessDecisionVoter;
+import org.springframework.security.access.vote.AbstractAccessDecisionManager;
+import org.springframework.security.access.vote.AuthenticatedVoter;
+import org.springframework.security.access.vote.RoleVoter;
+import org.springframework.security.web.access.expression.WebExpressionVoter;
+import org.springframework.security.web.access.intercept.DefaultFilterInvocationSecurityMetadataSource;
+import org.springframework.security.web.access.intercept.FilterSecurityInterceptor;
+
+/**
+ * Replaces the intercept-url rules of the FilterSecurityInterceptor built by the security namespace with a
+ * CompiledFilterInvocationSecurityMetadataSource, and, when all its voters only look at the authentication,
+ * wraps its AccessDecisionManager with a CachingAccessDecisionManager.
+ */
+public class CompiledUrlAuthorizationPostProcessor implements BeanPostProcessor {
+    static Logger logger = LoggerFactory.getLogger(CompiledUrlAuthorizationPostProcessor.class);
+
+    private int decisionCacheSize = 1024;
+    private long decisionCacheTtl = 300;
+
+    public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+        if (!(bean instanceof FilterSecurityInterceptor)) {
+            return bean;
+        }
+
+        FilterSecurityInterceptor interceptor = (FilterSecurityInterceptor) bean;
+        if (!(interceptor.getSecurityMetadataSource() instanceof DefaultFilterInvocationSecurityMetadataSource)) {
+            return bean;
+        }
+
+        CompiledFilterInvocationSecurityMetadataSource compiled = CompiledFilterInvocationSecurityMetadataSource.compile(
+                (DefaultFilterInvocationSecurityMetadataSource) interceptor.getSecurityMetadataSource());
+        if (compiled == null) {
+            return bean;
+        }
+        interceptor.setSecurityMetadataSource(compiled);
+
+        if (hasAuthenticationOnlyVoters(interceptor)) {
+            interceptor.setAccessDecisionManager(new CachingAccessDecisionManager(
+                    interceptor.getAccessDecisionManager(), decisionCacheSize, decisionCacheTtl * 1000));
+            logger.info("Compiled intercept-url rules of " + beanName + ", with a decision cache of "
+                    + decisionCacheSize + " entries");
+        } else {
+            logger.info("Compiled intercept-url rules of " + beanName + ", without decision cache: custom voters");
+        }
+        return bean;
+    }
+
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        return bean;
+    }
+
+    /**
+     * The stock voters of the namespace decide from the authorities and the trust level of the
+     * authentication (and, for expressions, whatever the expression reads: see CompiledConfigAttributes).
+     */
+    private boolean hasAuthenticationOnlyVoters(FilterSecurityInterceptor interceptor) {
+        if (!(interceptor.getAccessDecisionManager() instanceof AbstractAccessDecisionManager)) {
+            return false;
+        }
+        for (AccessDecisionVoter voter : ((AbstractAccessDecisionManager) interceptor.getAccessDecisionManager()).getDecisionVoters()) {
+            Class<?> type = voter.getClass();
+            if (type != RoleVoter.class && type != AuthenticatedVoter.class && type != WebExpressionVoter.class) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void setDecisionCacheSize(int decisionCacheSize) {
+        this.decisionCacheSize = decisionCacheSize;
+    }
+
+    /**
+     * Lifetime, in seconds, of a cached decision.
+     */
+    public void setDecisionCacheTtl(long decisionCacheTtl) {
+        this.decisionCacheTtl = decisionCacheTtl;
+    }
+}
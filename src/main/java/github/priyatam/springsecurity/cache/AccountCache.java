@@ -0,0 +1,166 @@
+package github.priyatam.springsecurity.cache;
+
+import github.priyatam.springsecurity.domain.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process authorization cache of read-only User snapshots (user and role names), keyed by username.
+ * Shared by AccountContextSupport and AccountDetailsServiceImpl so that a page view does not need to
+ * run the User.FIND_BY_USERNAME query once the account has been loaded.
+ * <p/>
+ * Entries are keyed by the exact username the lookup was made with, compared like the Db lookup and the
+ * UnknownUserCache do: a snapshot loaded for a spelling that differs from the stored username is cached
+ * under the spelling asked for.
+ * <p/>
+ * Call <code>invalidate</code> whenever an account or its roles are changed.
+ * <p/>
+ * Concurrent misses for the same user are coalesced by <code>load</code> into one query.
+ */
+@Service
+public class AccountCache {
+    static Logger logger = LoggerFactory.getLogger(AccountCache.class);
+
+    private int maxSize = 10000;
+    private long expireAfterWriteSeconds = 600;
+    private long expireAfterAccessSeconds = 120;
+    private long warmedExpireAfterAccessSeconds = 600;
+    private long loadTimeoutSeconds = 10;
+
+    private BoundedCache<String, User> cache;
+    private final SingleFlight<String, User> loads = new SingleFlight<String, User>();
+
+    @PostConstruct
+    public void initialize() {
+        cache = new BoundedCache<String, User>(maxSize, expireAfterWriteSeconds * 1000, expireAfterAccessSeconds * 1000);
+        logger.info("Account cache initialized: maxSize=" + maxSize + ", expireAfterWrite=" + expireAfterWriteSeconds
+                + "s, expireAfterAccess=" + expireAfterAccessSeconds + "s");
+    }
+
+    /**
+     * Return the cached snapshot of the passed user, or <code>null</code> if it must be loaded.
+     */
+    public User get(String username) {
+        return cache().get(username);
+    }
+
+    /**
+     * Cache a read-only snapshot of the passed account and return it.
+     */
+    public User put(User account) {
+        User snapshot = account.snapshot();
+        cache().put(snapshot.getUsername(), snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Cache a read-only snapshot of an account loaded ahead of use, e.g. by the AccountCacheWarmer. It expires
+     * warmedExpireAfterAccessSeconds after its last read rather than expireAfterAccessSeconds, so that it is
+     * still there when its user first logs in.
+     */
+    public User warm(User account) {
+        User snapshot = account.snapshot();
+        cache().put(snapshot.getUsername(), snapshot, warmedExpireAfterAccessSeconds * 1000);
+        return snapshot;
+    }
+
+    /**
+     * Load the account of the passed user with the passed loader and cache its snapshot. Concurrent
+     * callers for the same user wait for the first one's load, for up to loadTimeoutSeconds, and share
+     * its snapshot or its exception.
+     *
+     * @throws SingleFlight.LoadTimeoutException when waiting for another caller's load timed out
+     */
+    public User load(final String username, final Callable<User> loader) {
+        return loads.load(username, new Callable<User>() {
+            public User call() throws Exception {
+                User snapshot = loader.call().snapshot();
+                cache().put(username, snapshot);
+                return snapshot;
+            }
+        }, loadTimeoutSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Drop the entry of the passed username. Entries loaded under another spelling of it expire after
+     * expireAfterWriteSeconds.
+     */
+    public void invalidate(String username) {
+        cache().invalidate(username);
+    }
+
+    public void invalidateAll() {
+        cache().invalidateAll();
+    }
+
+    public int getSize() {
+        return cache().size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHitCount() {
+        return cache().getHitCount();
+    }
+
+    public long getMissCount() {
+        return cache().getMissCount();
+    }
+
+    public long getLoadCount() {
+        return loads.getLoadCount();
+    }
+
+    /**
+     * Return the number of misses served by a concurrent caller's load.
+     */
+    public long getSharedLoadCount() {
+        return loads.getSharedCount();
+    }
+
+    public long getEvictionCount() {
+        return cache().getEvictionCount();
+    }
+
+    public long getExpirationCount() {
+        return cache().getExpirationCount();
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public void setExpireAfterWriteSeconds(long expireAfterWriteSeconds) {
+        this.expireAfterWriteSeconds = expireAfterWriteSeconds;
+    }
+
+    public void setExpireAfterAccessSeconds(long expireAfterAccessSeconds) {
+        this.expireAfterAccessSeconds = expireAfterAccessSeconds;
+    }
+
+    /**
+     * Expire-after-access lifetime of the warmed entries, 600s by default; 0 for none, they then only
+     * expire after expireAfterWriteSeconds.
+     */
+    public void setWarmedExpireAfterAccessSeconds(long warmedExpireAfterAccessSeconds) {
+        this.warmedExpireAfterAccessSeconds = warmedExpireAfterAccessSeconds;
+    }
+
+    public void setLoadTimeoutSeconds(long loadTimeoutSeconds) {
+        this.loadTimeoutSeconds = loadTimeoutSeconds;
+    }
+
+    private BoundedCache<String, User> cache() {
+        if (cache == null) {
+            throw new IllegalStateException("AccountCache is not initialized");
+        }
+        return cache;
+    }
+}
@@ -0,0 +1,230 @@
+package github.priyatam.springsecurity.cache;
+
+import github.priyatam.springsecurity.domain.User;
+import org.hibernate.CacheMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.stereotype.Service;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fills the AccountCache when the application context is refreshed, that is before the application
+ * serves its first request, so that the first wave of requests does not query the users one by one.
+ * <p/>
+ * Users and role names are streamed by a single join query ordered by user id (JDBC fetch size of
+ * <code>pageSize</code>) and put in the cache page by page. With a <code>parallelism</code> greater than
+ * one, the users are partitioned by id and each partition is streamed by its own worker. Loading stops
+ * when the time budget is spent, cancelling the running queries, or when the cache is full.
+ * <p/>
+ * Warmed entries expire after AccountCache's warmedExpireAfterAccessSeconds, so that they are still
+ * there when their users first log in.
+ */
+@Service
+public class AccountCacheWarmer implements ApplicationListener<ContextRefreshedEvent> {
+    static Logger logger = LoggerFactory.getLogger(AccountCacheWarmer.class);
+
+    private static final String USERS_AND_ROLES =
+            "select u.id, u.username, u.password, r.roleName, r.id from User u left join u.roles r "
+                    + "where mod(u.id, :partitions) = :partition order by u.id";
+
+    @PersistenceUnit
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private AccountCache accountCache;
+
+    private boolean enabled = true;
+    private int pageSize = 500;
+    private int parallelism = 1;
+    private long timeBudget = 30;
+
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final Set<Session> running = Collections.newSetFromMap(new ConcurrentHashMap<Session, Boolean>());
+    private volatile int loadedCount;
+    private volatile long durationMillis;
+
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        if (enabled && started.compareAndSet(false, true)) {
+            warmUp();
+        }
+    }
+
+    /**
+     * Load the users in the cache, within the time budget.
+     *
+     * @return the number of cached users
+     */
+    public int warmUp() {
+        long start = System.currentTimeMillis();
+        final long deadline = start + timeBudget * 1000;
+        final AtomicInteger loaded = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        for (int i = 0; i < parallelism; i++) {
+            final int partition = i;
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        loadPartition(partition, deadline, loaded);
+                    } catch (RuntimeException e) {
+                        if (System.currentTimeMillis() > deadline) {
+                            logger.debug("Account cache warm-up of partition " + partition + " stopped: " + e.getMessage());
+                        } else {
+                            logger.warn("Account cache warm-up of partition " + partition + " failed: " + e.getMessage());
+                        }
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+
+        try {
+            if (!executor.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+                logger.warn("Account cache warm-up exceeded its time budget of " + timeBudget + "s");
+                cancel(executor);
+            }
+        } catch (InterruptedException e) {
+            cancel(executor);
+            Thread.currentThread().interrupt();
+        }
+
+        loadedCount = loaded.get();
+        durationMillis = System.currentTimeMillis() - start;
+        logger.info("Account cache warm-up loaded " + loadedCount + " users in " + durationMillis + "ms");
+        return loadedCount;
+    }
+
+    /**
+     * Stop the workers: interrupting them does not stop a JDBC fetch, so their queries are cancelled too.
+     */
+    private void cancel(ExecutorService executor) {
+        executor.shutdownNow();
+        for (Session session : running) {
+            try {
+                session.cancelQuery();
+            } catch (RuntimeException e) {
+                logger.debug("Could not cancel a warm-up query: " + e.getMessage());
+            }
+        }
+    }
+
+    private void loadPartition(int partition, long deadline, AtomicInteger loaded) {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        Session session = entityManager.unwrap(Session.class);
+        ScrollableResults rows = null;
+        running.add(session);
+        try {
+            rows = session.createQuery(USERS_AND_ROLES)
+                    .setParameter("partitions", parallelism)
+                    .setParameter("partition", partition)
+                    .setReadOnly(true)
+                    .setCacheMode(CacheMode.IGNORE)
+                    .setFetchSize(pageSize)
+                    .setTimeout((int) Math.max(1, (deadline - System.currentTimeMillis() + 999) / 1000))
+                    .scroll(ScrollMode.FORWARD_ONLY);
+
+            List<User> page = new ArrayList<User>(pageSize);
+            Long id = null;
+            String username = null;
+            String password = null;
+            List<Long> roleIds = new ArrayList<Long>();
+            List<String> roleNames = new ArrayList<String>();
+
+            while (rows.next()) {
+                if (System.currentTimeMillis() > deadline || Thread.currentThread().isInterrupted()) {
+                    flush(page, loaded);
+                    return;
+                }
+                Long rowId = rows.getLong(0);
+                if (!rowId.equals(id)) {
+                    if (id != null) {
+                        page.add(User.newSnapshot(id, username, password, roleIds, roleNames));
+                        if (page.size() == pageSize && !flush(page, loaded)) {
+                            return;
+                        }
+                    }
+                    id = rowId;
+                    username = rows.getString(1);
+                    password = rows.getString(2);
+                    roleIds = new ArrayList<Long>();
+                    roleNames = new ArrayList<String>();
+                }
+                Long roleId = rows.getLong(4);
+                if (roleId != null) {
+                    roleIds.add(roleId);
+                    roleNames.add(rows.getString(3));
+                }
+            }
+            if (id != null) {
+                page.add(User.newSnapshot(id, username, password, roleIds, roleNames));
+            }
+            flush(page, loaded);
+        } finally {
+            running.remove(session);
+            if (rows != null) {
+                rows.close();
+            }
+            entityManager.close();
+        }
+    }
+
+    /**
+     * Put a page of snapshots in the cache.
+     *
+     * @return false when the cache is full
+     */
+    private boolean flush(List<User> page, AtomicInteger loaded) {
+        for (User snapshot : page) {
+            accountCache.warm(snapshot);
+        }
+        int total = loaded.addAndGet(page.size());
+        page.clear();
+        return total < accountCache.getMaxSize();
+    }
+
+    public int getLoadedCount() {
+        return loadedCount;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Maximum time, in seconds, spent loading the cache.
+     */
+    public void setTimeBudget(long timeBudget) {
+        this.timeBudget = timeBudget;
+    }
+}
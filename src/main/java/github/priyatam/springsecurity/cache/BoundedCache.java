@@ -0,0 +1,211 @@
+package github.priyatam.springsecurity.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A small in-process cache bounded in size, with expire-after-write and expire-after-access policies.
+ * <p/>
+ * Entries are spread over a fixed number of segments, each one an access-ordered LinkedHashMap guarded
+ * by its own lock, so the least recently used entry of a segment is evicted when the segment is full.
+ * Values are expected to be immutable as they are shared between threads.
+ */
+public class BoundedCache<K, V> {
+
+    private static final int DEFAULT_SEGMENTS = 16;
+
+    private final Segment<K, V>[] segments;
+    private final long expireAfterWriteNanos;
+    private final long expireAfterAccessNanos;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong expirationCount = new AtomicLong();
+
+    /**
+     * @param maxSize                 the maximum number of entries, across all segments
+     * @param expireAfterWriteMillis  lifetime of an entry since it was put, or 0 for no limit
+     * @param expireAfterAccessMillis lifetime of an entry since it was last read, or 0 for no limit
+     */
+    public BoundedCache(int maxSize, long expireAfterWriteMillis, long expireAfterAccessMillis) {
+        this(maxSize, expireAfterWriteMillis, expireAfterAccessMillis, DEFAULT_SEGMENTS);
+    }
+
+    @SuppressWarnings("unchecked")
+    public BoundedCache(int maxSize, long expireAfterWriteMillis, long expireAfterAccessMillis, int segmentCount) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        }
+        int count = Math.max(1, Math.min(segmentCount, maxSize));
+        this.segments = (Segment<K, V>[]) new Segment<?, ?>[count];
+        int perSegment = (maxSize + count - 1) / count;
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment<K, V>(perSegment, evictionCount);
+        }
+        this.expireAfterWriteNanos = expireAfterWriteMillis * 1000000L;
+        this.expireAfterAccessNanos = expireAfterAccessMillis * 1000000L;
+    }
+
+    /**
+     * Return the cached value for the passed key, or <code>null</code> if absent or expired.
+     */
+    public V get(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        long now = System.nanoTime();
+        synchronized (segment) {
+            Entry<V> entry = segment.get(key);
+            if (entry != null) {
+                if (isExpired(entry, now)) {
+                    segment.remove(key);
+                    expirationCount.incrementAndGet();
+                } else {
+                    entry.accessed = now;
+                    hitCount.incrementAndGet();
+                    return entry.value;
+                }
+            }
+        }
+        missCount.incrementAndGet();
+        return null;
+    }
+
+    public void put(K key, V value) {
+        store(key, value, expireAfterAccessNanos);
+    }
+
+    /**
+     * Put an entry with its own expire-after-access lifetime, e.g. a longer one for entries loaded ahead of use.
+     *
+     * @param expireAfterAccessMillis lifetime of the entry since it was last read, or 0 for no limit
+     */
+    public void put(K key, V value, long expireAfterAccessMillis) {
+        store(key, value, expireAfterAccessMillis * 1000000L);
+    }
+
+    private void store(K key, V value, long expireAfterAccessNanos) {
+        if (value == null) {
+            invalidate(key);
+            return;
+        }
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, new Entry<V>(value, System.nanoTime(), expireAfterAccessNanos));
+        }
+    }
+
+    public void invalidate(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.remove(key);
+        }
+    }
+
+    public void invalidateAll() {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * Drop the expired entries. Expired entries are otherwise only dropped when they are read or pushed
+     * out by newer ones.
+     */
+    public void cleanUp() {
+        long now = System.nanoTime();
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                Iterator<Entry<V>> it = segment.values().iterator();
+                while (it.hasNext()) {
+                    if (isExpired(it.next(), now)) {
+                        it.remove();
+                        expirationCount.incrementAndGet();
+                    }
+                }
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Return the number of entries removed because the cache was full.
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * Return the number of entries removed because they were expired.
+     */
+    public long getExpirationCount() {
+        return expirationCount.get();
+    }
+
+    private boolean isExpired(Entry<V> entry, long now) {
+        return (expireAfterWriteNanos > 0 && now - entry.written >= expireAfterWriteNanos)
+                || (entry.expireAfterAccessNanos > 0 && now - entry.accessed >= entry.expireAfterAccessNanos);
+    }
+
+    private Segment<K, V> segmentFor(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[(h & 0x7fffffff) % segments.length];
+    }
+
+    private static final class Entry<V> {
+        final V value;
+        final long written;
+        final long expireAfterAccessNanos;
+        volatile long accessed;
+
+        Entry(V value, long now, long expireAfterAccessNanos) {
+            this.value = value;
+            this.written = now;
+            this.expireAfterAccessNanos = expireAfterAccessNanos;
+            this.accessed = now;
+        }
+    }
+
+    private static final class Segment<K, V> extends LinkedHashMap<K, Entry<V>> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+        private final AtomicLong evictionCount;
+
+        Segment(int capacity, AtomicLong evictionCount) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            this.evictionCount = evictionCount;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+            if (size() > capacity) {
+                evictionCount.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+}
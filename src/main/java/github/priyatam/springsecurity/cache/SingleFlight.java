@@ -0,0 +1,89 @@
+package github.priyatam.springsecurity.cache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces concurrent loads of the same key: the first caller runs the load on its own thread, the
+ * callers arriving while it is in flight wait for it and share its result or its exception.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, FutureTask<V>> inFlight = new ConcurrentHashMap<K, FutureTask<V>>();
+
+    private final AtomicLong loadCount = new AtomicLong();
+    private final AtomicLong sharedCount = new AtomicLong();
+
+    /**
+     * Load the value of the key, or wait for the load in flight for up to the passed timeout.
+     *
+     * @throws LoadTimeoutException when waiting for another caller's load timed out
+     */
+    public V load(K key, Callable<V> loader, long timeout, TimeUnit unit) {
+        FutureTask<V> task = new FutureTask<V>(loader);
+        FutureTask<V> existing = inFlight.putIfAbsent(key, task);
+        if (existing == null) {
+            loadCount.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                inFlight.remove(key, task);
+            }
+            return get(task, key, 0, null);
+        }
+
+        sharedCount.incrementAndGet();
+        return get(existing, key, timeout, unit);
+    }
+
+    /**
+     * Return the number of loads run.
+     */
+    public long getLoadCount() {
+        return loadCount.get();
+    }
+
+    /**
+     * Return the number of callers served by another caller's load.
+     */
+    public long getSharedCount() {
+        return sharedCount.get();
+    }
+
+    private V get(FutureTask<V> task, K key, long timeout, TimeUnit unit) {
+        try {
+            return unit == null ? task.get() : task.get(timeout, unit);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Loading " + key + " failed", cause);
+        } catch (TimeoutException e) {
+            throw new LoadTimeoutException("Timed out waiting for the load of " + key);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the load of " + key, e);
+        }
+    }
+
+    /**
+     * Thrown to a caller that timed out waiting for another caller's load.
+     */
+    public static class LoadTimeoutException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public LoadTimeoutException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package github.priyatam.springsecurity.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Short-lived negative cache of usernames without an account, keyed by the exact username the account
+ * query was run with: the query is case-sensitive, so another spelling may still have an account. A
+ * Windows client retrying the handshake for an unmapped user then fails fast instead of running the
+ * account query, and the Windows principal construction, again.
+ * <p/>
+ * Accounts persisted through JPA invalidate their entry, see UserCacheListener. Call <code>invalidate</code>
+ * when accounts are created by other means.
+ */
+@Service
+public class UnknownUserCache {
+    static Logger logger = LoggerFactory.getLogger(UnknownUserCache.class);
+
+    private int maxSize = 10000;
+    private long expireAfterWriteSeconds = 60;
+
+    private BoundedCache<String, Boolean> cache;
+    private final AtomicLong suppressedCount = new AtomicLong();
+
+    @PostConstruct
+    public void initialize() {
+        cache = new BoundedCache<String, Boolean>(maxSize, expireAfterWriteSeconds * 1000, 0);
+        UserCacheListener.register(this);
+        logger.info("Unknown user cache initialized: maxSize=" + maxSize + ", expireAfterWrite="
+                + expireAfterWriteSeconds + "s");
+    }
+
+    @PreDestroy
+    public void destroy() {
+        UserCacheListener.unregister(this);
+    }
+
+    /**
+     * Tell whether the passed user is known to have no account. Counts a suppressed lookup if so.
+     */
+    public boolean isUnknown(String username) {
+        if (username == null || cache().get(username) == null) {
+            return false;
+        }
+        suppressedCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Remember that the passed user has no account.
+     */
+    public void markUnknown(String username) {
+        if (username != null) {
+            cache().put(username, Boolean.TRUE);
+        }
+    }
+
+    public void invalidate(String username) {
+        if (username != null) {
+            cache().invalidate(username);
+        }
+    }
+
+    public void invalidateAll() {
+        cache().invalidateAll();
+    }
+
+    /**
+     * Return the number of lookups answered from this cache instead of the database.
+     */
+    public long getSuppressedCount() {
+        return suppressedCount.get();
+    }
+
+    public int getSize() {
+        return cache().size();
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public void setExpireAfterWriteSeconds(long expireAfterWriteSeconds) {
+        this.expireAfterWriteSeconds = expireAfterWriteSeconds;
+    }
+
+    private BoundedCache<String, Boolean> cache() {
+        if (cache == null) {
+            throw new IllegalStateException("UnknownUserCache is not initialized");
+        }
+        return cache;
+    }
+}
@@ -0,0 +1,34 @@
+package github.priyatam.springsecurity.cache;
+
+import github.priyatam.springsecurity.domain.User;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostUpdate;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * JPA entity listener of User invalidating the negative cache entry of an account once it is created
+ * or renamed. JPA instantiates entity listeners itself, so the caches register here when initialized, and
+ * unregister when destroyed so a redeployed application does not leave its caches behind.
+ */
+public class UserCacheListener {
+
+    private static final CopyOnWriteArrayList<UnknownUserCache> unknownUserCaches =
+            new CopyOnWriteArrayList<UnknownUserCache>();
+
+    static void register(UnknownUserCache unknownUserCache) {
+        unknownUserCaches.addIfAbsent(unknownUserCache);
+    }
+
+    static void unregister(UnknownUserCache unknownUserCache) {
+        unknownUserCaches.remove(unknownUserCache);
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void accountSaved(User user) {
+        for (UnknownUserCache unknownUserCache : unknownUserCaches) {
+            unknownUserCache.invalidate(user.getUsername());
+        }
+    }
+}
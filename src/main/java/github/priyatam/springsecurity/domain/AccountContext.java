@@ -6,6 +6,7 @@ import org.springframework.util.StringUtils;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Callable;
 
 /**
  * Convenience class to set and/or retrieve from the current thread of execution account information such as
@@ -19,17 +20,22 @@ import java.util.Locale;
  * Usually, you set this information as soon as it becomes available (e.g. in a servlet filter) so
  * you can access it during almost the entire lifecycle of an http-request.
  * <p/>
- * As data are stored in InheritableThreadLocal this method can be used also in spawn threads
+ * The context is bound to the current thread only. It is not inherited by spawned or pooled threads:
+ * propagate it explicitly with {@link #wrap(Runnable)}, {@link #wrap(Callable)} or an
+ * AccountContextExecutorService, which restore the previous context of the worker thread afterwards.
+ * <p/>
+ * Subclasses may load the values lazily by overriding the getters; the other methods only go through them.
  */
 public class AccountContext {
 
     public static final String USER_SYSTEM = "system!";
 
-    private static final ThreadLocal<AccountContext> accountContextHolder = new InheritableThreadLocal<AccountContext>();
+    private static final ThreadLocal<AccountContext> accountContextHolder = new ThreadLocal<AccountContext>();
 
     private String sessionId;
     private String username;
     private List<String> roles;
+    private RoleSet roleSet = RoleSet.EMPTY;
     private User account;
 
     /**
@@ -52,7 +58,51 @@ public class AccountContext {
      * Reset the account context bound to the current thread.
      */
     public static void resetAccountContext() {
-        accountContextHolder.set(null);
+        accountContextHolder.remove();
+    }
+
+    /**
+     * Return a task running the passed one with the account context of the calling thread.
+     */
+    public static Runnable wrap(final Runnable task) {
+        final AccountContext captured = getAccountContext();
+        return new Runnable() {
+            public void run() {
+                AccountContext previous = bind(captured);
+                try {
+                    task.run();
+                } finally {
+                    bind(previous);
+                }
+            }
+        };
+    }
+
+    /**
+     * Return a task calling the passed one with the account context of the calling thread.
+     */
+    public static <T> Callable<T> wrap(final Callable<T> task) {
+        final AccountContext captured = getAccountContext();
+        return new Callable<T>() {
+            public T call() throws Exception {
+                AccountContext previous = bind(captured);
+                try {
+                    return task.call();
+                } finally {
+                    bind(previous);
+                }
+            }
+        };
+    }
+
+    private static AccountContext bind(AccountContext accountContext) {
+        AccountContext previous = accountContextHolder.get();
+        if (accountContext == null) {
+            accountContextHolder.remove();
+        } else {
+            accountContextHolder.set(accountContext);
+        }
+        return previous;
     }
 
     public void setSessionId(String sessionId) {
@@ -89,6 +139,7 @@ public class AccountContext {
      */
     public void setRoles(List<String> roles) {
         this.roles = roles;
+        this.roleSet = RoleSet.of(roles);
     }
 
     /**
@@ -105,19 +156,19 @@ public class AccountContext {
     }
 
     /**
-     * Tell whether the passed role is set?
+     * Return the roles associated with the current thread as a bitset over the RoleRegistry ids.
+     */
+    public RoleSet getRoleSet() {
+        return roleSet;
+    }
+
+    /**
+     * Tell whether the passed role is set? Role names are not case sensitive.
      *
      * @return true if the passed role is present, false otherwise.
      */
     public boolean hasRole(String roleName) {
-        List<String> roles = getRoleNames();
-        for (String role : roles) {
-            if (role.equalsIgnoreCase(roleName)) {
-                return true;
-            }
-        }
-
-        return false;
+        return getRoleSet().contains(roleName);
     }
 
     /**
@@ -135,6 +186,13 @@ public class AccountContext {
         return true;
     }
 
+    /**
+     * Tell whether all the roles of the passed precompiled set are set?
+     */
+    public boolean hasAllRoles(RoleSet requiredRoles) {
+        return getRoleSet().containsAll(requiredRoles);
+    }
+
     /**
      * Tell whether at least one of the passed roles is set?
      *
@@ -150,6 +208,13 @@ public class AccountContext {
         return false;
     }
 
+    /**
+     * Tell whether at least one of the roles of the passed precompiled set is set?
+     */
+    public boolean hasAnyRole(RoleSet roles) {
+        return getRoleSet().intersects(roles);
+    }
+
     /**
      * Tell whether all the passed roles are NOT set?
      *
@@ -165,6 +230,13 @@ public class AccountContext {
         return true;
     }
 
+    /**
+     * Tell whether none of the roles of the passed precompiled set is set?
+     */
+    public boolean hasNoRole(RoleSet roles) {
+        return !getRoleSet().intersects(roles);
+    }
+
     /**
      * Bind the passed account to this account context.
      */
@@ -189,6 +261,7 @@ public class AccountContext {
      * @return true if the account primary keys are equal, false otherwise.
      */
     public boolean isAccount(User accountToCheck) {
+        User account = getAccount();
         if (account != null && account.getId() != null && accountToCheck != null) {
             return account.getId().equals(accountToCheck.getId());
         }
@@ -0,0 +1,54 @@
+package github.priyatam.springsecurity.domain;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable view of what authorization needs to know about an account: its username and role names.
+ * <p/>
+ * Built from a User snapshot, cached or just built from the <code>User.SNAPSHOT_BY_USERNAME</code> projection,
+ * so that no User entity is hydrated or kept in the persistence context.
+ */
+public final class AuthorizationSnapshot implements Serializable {
+    static final private long serialVersionUID = 1L;
+
+    private final String username;
+    private final List<String> roleNames;
+    private transient RoleSet roleSet;
+
+    public AuthorizationSnapshot(String username, List<String> roleNames) {
+        this.username = username;
+        this.roleNames = Collections.unmodifiableList(new ArrayList<String>(roleNames));
+    }
+
+    public static AuthorizationSnapshot of(User account) {
+        return new AuthorizationSnapshot(account.getUsername(), account.getRoleNames());
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public List<String> getRoleNames() {
+        return roleNames;
+    }
+
+    /**
+     * Returns the role names compiled to a RoleSet, computed once.
+     */
+    public RoleSet getRoleSet() {
+        RoleSet ret = roleSet;
+        if (ret == null) {
+            ret = RoleSet.of(roleNames);
+            roleSet = ret;
+        }
+        return ret;
+    }
+
+    @Override
+    public String toString() {
+        return username + roleNames;
+    }
+}
@@ -1,9 +1,14 @@
 package github.priyatam.springsecurity.domain;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import javax.persistence.*;
 import java.io.Serializable;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "github.priyatam.springsecurity.domain.Role")
 public class Role implements Serializable {
     static final private long serialVersionUID = 1L;
 
@@ -14,11 +19,22 @@ public class Role implements Serializable {
 
     private String roleName;
 
+    protected Role() {
+    }
+
     public Role(String roleName) {
         super();
         this.roleName = roleName;
     }
 
+    /**
+     * Detached copy of a persisted role, for the read-only User snapshots.
+     */
+    Role(Long id, String roleName) {
+        this.id = id;
+        this.roleName = roleName;
+    }
+
     public String getRoleName() {
         return roleName;
     }
@@ -59,7 +75,6 @@ public class Role implements Serializable {
             return false;
         } else if (getId().longValue() != (other.getId().longValue()))
             return false;
-        System.err.println("FOUND SAME ROLE: " + obj.toString());
         return true;
     }
 
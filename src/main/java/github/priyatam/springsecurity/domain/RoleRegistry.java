@@ -0,0 +1,75 @@
+package github.priyatam.springsecurity.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Process-wide registry mapping each role name, compared case-insensitively, to a dense int id.
+ * Ids are assigned on first registration and never change for the life of the process, so they
+ * can be used as bit indexes by {@link RoleSet}.
+ * <p/>
+ * Ids are local to the running process: do not persist them or send them to another node.
+ */
+public final class RoleRegistry {
+
+    private static final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+    private static final List<String> names = new ArrayList<String>();
+
+    private RoleRegistry() {
+    }
+
+    /**
+     * Return the id of the passed role, registering it if needed.
+     */
+    public static int register(String roleName) {
+        String key = normalize(roleName);
+        Integer id = ids.get(key);
+        if (id != null) {
+            return id;
+        }
+
+        synchronized (names) {
+            id = ids.get(key);
+            if (id == null) {
+                id = names.size();
+                names.add(key);
+                ids.put(key, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Return the id of the passed role, or -1 if it was never registered.
+     */
+    public static int idOf(String roleName) {
+        if (roleName == null) {
+            return -1;
+        }
+        Integer id = ids.get(normalize(roleName));
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Return the normalized name registered under the passed id.
+     */
+    public static String nameOf(int id) {
+        synchronized (names) {
+            return names.get(id);
+        }
+    }
+
+    /**
+     * Return the number of registered roles.
+     */
+    public static int size() {
+        return ids.size();
+    }
+
+    static String normalize(String roleName) {
+        return roleName.toUpperCase(Locale.ENGLISH);
+    }
+}
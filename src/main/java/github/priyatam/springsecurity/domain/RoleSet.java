@@ -0,0 +1,144 @@
+package github.priyatam.springsecurity.domain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Immutable set of roles backed by a bitset over the ids of the {@link RoleRegistry}.
+ * <p/>
+ * A RoleSet built once from constant role names can be kept (e.g. in a static field) and reused
+ * for every check, so that <code>AccountContext.hasAllRoles</code>, <code>hasAnyRole</code> and
+ * <code>hasNoRole</code> are a few word-wise AND operations.
+ */
+public final class RoleSet {
+
+    public static final RoleSet EMPTY = new RoleSet(new long[0]);
+
+    private final long[] words;
+
+    private RoleSet(long[] words) {
+        this.words = words;
+    }
+
+    /**
+     * Compile the passed role names to a RoleSet, registering the unknown ones.
+     */
+    public static RoleSet of(String... roleNames) {
+        return of(Arrays.asList(roleNames));
+    }
+
+    public static RoleSet of(Collection<String> roleNames) {
+        if (roleNames == null || roleNames.isEmpty()) {
+            return EMPTY;
+        }
+
+        long[] words = new long[0];
+        for (String roleName : roleNames) {
+            int id = RoleRegistry.register(roleName);
+            int index = id >>> 6;
+            if (index >= words.length) {
+                words = Arrays.copyOf(words, index + 1);
+            }
+            words[index] |= 1L << id;
+        }
+        return new RoleSet(words);
+    }
+
+    public boolean contains(int roleId) {
+        int index = roleId >>> 6;
+        return roleId >= 0 && index < words.length && (words[index] & (1L << roleId)) != 0;
+    }
+
+    public boolean contains(String roleName) {
+        return contains(RoleRegistry.idOf(roleName));
+    }
+
+    /**
+     * Tell whether every role of the passed set is in this set.
+     */
+    public boolean containsAll(RoleSet other) {
+        long[] otherWords = other.words;
+        for (int i = 0; i < otherWords.length; i++) {
+            long mine = i < words.length ? words[i] : 0L;
+            if ((otherWords[i] & ~mine) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tell whether at least one role of the passed set is in this set.
+     */
+    public boolean intersects(RoleSet other) {
+        long[] otherWords = other.words;
+        int length = Math.min(words.length, otherWords.length);
+        for (int i = 0; i < length; i++) {
+            if ((words[i] & otherWords[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isEmpty() {
+        for (long word : words) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int size() {
+        int size = 0;
+        for (long word : words) {
+            size += Long.bitCount(word);
+        }
+        return size;
+    }
+
+    /**
+     * Return the normalized names of the roles in this set.
+     */
+    public List<String> toRoleNames() {
+        List<String> result = new ArrayList<String>(size());
+        for (int i = 0; i < words.length; i++) {
+            long word = words[i];
+            while (word != 0) {
+                int bit = Long.numberOfTrailingZeros(word);
+                result.add(RoleRegistry.nameOf((i << 6) + bit));
+                word &= word - 1;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof RoleSet)) {
+            return false;
+        }
+        RoleSet other = (RoleSet) obj;
+        return containsAll(other) && other.containsAll(this);
+    }
+
+    @Override
+    public int hashCode() {
+        int last = words.length;
+        while (last > 0 && words[last - 1] == 0) {
+            last--;
+        }
+        return Arrays.hashCode(Arrays.copyOf(words, last));
+    }
+
+    @Override
+    public String toString() {
+        return toRoleNames().toString();
+    }
+}
@@ -1,19 +1,38 @@
 package github.priyatam.springsecurity.domain;
 
-import javax.management.relation.Role;
+import github.priyatam.springsecurity.cache.UserCacheListener;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.NaturalId;
+
 import javax.persistence.*;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+/**
+ * An account, looked up by its username, a unique natural id. The entity and its roles are cached in
+ * the second-level cache, and the username lookup in the query cache (see ehcache.xml).
+ */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "github.priyatam.springsecurity.domain.User")
+@EntityListeners(UserCacheListener.class)
 @NamedQueries({
-        @NamedQuery(name = "User.FIND_BY_USERNAME", query = "select o from User o where o.username = :username")
+        @NamedQuery(name = "User.FIND_BY_USERNAME", query = "select o from User o where o.username = :username"),
+        @NamedQuery(name = "User.SNAPSHOT_BY_USERNAME",
+                query = "select u.username, r.roleName, u.password, u.id, r.id from User u left join u.roles r "
+                        + "where u.username = :username")
 })
-@NamedQuery(name = "User.FIND_BY_USERNAME", query = "select o from User o where o.username = :username")
 public class User implements Serializable {
     static final private long serialVersionUID = 1L;
 
+    /**
+     * Query cache region of User.FIND_BY_USERNAME, see ehcache.xml.
+     */
+    public static final String BY_USERNAME_CACHE_REGION = "github.priyatam.springsecurity.domain.User.byUsername";
+
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
     @Column(updatable = false, nullable = false)
@@ -21,17 +40,86 @@ public class User implements Serializable {
 
     private String password;
 
+    // the natural id is backed by a unique constraint, and so by an index
+    @NaturalId
+    @Column(nullable = false)
     private String username;
 
     @ManyToMany(cascade = {CascadeType.MERGE, CascadeType.REFRESH}, fetch = FetchType.EAGER)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "github.priyatam.springsecurity.domain.User.roles")
     private List<Role> roles = new ArrayList<Role>();
+
+    // role names of a snapshot, computed once
+    @Transient
+    private List<String> roleNames;
     
+    protected User() {
+    }
+
     public User(String password, String userName) {
         super();
         this.password = password;
         this.username = userName;
     }
 
+    /**
+     * Returns a detached copy of this user whose roles can not be modified. Snapshots are
+     * shared between threads by the account cache.
+     */
+    public User snapshot() {
+        User copy = new User(password, username);
+        copy.id = id;
+        copy.roles = Collections.unmodifiableList(new ArrayList<Role>(getRoles()));
+        copy.roleNames = Collections.unmodifiableList(copy.getRoleNames());
+        return copy;
+    }
+
+    /**
+     * Returns a read-only snapshot built from already loaded columns, e.g. by a projection query.
+     * The roles keep their ids, which Role.equals compares.
+     *
+     * @param roleIds   ids of the roles, in the order of their names
+     * @param roleNames names of the roles
+     */
+    public static User newSnapshot(Long id, String username, String password, List<Long> roleIds,
+                                   List<String> roleNames) {
+        if (roleIds.size() != roleNames.size()) {
+            throw new IllegalArgumentException(roleIds.size() + " role ids for " + roleNames.size() + " role names");
+        }
+        List<Role> roles = new ArrayList<Role>(roleNames.size());
+        for (int i = 0; i < roleNames.size(); i++) {
+            roles.add(new Role(roleIds.get(i), roleNames.get(i)));
+        }
+        User snapshot = new User(password, username);
+        snapshot.id = id;
+        snapshot.roles = Collections.unmodifiableList(roles);
+        snapshot.roleNames = Collections.unmodifiableList(new ArrayList<String>(roleNames));
+        return snapshot;
+    }
+
+    /**
+     * Returns a read-only snapshot built from the rows of the User.SNAPSHOT_BY_USERNAME projection: one row
+     * per role, or a single row with null role columns for an account without roles.
+     *
+     * @return null when there is no row, that is no such account
+     */
+    public static User fromSnapshotRows(List<Object[]> rows) {
+        if (rows.isEmpty()) {
+            return null;
+        }
+
+        List<Long> roleIds = new ArrayList<Long>(rows.size());
+        List<String> roleNames = new ArrayList<String>(rows.size());
+        for (Object[] row : rows) {
+            if (row[4] != null && !roleIds.contains(row[4])) {
+                roleIds.add((Long) row[4]);
+                roleNames.add((String) row[1]);
+            }
+        }
+        Object[] row = rows.get(0);
+        return newSnapshot((Long) row[3], (String) row[0], (String) row[2], roleIds, roleNames);
+    }
+
     public Long getId() {
         return id;
     }
@@ -50,10 +138,15 @@ public class User implements Serializable {
 
     /**
      * Returns the granted authorities for this user. You may override this
-     * method to provide your own custom authorities.
+     * method to provide your own custom authorities. Snapshots return the same unmodifiable list on
+     * every call.
      */
     @Transient
     public List<String> getRoleNames() {
+        if (this.roleNames != null) {
+            return this.roleNames;
+        }
+
         List<String> roleNames = new ArrayList<String>();
 
         for (Role role : getRoles()) {
@@ -0,0 +1,320 @@
+package github.priyatam.springsecurity.ldap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.ldap.core.ContextMapper;
+import org.springframework.ldap.core.ContextSource;
+import org.springframework.ldap.core.DirContextOperations;
+import org.springframework.ldap.core.DistinguishedName;
+import org.springframework.ldap.core.LdapTemplate;
+
+import javax.naming.directory.SearchControls;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory graph of the LDAP groups under a search base: group -> members and member -> groups.
+ * Members may be groups themselves; the transitive group names of a principal are computed on first
+ * lookup and memoized until a refresh touches one of its groups.
+ * <p/>
+ * The index is fully loaded at startup. It is then refreshed on a schedule with the groups modified
+ * since the previous refresh (modifyTimestamp), and fully reloaded every <code>fullReloadEvery</code>
+ * refreshes to pick up deleted groups. Lookups never hit the directory.
+ */
+public class GroupMembershipIndex implements InitializingBean, DisposableBean {
+
+    Logger logger = LoggerFactory.getLogger(GroupMembershipIndex.class);
+
+    private final LdapTemplate ldapTemplate;
+    private final String groupSearchBase;
+
+    private String groupSearchFilter = "(objectClass=groupOfNames)";
+    private String groupRoleAttribute = "cn";
+    private String memberAttribute = "member";
+    private long refreshInterval = 300;
+    private int fullReloadEvery = 12;
+
+    private volatile Graph graph = new Graph();
+    private Date lastRefresh;
+    private int refreshCount;
+    private ScheduledExecutorService scheduler;
+
+    public GroupMembershipIndex(ContextSource contextSource, String groupSearchBase) {
+        this.ldapTemplate = new LdapTemplate(contextSource);
+        this.groupSearchBase = groupSearchBase;
+    }
+
+    public void afterPropertiesSet() {
+        reload();
+
+        if (refreshInterval > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "ldap-group-index-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            scheduler.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    try {
+                        refresh();
+                    } catch (RuntimeException e) {
+                        logger.warn("LDAP group index refresh failed: " + e.getMessage());
+                    }
+                }
+            }, refreshInterval, refreshInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Return the names of the groups the passed principal belongs to, directly or through nested groups.
+     *
+     * @param principalDn the full distinguished name of a user or a group
+     */
+    public Set<String> getGroupNames(String principalDn) {
+        return graph.closure(normalize(principalDn));
+    }
+
+    /**
+     * Reload the whole group graph from the directory.
+     */
+    public synchronized void reload() {
+        Date start = new Date();
+        Graph loaded = new Graph();
+        for (GroupEntry group : searchGroups(groupSearchFilter)) {
+            loaded.put(group);
+        }
+        graph = loaded;
+        lastRefresh = start;
+        refreshCount = 0;
+        logger.info("Loaded " + loaded.groups.size() + " LDAP groups under " + groupSearchBase);
+    }
+
+    /**
+     * Apply the groups modified since the previous refresh, or reload everything every
+     * <code>fullReloadEvery</code> refreshes.
+     */
+    public synchronized void refresh() {
+        if (lastRefresh == null || ++refreshCount >= fullReloadEvery) {
+            reload();
+            return;
+        }
+
+        Date start = new Date();
+        // one minute margin for clock skew between this host and the directory
+        String since = toGeneralizedTime(new Date(lastRefresh.getTime() - 60000));
+        List<GroupEntry> changed = searchGroups("(&" + groupSearchFilter + "(modifyTimestamp>=" + since + "))");
+        if (!changed.isEmpty()) {
+            graph = graph.update(changed);
+            logger.debug("Refreshed " + changed.size() + " LDAP groups");
+        }
+        lastRefresh = start;
+    }
+
+    public int getGroupCount() {
+        return graph.groups.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<GroupEntry> searchGroups(String filter) {
+        SearchControls controls = new SearchControls();
+        controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+        controls.setReturningAttributes(new String[]{groupRoleAttribute, memberAttribute});
+
+        return ldapTemplate.search(groupSearchBase, filter, controls, new ContextMapper() {
+            public Object mapFromContext(Object ctx) {
+                DirContextOperations entry = (DirContextOperations) ctx;
+                Set<String> members = new HashSet<String>();
+                String[] values = entry.getStringAttributes(memberAttribute);
+                if (values != null) {
+                    for (String member : values) {
+                        members.add(normalize(member));
+                    }
+                }
+                return new GroupEntry(normalize(entry.getNameInNamespace()),
+                        entry.getStringAttribute(groupRoleAttribute), members);
+            }
+        });
+    }
+
+    static String normalize(String dn) {
+        return new DistinguishedName(dn).toCompactString().toLowerCase(Locale.ENGLISH);
+    }
+
+    private static String toGeneralizedTime(Date date) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMddHHmmss'Z'");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(date);
+    }
+
+    public void setGroupSearchFilter(String groupSearchFilter) {
+        this.groupSearchFilter = groupSearchFilter;
+    }
+
+    public void setGroupRoleAttribute(String groupRoleAttribute) {
+        this.groupRoleAttribute = groupRoleAttribute;
+    }
+
+    public void setMemberAttribute(String memberAttribute) {
+        this.memberAttribute = memberAttribute;
+    }
+
+    /**
+     * Seconds between two refreshes, or 0 to load the groups only once.
+     */
+    public void setRefreshInterval(long refreshInterval) {
+        this.refreshInterval = refreshInterval;
+    }
+
+    public void setFullReloadEvery(int fullReloadEvery) {
+        this.fullReloadEvery = fullReloadEvery;
+    }
+
+    private static class GroupEntry {
+        final String dn;
+        final String name;
+        final Set<String> members;
+
+        GroupEntry(String dn, String name, Set<String> members) {
+            this.dn = dn;
+            this.name = name;
+            this.members = members;
+        }
+    }
+
+    /**
+     * Immutable once published, except for the memoized closures.
+     */
+    private static class Graph {
+        final Map<String, GroupEntry> groups = new HashMap<String, GroupEntry>();
+        final Map<String, Set<String>> memberOf = new HashMap<String, Set<String>>();
+        final ConcurrentMap<String, Set<String>> closures = new ConcurrentHashMap<String, Set<String>>();
+
+        void put(GroupEntry group) {
+            groups.put(group.dn, group);
+            for (String member : group.members) {
+                Set<String> parents = memberOf.get(member);
+                if (parents == null) {
+                    parents = new HashSet<String>();
+                    memberOf.put(member, parents);
+                }
+                parents.add(group.dn);
+            }
+        }
+
+        void remove(String groupDn) {
+            GroupEntry group = groups.remove(groupDn);
+            if (group != null) {
+                for (String member : group.members) {
+                    Set<String> parents = memberOf.get(member);
+                    if (parents != null) {
+                        parents.remove(groupDn);
+                        if (parents.isEmpty()) {
+                            memberOf.remove(member);
+                        }
+                    }
+                }
+            }
+        }
+
+        Set<String> closure(String principalDn) {
+            Set<String> names = closures.get(principalDn);
+            if (names != null) {
+                return names;
+            }
+
+            names = new LinkedHashSet<String>();
+            Set<String> visited = new HashSet<String>();
+            Deque<String> pending = new ArrayDeque<String>();
+            pending.add(principalDn);
+            while (!pending.isEmpty()) {
+                Set<String> parents = memberOf.get(pending.poll());
+                if (parents == null) {
+                    continue;
+                }
+                for (String parent : parents) {
+                    // visited guards against membership cycles
+                    if (visited.add(parent)) {
+                        GroupEntry group = groups.get(parent);
+                        if (group.name != null) {
+                            names.add(group.name);
+                        }
+                        pending.add(parent);
+                    }
+                }
+            }
+
+            names = Collections.unmodifiableSet(names);
+            closures.put(principalDn, names);
+            return names;
+        }
+
+        /**
+         * Copy this graph with the passed groups replaced. Memoized closures are kept for the principals
+         * that are not (transitively) below a replaced group, before or after the change.
+         */
+        Graph update(List<GroupEntry> changed) {
+            Graph updated = new Graph();
+            for (GroupEntry group : groups.values()) {
+                updated.put(group);
+            }
+
+            Set<String> affected = new HashSet<String>();
+            for (GroupEntry group : changed) {
+                collectDescendants(group.dn, affected);
+                updated.remove(group.dn);
+                updated.put(group);
+                updated.collectDescendants(group.dn, affected);
+            }
+
+            for (Map.Entry<String, Set<String>> entry : closures.entrySet()) {
+                if (!affected.contains(entry.getKey())) {
+                    updated.closures.put(entry.getKey(), entry.getValue());
+                }
+            }
+            return updated;
+        }
+
+        private void collectDescendants(String groupDn, Set<String> result) {
+            Deque<String> pending = new ArrayDeque<String>();
+            pending.add(groupDn);
+            while (!pending.isEmpty()) {
+                GroupEntry group = groups.get(pending.poll());
+                if (group == null) {
+                    continue;
+                }
+                for (String member : group.members) {
+                    if (result.add(member)) {
+                        pending.add(member);
+                    }
+                }
+            }
+        }
+    }
+}
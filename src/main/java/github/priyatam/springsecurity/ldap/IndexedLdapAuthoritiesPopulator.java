@@ -0,0 +1,56 @@
+package github.priyatam.springsecurity.ldap;
+
+import github.priyatam.springsecurity.spring.AuthoritySetFactory;
+import org.springframework.ldap.core.DirContextOperations;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.ldap.userdetails.LdapAuthoritiesPopulator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * LdapAuthoritiesPopulator answering from a GroupMembershipIndex instead of searching the directory.
+ * Nested groups are resolved. Role names are built like DefaultLdapAuthoritiesPopulator does:
+ * prefixed with <code>rolePrefix</code> and optionally upper-cased.
+ */
+public class IndexedLdapAuthoritiesPopulator implements LdapAuthoritiesPopulator {
+
+    private final GroupMembershipIndex groupMembershipIndex;
+
+    private String rolePrefix = "ROLE_";
+    private boolean convertToUpperCase = true;
+    private GrantedAuthority defaultRole;
+
+    public IndexedLdapAuthoritiesPopulator(GroupMembershipIndex groupMembershipIndex) {
+        this.groupMembershipIndex = groupMembershipIndex;
+    }
+
+    public Collection<GrantedAuthority> getGrantedAuthorities(DirContextOperations userData, String username) {
+        Set<String> groupNames = groupMembershipIndex.getGroupNames(userData.getNameInNamespace());
+
+        List<GrantedAuthority> authorities = new ArrayList<GrantedAuthority>(groupNames.size() + 1);
+        for (String groupName : groupNames) {
+            String role = convertToUpperCase ? groupName.toUpperCase(Locale.ENGLISH) : groupName;
+            authorities.add(AuthoritySetFactory.authority(rolePrefix + role));
+        }
+        if (defaultRole != null) {
+            authorities.add(defaultRole);
+        }
+        return authorities;
+    }
+
+    public void setRolePrefix(String rolePrefix) {
+        this.rolePrefix = rolePrefix;
+    }
+
+    public void setConvertToUpperCase(boolean convertToUpperCase) {
+        this.convertToUpperCase = convertToUpperCase;
+    }
+
+    public void setDefaultRole(String defaultRole) {
+        this.defaultRole = AuthoritySetFactory.authority(defaultRole);
+    }
+}
@@ -0,0 +1,479 @@
+package github.priyatam.springsecurity.ldap;
+
+import org.springframework.security.core.codec.Base64;
+
+import javax.naming.InvalidNameException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.ldap.LdapName;
+import javax.naming.ldap.Rdn;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Read-only image of the entries of an LDIF file, with equality indexes on <code>uid</code>,
+ * <code>member</code> and <code>ou</code>, as served by {@link SnapshotContextSource}.
+ * <p/>
+ * The image is saved to a compact binary file: a header with the checksum of the LDIF it was built from,
+ * a table of the distinct strings, the entries as string ids and the index postings as entry numbers.
+ * Loading it is a sequential read, without parsing LDIF or DNs; it is rebuilt when the LDIF checksum changes.
+ */
+public final class LdifSnapshot {
+
+    private static final int MAGIC = 0x4c444946;
+    private static final int VERSION = 1;
+
+    static final String[] INDEXED_ATTRIBUTES = {"uid", "member", "ou"};
+    private static final List<String> DN_ATTRIBUTES = Arrays.asList("member", "uniquemember");
+
+    private final long checksum;
+    private final Entry[] entries;
+    private final Map<String, Integer> entriesByDn;
+    private final Map<String, Map<String, int[]>> indexes;
+
+    private LdifSnapshot(long checksum, Entry[] entries, Map<String, Map<String, int[]>> indexes) {
+        this.checksum = checksum;
+        this.entries = entries;
+        this.indexes = indexes;
+        this.entriesByDn = new HashMap<String, Integer>(entries.length * 2);
+        for (int i = 0; i < entries.length; i++) {
+            entriesByDn.put(entries[i].normalizedDn, i);
+        }
+    }
+
+    /**
+     * An entry: its DN as written in the LDIF, its normalized DN and its attributes.
+     */
+    static final class Entry {
+        final String dn;
+        final String normalizedDn;
+        final int depth;
+        final String[] names;
+        final String[][] values;
+
+        Entry(String dn, String normalizedDn, int depth, String[] names, String[][] values) {
+            this.dn = dn;
+            this.normalizedDn = normalizedDn;
+            this.depth = depth;
+            this.names = names;
+            this.values = values;
+        }
+
+        /**
+         * Returns the values of the passed attribute, or null.
+         */
+        String[] get(String attributeId) {
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equalsIgnoreCase(attributeId)) {
+                    return values[i];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Returns the passed attributes of this entry, all of them if <code>attributeIds</code> is null.
+         */
+        Attributes toAttributes(String[] attributeIds) {
+            Attributes attributes = new BasicAttributes(true);
+            for (int i = 0; i < names.length; i++) {
+                if (attributeIds == null || contains(attributeIds, names[i])) {
+                    Attribute attribute = new BasicAttribute(names[i]);
+                    for (String value : values[i]) {
+                        attribute.add(value);
+                    }
+                    attributes.put(attribute);
+                }
+            }
+            return attributes;
+        }
+
+        private static boolean contains(String[] attributeIds, String name) {
+            for (String attributeId : attributeIds) {
+                if (attributeId.equalsIgnoreCase(name) || "*".equals(attributeId)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    public long getChecksum() {
+        return checksum;
+    }
+
+    public int size() {
+        return entries.length;
+    }
+
+    Entry[] getEntries() {
+        return entries;
+    }
+
+    /**
+     * Returns the entry with the passed DN, or null.
+     */
+    Entry getEntry(String dn) throws InvalidNameException {
+        Integer index = entriesByDn.get(normalizeDn(dn));
+        return index != null ? entries[index] : null;
+    }
+
+    /**
+     * Returns the numbers of the entries having the passed value, or null if the attribute is not indexed.
+     */
+    int[] lookup(String attributeId, String value) {
+        Map<String, int[]> index = indexes.get(attributeId.toLowerCase(Locale.ENGLISH));
+        if (index == null) {
+            return null;
+        }
+        int[] postings = index.get(normalizeValue(attributeId, value));
+        return postings != null ? postings : new int[0];
+    }
+
+    /**
+     * Checksum of the LDIF content a snapshot is built from.
+     */
+    public static long checksum(byte[] ldif) {
+        CRC32 crc = new CRC32();
+        crc.update(ldif);
+        return ((long) ldif.length << 32) ^ crc.getValue();
+    }
+
+    /**
+     * Compare a value as the directory does: DN valued attributes by their normalized DN, others ignoring case.
+     */
+    static String normalizeValue(String attributeId, String value) {
+        if (DN_ATTRIBUTES.contains(attributeId.toLowerCase(Locale.ENGLISH))) {
+            try {
+                return normalizeDn(value);
+            } catch (InvalidNameException e) {
+                // not a DN, compared as a string
+            }
+        }
+        return value.trim().toLowerCase(Locale.ENGLISH);
+    }
+
+    static String normalizeDn(String dn) throws InvalidNameException {
+        List<Rdn> rdns = new LdapName(dn).getRdns();
+        StringBuilder sb = new StringBuilder(dn.length());
+        for (int i = rdns.size() - 1; i >= 0; i--) {
+            Rdn rdn = rdns.get(i);
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            if (rdn.size() > 1) {
+                // multi-valued RDN, kept as written
+                sb.append(rdn.toString().toLowerCase(Locale.ENGLISH));
+            } else {
+                sb.append(rdn.getType().toLowerCase(Locale.ENGLISH)).append('=')
+                        .append(Rdn.escapeValue(rdn.getValue()).toLowerCase(Locale.ENGLISH));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Parse LDIF content records: <code>attribute: value</code> and base64 <code>attribute:: value</code> lines,
+     * folded lines and comments. Change records are not supported.
+     */
+    public static LdifSnapshot parse(byte[] ldif) throws IOException, NamingException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(ldif), "UTF-8"));
+        List<Entry> entries = new ArrayList<Entry>();
+        List<String> lines = new ArrayList<String>();
+
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.startsWith("#")) {
+                continue;
+            }
+            if (line.startsWith(" ") && !lines.isEmpty()) {
+                lines.set(lines.size() - 1, lines.get(lines.size() - 1) + line.substring(1));
+            } else if (line.trim().isEmpty()) {
+                addEntry(entries, lines, lineNumber);
+                lines.clear();
+            } else {
+                lines.add(line);
+            }
+        }
+        addEntry(entries, lines, lineNumber);
+
+        return new LdifSnapshot(checksum(ldif), entries.toArray(new Entry[entries.size()]), buildIndexes(entries));
+    }
+
+    private static void addEntry(List<Entry> entries, List<String> lines, int lineNumber)
+            throws NamingException, UnsupportedEncodingException {
+        if (lines.isEmpty() || lines.get(0).startsWith("version:")) {
+            return;
+        }
+
+        Map<String, List<String>> attributes = new LinkedHashMap<String, List<String>>();
+        Map<String, String> names = new HashMap<String, String>();
+        String dn = null;
+        for (String line : lines) {
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("Invalid LDIF line before line " + lineNumber + ": " + line);
+            }
+            String name = line.substring(0, colon);
+            String value;
+            if (line.startsWith("::", colon)) {
+                value = new String(Base64.decode(line.substring(colon + 2).trim().getBytes("UTF-8")), "UTF-8");
+            } else {
+                value = line.substring(colon + 1).trim();
+            }
+
+            if (dn == null) {
+                if (!"dn".equalsIgnoreCase(name)) {
+                    throw new IllegalArgumentException("LDIF record without dn before line " + lineNumber);
+                }
+                dn = value;
+            } else if ("changetype".equalsIgnoreCase(name)) {
+                throw new IllegalArgumentException("LDIF change records are not supported: " + dn);
+            } else {
+                String key = name.toLowerCase(Locale.ENGLISH);
+                if (!names.containsKey(key)) {
+                    names.put(key, name);
+                    attributes.put(name, new ArrayList<String>());
+                }
+                attributes.get(names.get(key)).add(value);
+            }
+        }
+
+        // as in a directory server, the values of the RDN are values of the entry's attributes
+        LdapName name = new LdapName(dn);
+        NamingEnumeration<? extends Attribute> rdnAttributes = name.getRdn(name.size() - 1).toAttributes().getAll();
+        while (rdnAttributes.hasMoreElements()) {
+            Attribute rdnAttribute = rdnAttributes.nextElement();
+            String key = rdnAttribute.getID().toLowerCase(Locale.ENGLISH);
+            String value = String.valueOf(rdnAttribute.get());
+            if (!names.containsKey(key)) {
+                names.put(key, rdnAttribute.getID());
+                attributes.put(rdnAttribute.getID(), new ArrayList<String>());
+            }
+            List<String> values = attributes.get(names.get(key));
+            if (!containsIgnoreCase(values, value)) {
+                values.add(value);
+            }
+        }
+
+        String[] attributeNames = attributes.keySet().toArray(new String[attributes.size()]);
+        String[][] values = new String[attributeNames.length][];
+        for (int i = 0; i < attributeNames.length; i++) {
+            List<String> attributeValues = attributes.get(attributeNames[i]);
+            values[i] = attributeValues.toArray(new String[attributeValues.size()]);
+        }
+        entries.add(new Entry(dn, normalizeDn(dn), name.size(), attributeNames, values));
+    }
+
+    private static boolean containsIgnoreCase(List<String> values, String value) {
+        for (String candidate : values) {
+            if (candidate.equalsIgnoreCase(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Map<String, Map<String, int[]>> buildIndexes(List<Entry> entries) {
+        Map<String, Map<String, int[]>> indexes = new HashMap<String, Map<String, int[]>>();
+        for (String attributeId : INDEXED_ATTRIBUTES) {
+            Map<String, List<Integer>> postings = new HashMap<String, List<Integer>>();
+            for (int i = 0; i < entries.size(); i++) {
+                String[] values = entries.get(i).get(attributeId);
+                if (values == null) {
+                    continue;
+                }
+                for (String value : values) {
+                    String key = normalizeValue(attributeId, value);
+                    List<Integer> list = postings.get(key);
+                    if (list == null) {
+                        list = new ArrayList<Integer>(1);
+                        postings.put(key, list);
+                    }
+                    if (list.isEmpty() || list.get(list.size() - 1) != i) {
+                        list.add(i);
+                    }
+                }
+            }
+
+            Map<String, int[]> index = new HashMap<String, int[]>(postings.size() * 2);
+            for (Map.Entry<String, List<Integer>> posting : postings.entrySet()) {
+                int[] entryNumbers = new int[posting.getValue().size()];
+                for (int i = 0; i < entryNumbers.length; i++) {
+                    entryNumbers[i] = posting.getValue().get(i);
+                }
+                index.put(posting.getKey(), entryNumbers);
+            }
+            indexes.put(attributeId, index);
+        }
+        return indexes;
+    }
+
+    /**
+     * Save this snapshot, through a temporary file renamed over the previous snapshot.
+     */
+    public void write(File file) throws IOException {
+        Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+        for (Entry entry : entries) {
+            intern(strings, entry.dn);
+            intern(strings, entry.normalizedDn);
+            for (int i = 0; i < entry.names.length; i++) {
+                intern(strings, entry.names[i]);
+                for (String value : entry.values[i]) {
+                    intern(strings, value);
+                }
+            }
+        }
+        for (Map.Entry<String, Map<String, int[]>> index : indexes.entrySet()) {
+            intern(strings, index.getKey());
+            for (String key : index.getValue().keySet()) {
+                intern(strings, key);
+            }
+        }
+
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can not create " + directory);
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 65536));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(checksum);
+
+            out.writeInt(strings.size());
+            for (String string : strings.keySet()) {
+                out.writeUTF(string);
+            }
+
+            out.writeInt(entries.length);
+            for (Entry entry : entries) {
+                out.writeInt(strings.get(entry.dn));
+                out.writeInt(strings.get(entry.normalizedDn));
+                out.writeShort(entry.depth);
+                out.writeShort(entry.names.length);
+                for (int i = 0; i < entry.names.length; i++) {
+                    out.writeInt(strings.get(entry.names[i]));
+                    out.writeInt(entry.values[i].length);
+                    for (String value : entry.values[i]) {
+                        out.writeInt(strings.get(value));
+                    }
+                }
+            }
+
+            out.writeInt(indexes.size());
+            for (Map.Entry<String, Map<String, int[]>> index : indexes.entrySet()) {
+                out.writeInt(strings.get(index.getKey()));
+                out.writeInt(index.getValue().size());
+                for (Map.Entry<String, int[]> posting : index.getValue().entrySet()) {
+                    out.writeInt(strings.get(posting.getKey()));
+                    out.writeInt(posting.getValue().length);
+                    for (int entryNumber : posting.getValue()) {
+                        out.writeInt(entryNumber);
+                    }
+                }
+            }
+        } finally {
+            out.close();
+        }
+
+        if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+            throw new IOException("Can not rename " + temp + " to " + file);
+        }
+    }
+
+    private static void intern(Map<String, Integer> strings, String string) {
+        if (!strings.containsKey(string)) {
+            strings.put(string, strings.size());
+        }
+    }
+
+    /**
+     * Load a snapshot saved by {@link #write(File)}.
+     *
+     * @return null if the file does not exist, or was built from another LDIF content or by another version
+     */
+    public static LdifSnapshot read(File file, long expectedChecksum) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != expectedChecksum) {
+                return null;
+            }
+
+            String[] strings = new String[in.readInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = in.readUTF();
+            }
+
+            Entry[] entries = new Entry[in.readInt()];
+            for (int e = 0; e < entries.length; e++) {
+                String dn = strings[in.readInt()];
+                String normalizedDn = strings[in.readInt()];
+                int depth = in.readShort();
+                String[] names = new String[in.readShort()];
+                String[][] values = new String[names.length][];
+                for (int i = 0; i < names.length; i++) {
+                    names[i] = strings[in.readInt()];
+                    values[i] = new String[in.readInt()];
+                    for (int v = 0; v < values[i].length; v++) {
+                        values[i][v] = strings[in.readInt()];
+                    }
+                }
+                entries[e] = new Entry(dn, normalizedDn, depth, names, values);
+            }
+
+            Map<String, Map<String, int[]>> indexes = new HashMap<String, Map<String, int[]>>();
+            int indexCount = in.readInt();
+            for (int i = 0; i < indexCount; i++) {
+                String attributeId = strings[in.readInt()];
+                int keyCount = in.readInt();
+                Map<String, int[]> index = new HashMap<String, int[]>(keyCount * 2);
+                for (int k = 0; k < keyCount; k++) {
+                    String key = strings[in.readInt()];
+                    int[] postings = new int[in.readInt()];
+                    for (int p = 0; p < postings.length; p++) {
+                        postings[p] = in.readInt();
+                    }
+                    index.put(key, postings);
+                }
+                indexes.put(attributeId, index);
+            }
+            return new LdifSnapshot(expectedChecksum, entries, indexes);
+        } catch (EOFException e) {
+            // truncated, rebuilt by the caller
+            return null;
+        } finally {
+            in.close();
+        }
+    }
+}
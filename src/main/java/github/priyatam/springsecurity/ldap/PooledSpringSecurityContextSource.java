@@ -0,0 +1,356 @@
+package github.priyatam.springsecurity.ldap;
+
+import org.apache.commons.pool.BaseKeyedPoolableObjectFactory;
+import org.apache.commons.pool.impl.GenericKeyedObjectPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.ldap.UncategorizedLdapException;
+import org.springframework.ldap.core.DistinguishedName;
+import org.springframework.ldap.core.support.BaseLdapPathContextSource;
+import org.springframework.ldap.pool.DelegatingLdapContext;
+import org.springframework.ldap.pool.DirContextType;
+import org.springframework.ldap.pool.factory.PoolingContextSource;
+import org.springframework.ldap.pool.validation.DefaultDirContextValidator;
+import org.springframework.ldap.support.LdapUtils;
+import org.springframework.security.ldap.DefaultSpringSecurityContextSource;
+
+import javax.naming.Context;
+import javax.naming.NamingException;
+import javax.naming.directory.DirContext;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+import java.util.Hashtable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Context source keeping LDAP connections open between authentications. A drop-in replacement of
+ * DefaultSpringSecurityContextSource for BindAuthenticator, FilterBasedLdapUserSearch and
+ * DefaultLdapAuthoritiesPopulator.
+ * <p/>
+ * Two pools are used:
+ * <ul>
+ * <li>the read pool serves the read-only contexts of the user and group searches, bound with the manager
+ * credentials if any (Spring LDAP's PoolingContextSource)</li>
+ * <li>the bind pool serves <code>getContext(principal, credentials)</code>: a pooled connection is
+ * re-bound with the user credentials, so an authentication costs a bind request but no new TCP
+ * connection. It is bound back anonymously when returned to the pool.</li>
+ * </ul>
+ * Both pools validate connections on borrow and evict idle ones.
+ */
+public class PooledSpringSecurityContextSource implements BaseLdapPathContextSource, InitializingBean, DisposableBean {
+
+    Logger logger = LoggerFactory.getLogger(PooledSpringSecurityContextSource.class);
+
+    private static final DirContextType BIND_KEY = DirContextType.READ_WRITE;
+
+    private final String providerUrl;
+    private String userDn = "";
+    private String password = "";
+
+    private int readMinIdle = 2;
+    private int readMaxIdle = 8;
+    private int readMaxActive = 16;
+    private int bindMinIdle = 2;
+    private int bindMaxIdle = 8;
+    private int bindMaxActive = 16;
+    private long maxWait = 5000;
+    private boolean testOnBorrow = true;
+    private long timeBetweenEvictionRunsMillis = 60000;
+    private long minEvictableIdleTimeMillis = 300000;
+
+    private DefaultSpringSecurityContextSource target;
+    private PoolingContextSource readPool;
+    private GenericKeyedObjectPool bindPool;
+
+    private final WaitStatistics readWait = new WaitStatistics();
+    private final WaitStatistics bindWait = new WaitStatistics();
+
+    /**
+     * @param providerUrl the LDAP url including the base path, e.g. ldap://localhost:33389/dc=springframework,dc=org
+     */
+    public PooledSpringSecurityContextSource(String providerUrl) {
+        this.providerUrl = providerUrl;
+    }
+
+    public void afterPropertiesSet() throws Exception {
+        target = new DefaultSpringSecurityContextSource(providerUrl);
+        target.setUserDn(userDn);
+        target.setPassword(password);
+        // connections are pooled here, not by JNDI
+        target.setPooled(false);
+        target.afterPropertiesSet();
+
+        DefaultDirContextValidator validator = new DefaultDirContextValidator();
+
+        readPool = new PoolingContextSource();
+        readPool.setContextSource(target);
+        readPool.setDirContextValidator(validator);
+        readPool.setMinIdle(readMinIdle);
+        readPool.setMaxIdle(readMaxIdle);
+        readPool.setMaxActive(readMaxActive);
+        readPool.setMaxWait(maxWait);
+        readPool.setWhenExhaustedAction(GenericKeyedObjectPool.WHEN_EXHAUSTED_BLOCK);
+        readPool.setTestOnBorrow(testOnBorrow);
+        readPool.setTestWhileIdle(true);
+        readPool.setTimeBetweenEvictionRunsMillis(timeBetweenEvictionRunsMillis);
+        readPool.setMinEvictableIdleTimeMillis(minEvictableIdleTimeMillis);
+
+        bindPool = new GenericKeyedObjectPool(new BindContextFactory(validator));
+        bindPool.setMinIdle(bindMinIdle);
+        bindPool.setMaxIdle(bindMaxIdle);
+        bindPool.setMaxActive(bindMaxActive);
+        bindPool.setMaxWait(maxWait);
+        bindPool.setWhenExhaustedAction(GenericKeyedObjectPool.WHEN_EXHAUSTED_BLOCK);
+        bindPool.setTestOnBorrow(testOnBorrow);
+        bindPool.setTestWhileIdle(true);
+        bindPool.setTimeBetweenEvictionRunsMillis(timeBetweenEvictionRunsMillis);
+        bindPool.setMinEvictableIdleTimeMillis(minEvictableIdleTimeMillis);
+        bindPool.preparePool(BIND_KEY, false);
+
+        logger.info("Pooled LDAP context source for " + providerUrl + ": read pool max " + readMaxActive
+                + ", bind pool max " + bindMaxActive);
+    }
+
+    public void destroy() throws Exception {
+        readPool.destroy();
+        bindPool.close();
+    }
+
+    public DirContext getReadOnlyContext() {
+        long start = System.nanoTime();
+        try {
+            return readPool.getReadOnlyContext();
+        } finally {
+            readWait.record(start);
+        }
+    }
+
+    public DirContext getReadWriteContext() {
+        long start = System.nanoTime();
+        try {
+            return readPool.getReadWriteContext();
+        } finally {
+            readWait.record(start);
+        }
+    }
+
+    /**
+     * Authenticate the passed principal on a pooled connection. The returned context goes back to the
+     * bind pool when closed.
+     */
+    public DirContext getContext(String principal, String credentials) {
+        if (credentials == null || credentials.length() == 0) {
+            // an LDAP simple bind without password is an anonymous bind
+            throw LdapUtils.convertLdapException(new javax.naming.AuthenticationException("Empty credentials"));
+        }
+
+        LdapContext ctx = borrowBindContext();
+        try {
+            ctx.addToEnvironment(Context.SECURITY_AUTHENTICATION, "simple");
+            ctx.addToEnvironment(Context.SECURITY_PRINCIPAL, principal);
+            ctx.addToEnvironment(Context.SECURITY_CREDENTIALS, credentials);
+            ctx.reconnect(null);
+        } catch (NamingException e) {
+            returnBindContext(ctx);
+            throw LdapUtils.convertLdapException(e);
+        }
+
+        return new DelegatingLdapContext(bindPool, ctx, BIND_KEY);
+    }
+
+    public DistinguishedName getBaseLdapPath() {
+        return target.getBaseLdapPath();
+    }
+
+    public String getBaseLdapPathAsString() {
+        return target.getBaseLdapPathAsString();
+    }
+
+    private LdapContext borrowBindContext() {
+        long start = System.nanoTime();
+        try {
+            return (LdapContext) bindPool.borrowObject(BIND_KEY);
+        } catch (Exception e) {
+            throw new UncategorizedLdapException("Failed to borrow a bind context from the pool", e);
+        } finally {
+            bindWait.record(start);
+        }
+    }
+
+    private void returnBindContext(LdapContext ctx) {
+        try {
+            bindPool.returnObject(BIND_KEY, ctx);
+        } catch (Exception e) {
+            logger.warn("Failed to return a bind context to the pool: " + e.getMessage());
+        }
+    }
+
+    // Pool statistics
+
+    public int getReadNumActive() {
+        return readPool.getNumActive();
+    }
+
+    public int getReadNumIdle() {
+        return readPool.getNumIdle();
+    }
+
+    public int getBindNumActive() {
+        return bindPool.getNumActive();
+    }
+
+    public int getBindNumIdle() {
+        return bindPool.getNumIdle();
+    }
+
+    public long getReadBorrowCount() {
+        return readWait.getCount();
+    }
+
+    public double getReadAverageWaitMillis() {
+        return readWait.getAverageMillis();
+    }
+
+    public double getReadMaxWaitMillis() {
+        return readWait.getMaxMillis();
+    }
+
+    public long getBindBorrowCount() {
+        return bindWait.getCount();
+    }
+
+    public double getBindAverageWaitMillis() {
+        return bindWait.getAverageMillis();
+    }
+
+    public double getBindMaxWaitMillis() {
+        return bindWait.getMaxMillis();
+    }
+
+    // Configuration
+
+    public void setUserDn(String userDn) {
+        this.userDn = userDn;
+    }
+
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    public void setReadMinIdle(int readMinIdle) {
+        this.readMinIdle = readMinIdle;
+    }
+
+    public void setReadMaxIdle(int readMaxIdle) {
+        this.readMaxIdle = readMaxIdle;
+    }
+
+    public void setReadMaxActive(int readMaxActive) {
+        this.readMaxActive = readMaxActive;
+    }
+
+    public void setBindMinIdle(int bindMinIdle) {
+        this.bindMinIdle = bindMinIdle;
+    }
+
+    public void setBindMaxIdle(int bindMaxIdle) {
+        this.bindMaxIdle = bindMaxIdle;
+    }
+
+    public void setBindMaxActive(int bindMaxActive) {
+        this.bindMaxActive = bindMaxActive;
+    }
+
+    /**
+     * Maximum time, in milliseconds, to wait for a connection when a pool is exhausted.
+     */
+    public void setMaxWait(long maxWait) {
+        this.maxWait = maxWait;
+    }
+
+    public void setTestOnBorrow(boolean testOnBorrow) {
+        this.testOnBorrow = testOnBorrow;
+    }
+
+    public void setTimeBetweenEvictionRunsMillis(long timeBetweenEvictionRunsMillis) {
+        this.timeBetweenEvictionRunsMillis = timeBetweenEvictionRunsMillis;
+    }
+
+    public void setMinEvictableIdleTimeMillis(long minEvictableIdleTimeMillis) {
+        this.minEvictableIdleTimeMillis = minEvictableIdleTimeMillis;
+    }
+
+    /**
+     * Opens the connections of the bind pool, anonymously bound.
+     */
+    private class BindContextFactory extends BaseKeyedPoolableObjectFactory {
+
+        private final DefaultDirContextValidator validator;
+
+        BindContextFactory(DefaultDirContextValidator validator) {
+            this.validator = validator;
+        }
+
+        @Override
+        public Object makeObject(Object key) throws Exception {
+            Hashtable<String, Object> env = new Hashtable<String, Object>();
+            env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
+            env.put(Context.PROVIDER_URL, providerUrl);
+            env.put(Context.SECURITY_AUTHENTICATION, "none");
+            return new InitialLdapContext(env, null);
+        }
+
+        @Override
+        public boolean validateObject(Object key, Object obj) {
+            return validator.validateDirContext((DirContextType) key, (DirContext) obj);
+        }
+
+        @Override
+        public void passivateObject(Object key, Object obj) throws Exception {
+            LdapContext ctx = (LdapContext) obj;
+            ctx.removeFromEnvironment(Context.SECURITY_PRINCIPAL);
+            ctx.removeFromEnvironment(Context.SECURITY_CREDENTIALS);
+            ctx.addToEnvironment(Context.SECURITY_AUTHENTICATION, "none");
+            ctx.reconnect(null);
+        }
+
+        @Override
+        public void destroyObject(Object key, Object obj) throws Exception {
+            ((DirContext) obj).close();
+        }
+    }
+
+    /**
+     * Time spent waiting for a pooled connection.
+     */
+    private static class WaitStatistics {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long start) {
+            long elapsed = System.nanoTime() - start;
+            count.incrementAndGet();
+            totalNanos.addAndGet(elapsed);
+            long max = maxNanos.get();
+            while (elapsed > max && !maxNanos.compareAndSet(max, elapsed)) {
+                max = maxNanos.get();
+            }
+        }
+
+        long getCount() {
+            return count.get();
+        }
+
+        double getAverageMillis() {
+            long n = count.get();
+            return n == 0 ? 0 : totalNanos.get() / 1e6 / n;
+        }
+
+        double getMaxMillis() {
+            return maxNanos.get() / 1e6;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package github.priyatam.springsecurity.ldap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.io.Resource;
+import org.springframework.ldap.core.DistinguishedName;
+import org.springframework.ldap.core.support.BaseLdapPathContextSource;
+import org.springframework.ldap.support.LdapUtils;
+import org.springframework.security.core.codec.Base64;
+import org.springframework.util.FileCopyUtils;
+
+import javax.naming.NamingException;
+import javax.naming.directory.DirContext;
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Fast-start, in-process stand-in for the embedded directory server of dev and test setups. A drop-in
+ * replacement of the context source for BindAuthenticator, FilterBasedLdapUserSearch and
+ * DefaultLdapAuthoritiesPopulator.
+ * <p/>
+ * The LDIF is parsed once into an {@link LdifSnapshot} saved to <code>snapshotFile</code>; later starts load
+ * that file, and rebuild it only when the LDIF content changes. The directory is read-only and not reachable
+ * over the network: binds check the <code>userPassword</code> values of the entry (clear text, {SHA} or {SSHA}).
+ */
+public class SnapshotContextSource implements BaseLdapPathContextSource, InitializingBean {
+
+    Logger logger = LoggerFactory.getLogger(SnapshotContextSource.class);
+
+    private final String base;
+    private Resource ldif;
+    private File snapshotFile = new File(System.getProperty("java.io.tmpdir"), "springsecurity-ldif.snapshot");
+
+    private volatile LdifSnapshot snapshot;
+
+    /**
+     * @param base the base DN of the directory, e.g. dc=springframework,dc=org
+     */
+    public SnapshotContextSource(String base) {
+        this.base = base;
+    }
+
+    public void afterPropertiesSet() throws Exception {
+        long start = System.currentTimeMillis();
+        byte[] content = FileCopyUtils.copyToByteArray(ldif.getInputStream());
+        long checksum = LdifSnapshot.checksum(content);
+
+        LdifSnapshot loaded = null;
+        try {
+            loaded = LdifSnapshot.read(snapshotFile, checksum);
+        } catch (IOException e) {
+            logger.warn("Could not read the directory snapshot " + snapshotFile + ": " + e.getMessage());
+        }
+
+        if (loaded != null) {
+            logger.info("Loaded " + loaded.size() + " entries from the directory snapshot " + snapshotFile + " in "
+                    + (System.currentTimeMillis() - start) + "ms");
+        } else {
+            loaded = LdifSnapshot.parse(content);
+            try {
+                loaded.write(snapshotFile);
+            } catch (IOException e) {
+                logger.warn("Could not save the directory snapshot " + snapshotFile + ": " + e.getMessage());
+            }
+            logger.info("Built the directory snapshot " + snapshotFile + " of " + loaded.size() + " entries from "
+                    + ldif.getDescription() + " in " + (System.currentTimeMillis() - start) + "ms");
+        }
+        snapshot = loaded;
+    }
+
+    public DirContext getReadOnlyContext() {
+        return new SnapshotDirContext(snapshot, base, null);
+    }
+
+    /**
+     * Returns a read-only context as well: writes throw an OperationNotSupportedException.
+     */
+    public DirContext getReadWriteContext() {
+        return getReadOnlyContext();
+    }
+
+    public DirContext getContext(String principal, String credentials) {
+        try {
+            if (credentials == null || credentials.length() == 0) {
+                throw new javax.naming.AuthenticationException("Empty credentials");
+            }
+            LdifSnapshot.Entry entry = snapshot.getEntry(principal);
+            if (entry == null || !checkPassword(entry.get("userPassword"), credentials)) {
+                throw new javax.naming.AuthenticationException("Invalid credentials for " + principal);
+            }
+        } catch (NamingException e) {
+            throw LdapUtils.convertLdapException(e);
+        }
+        return new SnapshotDirContext(snapshot, base, principal);
+    }
+
+    static boolean checkPassword(String[] userPasswords, String credentials) {
+        if (userPasswords == null) {
+            return false;
+        }
+
+        try {
+            byte[] presented = credentials.getBytes("UTF-8");
+            for (String userPassword : userPasswords) {
+                String scheme = userPassword.startsWith("{") && userPassword.indexOf('}') > 0
+                        ? userPassword.substring(1, userPassword.indexOf('}')).toUpperCase() : null;
+                if (scheme == null) {
+                    if (MessageDigest.isEqual(userPassword.getBytes("UTF-8"), presented)) {
+                        return true;
+                    }
+                } else if ("SHA".equals(scheme) || "SSHA".equals(scheme)) {
+                    byte[] stored = Base64.decode(userPassword.substring(5 + ("SSHA".equals(scheme) ? 1 : 0))
+                            .getBytes("UTF-8"));
+                    if (stored.length < 20) {
+                        continue;
+                    }
+                    MessageDigest sha = MessageDigest.getInstance("SHA-1");
+                    sha.update(presented);
+                    sha.update(Arrays.copyOfRange(stored, 20, stored.length));
+                    if (MessageDigest.isEqual(sha.digest(), Arrays.copyOf(stored, 20))) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public DistinguishedName getBaseLdapPath() {
+        return new DistinguishedName(base);
+    }
+
+    public String getBaseLdapPathAsString() {
+        return base;
+    }
+
+    public LdifSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public void setLdif(Resource ldif) {
+        this.ldif = ldif;
+    }
+
+    /**
+     * Where the snapshot is saved, by default springsecurity-ldif.snapshot in the temporary directory.
+     */
+    public void setSnapshotFile(File snapshotFile) {
+        this.snapshotFile = snapshotFile;
+    }
+}
@@ -0,0 +1,411 @@
+package github.priyatam.springsecurity.ldap;
+
+import org.springframework.ldap.core.DirContextAdapter;
+import org.springframework.ldap.core.DistinguishedName;
+
+import javax.naming.Binding;
+import javax.naming.Context;
+import javax.naming.InvalidNameException;
+import javax.naming.Name;
+import javax.naming.NameClassPair;
+import javax.naming.NameNotFoundException;
+import javax.naming.NameParser;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.OperationNotSupportedException;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.ModificationItem;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.ExtendedRequest;
+import javax.naming.ldap.ExtendedResponse;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.LdapName;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Read-only LdapContext over an {@link LdifSnapshot}, rooted at the base DN of its {@link SnapshotContextSource}.
+ * Names are relative to that base DN, as with a JNDI context whose provider URL ends with it.
+ * <p/>
+ * Supports the lookups and searches done by FilterBasedLdapUserSearch, BindAuthenticator and
+ * DefaultLdapAuthoritiesPopulator; every write throws an OperationNotSupportedException.
+ */
+class SnapshotDirContext implements LdapContext {
+
+    private final LdifSnapshot snapshot;
+    private final String base;
+    private final Hashtable<Object, Object> environment;
+
+    SnapshotDirContext(LdifSnapshot snapshot, String base, String principal) {
+        this.snapshot = snapshot;
+        this.base = base;
+        this.environment = new Hashtable<Object, Object>();
+        environment.put(Context.PROVIDER_URL, "snapshot:///" + base);
+        if (principal != null) {
+            environment.put(Context.SECURITY_PRINCIPAL, principal);
+        }
+    }
+
+    public NamingEnumeration<SearchResult> search(String name, String filterExpr, Object[] filterArgs,
+                                                  SearchControls cons) throws NamingException {
+        return search(name, SnapshotSearchFilter.format(filterExpr, filterArgs), cons);
+    }
+
+    public NamingEnumeration<SearchResult> search(Name name, String filterExpr, Object[] filterArgs,
+                                                  SearchControls cons) throws NamingException {
+        return search(name.toString(), filterExpr, filterArgs, cons);
+    }
+
+    public NamingEnumeration<SearchResult> search(Name name, String filter, SearchControls cons)
+            throws NamingException {
+        return search(name.toString(), filter, cons);
+    }
+
+    public NamingEnumeration<SearchResult> search(String name, String filter, SearchControls cons)
+            throws NamingException {
+        SearchControls controls = cons != null ? cons : new SearchControls();
+        SnapshotSearchFilter searchFilter = SnapshotSearchFilter.parse(filter);
+        String searchBase = absolute(name);
+        String normalizedBase = LdifSnapshot.normalizeDn(searchBase);
+        int baseDepth = new LdapName(searchBase).size();
+        if (!normalizedBase.equals(LdifSnapshot.normalizeDn(base)) && snapshot.getEntry(searchBase) == null) {
+            throw new NameNotFoundException("No entry " + searchBase);
+        }
+
+        LdifSnapshot.Entry[] entries = snapshot.getEntries();
+        int[] candidates = searchFilter.candidates(snapshot);
+        int count = candidates != null ? candidates.length : entries.length;
+        long countLimit = controls.getCountLimit();
+        List<SearchResult> results = new ArrayList<SearchResult>();
+
+        for (int i = 0; i < count && (countLimit <= 0 || results.size() < countLimit); i++) {
+            LdifSnapshot.Entry entry = entries[candidates != null ? candidates[i] : i];
+            if (inScope(entry, normalizedBase, baseDepth, controls.getSearchScope()) && searchFilter.matches(entry)) {
+                results.add(toSearchResult(entry, baseDepth, controls));
+            }
+        }
+        return new ResultEnumeration<SearchResult>(results);
+    }
+
+    private static boolean inScope(LdifSnapshot.Entry entry, String normalizedBase, int baseDepth, int scope) {
+        if (entry.normalizedDn.equals(normalizedBase)) {
+            return scope != SearchControls.ONELEVEL_SCOPE;
+        }
+        if (scope == SearchControls.OBJECT_SCOPE || !entry.normalizedDn.endsWith("," + normalizedBase)) {
+            return false;
+        }
+        return scope == SearchControls.SUBTREE_SCOPE || entry.depth == baseDepth + 1;
+    }
+
+    private SearchResult toSearchResult(LdifSnapshot.Entry entry, int baseDepth, SearchControls controls)
+            throws InvalidNameException {
+        LdapName dn = new LdapName(entry.dn);
+        Attributes attributes = entry.toAttributes(controls.getReturningAttributes());
+        Object object = null;
+        if (controls.getReturningObjFlag()) {
+            int rootDepth = new LdapName(base).size();
+            object = new DirContextAdapter(attributes, new DistinguishedName(dn.getSuffix(rootDepth).toString()),
+                    new DistinguishedName(base));
+        }
+
+        SearchResult result = new SearchResult(dn.getSuffix(baseDepth).toString(),
+                object != null ? object.getClass().getName() : null, object, attributes, true);
+        result.setNameInNamespace(entry.dn);
+        return result;
+    }
+
+    public Attributes getAttributes(String name, String[] attrIds) throws NamingException {
+        String dn = absolute(name);
+        LdifSnapshot.Entry entry = snapshot.getEntry(dn);
+        if (entry == null) {
+            throw new NameNotFoundException("No entry " + dn);
+        }
+        return entry.toAttributes(attrIds);
+    }
+
+    public Attributes getAttributes(Name name, String[] attrIds) throws NamingException {
+        return getAttributes(name.toString(), attrIds);
+    }
+
+    public Attributes getAttributes(Name name) throws NamingException {
+        return getAttributes(name.toString(), null);
+    }
+
+    public Attributes getAttributes(String name) throws NamingException {
+        return getAttributes(name, null);
+    }
+
+    public Object lookup(String name) throws NamingException {
+        if (name.length() == 0) {
+            return this;
+        }
+        return new DirContextAdapter(getAttributes(name), new DistinguishedName(name), new DistinguishedName(base));
+    }
+
+    public Object lookup(Name name) throws NamingException {
+        return lookup(name.toString());
+    }
+
+    public Object lookupLink(Name name) throws NamingException {
+        return lookup(name);
+    }
+
+    public Object lookupLink(String name) throws NamingException {
+        return lookup(name);
+    }
+
+    public String getNameInNamespace() {
+        return base;
+    }
+
+    public NameParser getNameParser(Name name) {
+        return getNameParser("");
+    }
+
+    public NameParser getNameParser(String name) {
+        return new NameParser() {
+            public Name parse(String name) throws NamingException {
+                return new LdapName(name);
+            }
+        };
+    }
+
+    public Name composeName(Name name, Name prefix) throws NamingException {
+        return ((Name) prefix.clone()).addAll(name);
+    }
+
+    public String composeName(String name, String prefix) {
+        if (prefix.length() == 0) {
+            return name;
+        }
+        return name.length() == 0 ? prefix : name + "," + prefix;
+    }
+
+    public Hashtable<?, ?> getEnvironment() {
+        return (Hashtable<?, ?>) environment.clone();
+    }
+
+    public Object addToEnvironment(String propName, Object propVal) {
+        return environment.put(propName, propVal);
+    }
+
+    public Object removeFromEnvironment(String propName) {
+        return environment.remove(propName);
+    }
+
+    public void close() {
+    }
+
+    public LdapContext newInstance(Control[] requestControls) {
+        return new SnapshotDirContext(snapshot, base, (String) environment.get(Context.SECURITY_PRINCIPAL));
+    }
+
+    public void reconnect(Control[] connCtls) {
+    }
+
+    public Control[] getConnectControls() {
+        return null;
+    }
+
+    public void setRequestControls(Control[] requestControls) {
+    }
+
+    public Control[] getRequestControls() {
+        return null;
+    }
+
+    /**
+     * Returns null: no password policy or paged results controls are sent back.
+     */
+    public Control[] getResponseControls() {
+        return null;
+    }
+
+    private String absolute(String name) {
+        return composeName(name, base);
+    }
+
+    // Writes, listings and schema access are not supported by the snapshot
+
+    public NamingEnumeration<NameClassPair> list(Name name) throws NamingException {
+        throw readOnly();
+    }
+
+    public NamingEnumeration<NameClassPair> list(String name) throws NamingException {
+        throw readOnly();
+    }
+
+    public NamingEnumeration<Binding> listBindings(Name name) throws NamingException {
+        throw readOnly();
+    }
+
+    public NamingEnumeration<Binding> listBindings(String name) throws NamingException {
+        throw readOnly();
+    }
+
+    public NamingEnumeration<SearchResult> search(Name name, Attributes matchingAttributes, String[] attributesToReturn)
+            throws NamingException {
+        throw readOnly();
+    }
+
+    public NamingEnumeration<SearchResult> search(String name, Attributes matchingAttributes,
+                                                  String[] attributesToReturn) throws NamingException {
+        throw readOnly();
+    }
+
+    public NamingEnumeration<SearchResult> search(Name name, Attributes matchingAttributes) throws NamingException {
+        throw readOnly();
+    }
+
+    public NamingEnumeration<SearchResult> search(String name, Attributes matchingAttributes) throws NamingException {
+        throw readOnly();
+    }
+
+    public void modifyAttributes(Name name, int modOp, Attributes attrs) throws NamingException {
+        throw readOnly();
+    }
+
+    public void modifyAttributes(String name, int modOp, Attributes attrs) throws NamingException {
+        throw readOnly();
+    }
+
+    public void modifyAttributes(Name name, ModificationItem[] mods) throws NamingException {
+        throw readOnly();
+    }
+
+    public void modifyAttributes(String name, ModificationItem[] mods) throws NamingException {
+        throw readOnly();
+    }
+
+    public void bind(Name name, Object obj) throws NamingException {
+        throw readOnly();
+    }
+
+    public void bind(String name, Object obj) throws NamingException {
+        throw readOnly();
+    }
+
+    public void bind(Name name, Object obj, Attributes attrs) throws NamingException {
+        throw readOnly();
+    }
+
+    public void bind(String name, Object obj, Attributes attrs) throws NamingException {
+        throw readOnly();
+    }
+
+    public void rebind(Name name, Object obj) throws NamingException {
+        throw readOnly();
+    }
+
+    public void rebind(String name, Object obj) throws NamingException {
+        throw readOnly();
+    }
+
+    public void rebind(Name name, Object obj, Attributes attrs) throws NamingException {
+        throw readOnly();
+    }
+
+    public void rebind(String name, Object obj, Attributes attrs) throws NamingException {
+        throw readOnly();
+    }
+
+    public void unbind(Name name) throws NamingException {
+        throw readOnly();
+    }
+
+    public void unbind(String name) throws NamingException {
+        throw readOnly();
+    }
+
+    public void rename(Name oldName, Name newName) throws NamingException {
+        throw readOnly();
+    }
+
+    public void rename(String oldName, String newName) throws NamingException {
+        throw readOnly();
+    }
+
+    public void destroySubcontext(Name name) throws NamingException {
+        throw readOnly();
+    }
+
+    public void destroySubcontext(String name) throws NamingException {
+        throw readOnly();
+    }
+
+    public Context createSubcontext(Name name) throws NamingException {
+        throw readOnly();
+    }
+
+    public Context createSubcontext(String name) throws NamingException {
+        throw readOnly();
+    }
+
+    public DirContext createSubcontext(Name name, Attributes attrs) throws NamingException {
+        throw readOnly();
+    }
+
+    public DirContext createSubcontext(String name, Attributes attrs) throws NamingException {
+        throw readOnly();
+    }
+
+    public DirContext getSchema(Name name) throws NamingException {
+        throw readOnly();
+    }
+
+    public DirContext getSchema(String name) throws NamingException {
+        throw readOnly();
+    }
+
+    public DirContext getSchemaClassDefinition(Name name) throws NamingException {
+        throw readOnly();
+    }
+
+    public DirContext getSchemaClassDefinition(String name) throws NamingException {
+        throw readOnly();
+    }
+
+    public ExtendedResponse extendedOperation(ExtendedRequest request) throws NamingException {
+        throw readOnly();
+    }
+
+    private static OperationNotSupportedException readOnly() {
+        return new OperationNotSupportedException("Not supported by the read-only snapshot directory");
+    }
+
+    private static final class ResultEnumeration<T> implements NamingEnumeration<T> {
+        private final Iterator<T> iterator;
+
+        ResultEnumeration(List<T> results) {
+            this.iterator = results.iterator();
+        }
+
+        public boolean hasMore() {
+            return iterator.hasNext();
+        }
+
+        public boolean hasMoreElements() {
+            return iterator.hasNext();
+        }
+
+        public T next() {
+            return iterator.next();
+        }
+
+        public T nextElement() {
+            if (!iterator.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return iterator.next();
+        }
+
+        public void close() {
+        }
+    }
+}
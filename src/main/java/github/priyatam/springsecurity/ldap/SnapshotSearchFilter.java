@@ -0,0 +1,373 @@
+package github.priyatam.springsecurity.ldap;
+
+import javax.naming.directory.InvalidSearchFilterException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * RFC 2254 search filter evaluated against the entries of an {@link LdifSnapshot}: and, or, not, equality,
+ * presence, substring, approximate (as equality), greater or equal and less or equal items.
+ * Extensible matches are not supported.
+ * <p/>
+ * Equality items on an indexed attribute, alone, in an and, or in an or of indexed items, select their
+ * candidate entries from the snapshot indexes instead of a scan.
+ */
+abstract class SnapshotSearchFilter {
+
+    abstract boolean matches(LdifSnapshot.Entry entry);
+
+    /**
+     * Returns the numbers of the entries which may match, or null if every entry has to be tested.
+     */
+    int[] candidates(LdifSnapshot snapshot) {
+        return null;
+    }
+
+    /**
+     * Substitute the <code>{n}</code> arguments of a filter expression, escaped as filter values.
+     */
+    static String format(String filterExpr, Object[] filterArgs) throws InvalidSearchFilterException {
+        if (filterArgs == null || filterArgs.length == 0) {
+            return filterExpr;
+        }
+
+        StringBuilder sb = new StringBuilder(filterExpr.length() + 32);
+        int i = 0;
+        while (i < filterExpr.length()) {
+            char c = filterExpr.charAt(i);
+            int close = c == '{' ? filterExpr.indexOf('}', i) : -1;
+            if (close > i + 1) {
+                int argument;
+                try {
+                    argument = Integer.parseInt(filterExpr.substring(i + 1, close));
+                } catch (NumberFormatException e) {
+                    throw new InvalidSearchFilterException("Invalid argument in filter " + filterExpr);
+                }
+                if (argument >= filterArgs.length) {
+                    throw new InvalidSearchFilterException("Missing argument " + argument + " of filter " + filterExpr);
+                }
+                escape(sb, filterArgs[argument]);
+                i = close + 1;
+            } else {
+                sb.append(c);
+                i++;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void escape(StringBuilder sb, Object argument) {
+        if (argument instanceof byte[]) {
+            for (byte b : (byte[]) argument) {
+                sb.append('\\').append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return;
+        }
+
+        String value = String.valueOf(argument);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '*':
+                    sb.append("\\2a");
+                    break;
+                case '(':
+                    sb.append("\\28");
+                    break;
+                case ')':
+                    sb.append("\\29");
+                    break;
+                case '\\':
+                    sb.append("\\5c");
+                    break;
+                case '\0':
+                    sb.append("\\00");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+    }
+
+    static SnapshotSearchFilter parse(String filter) throws InvalidSearchFilterException {
+        String expression = filter.trim();
+        if (!expression.startsWith("(")) {
+            expression = "(" + expression + ")";
+        }
+
+        int[] position = {0};
+        try {
+            SnapshotSearchFilter result = parse(expression, position);
+            if (position[0] != expression.length()) {
+                throw new InvalidSearchFilterException("Unexpected characters after filter " + filter);
+            }
+            return result;
+        } catch (StringIndexOutOfBoundsException e) {
+            throw new InvalidSearchFilterException("Unbalanced filter " + filter);
+        }
+    }
+
+    private static SnapshotSearchFilter parse(String expression, int[] position) throws InvalidSearchFilterException {
+        expect(expression, position, '(');
+        SnapshotSearchFilter result;
+        char c = expression.charAt(position[0]);
+        if (c == '&' || c == '|') {
+            position[0]++;
+            List<SnapshotSearchFilter> filters = new ArrayList<SnapshotSearchFilter>();
+            while (expression.charAt(position[0]) == '(') {
+                filters.add(parse(expression, position));
+            }
+            result = c == '&' ? new And(filters) : new Or(filters);
+        } else if (c == '!') {
+            position[0]++;
+            result = new Not(parse(expression, position));
+        } else {
+            int close = expression.indexOf(')', position[0]);
+            if (close < 0) {
+                throw new InvalidSearchFilterException("Unbalanced filter " + expression);
+            }
+            result = parseItem(expression.substring(position[0], close));
+            position[0] = close;
+        }
+        expect(expression, position, ')');
+        return result;
+    }
+
+    private static void expect(String expression, int[] position, char c) throws InvalidSearchFilterException {
+        if (expression.charAt(position[0]) != c) {
+            throw new InvalidSearchFilterException("Expected '" + c + "' at " + position[0] + " of " + expression);
+        }
+        position[0]++;
+    }
+
+    private static SnapshotSearchFilter parseItem(String item) throws InvalidSearchFilterException {
+        int equals = item.indexOf('=');
+        if (equals <= 0) {
+            throw new InvalidSearchFilterException("Invalid filter item " + item);
+        }
+
+        char operator = item.charAt(equals - 1);
+        boolean ordered = operator == '>' || operator == '<' || operator == '~';
+        String attributeId = item.substring(0, ordered ? equals - 1 : equals).trim();
+        String value = item.substring(equals + 1);
+        if (attributeId.length() == 0 || attributeId.indexOf(':') >= 0) {
+            throw new InvalidSearchFilterException("Unsupported filter item " + item);
+        }
+
+        if (operator == '>') {
+            return new Compare(attributeId, unescape(value), 1);
+        } else if (operator == '<') {
+            return new Compare(attributeId, unescape(value), -1);
+        } else if ("*".equals(value)) {
+            return new Present(attributeId);
+        } else if (value.indexOf('*') >= 0) {
+            String[] parts = value.split("\\*", -1);
+            for (int i = 0; i < parts.length; i++) {
+                parts[i] = unescape(parts[i]).toLowerCase(Locale.ENGLISH);
+            }
+            return new Substring(attributeId, parts);
+        }
+        // approximate matches are equality matches here
+        return new Compare(attributeId, unescape(value), 0);
+    }
+
+    private static String unescape(String value) throws InvalidSearchFilterException {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(value.length());
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '\\') {
+                    bytes.write(Integer.parseInt(value.substring(i + 1, i + 3), 16));
+                    i += 2;
+                } else {
+                    bytes.write(String.valueOf(c).getBytes("UTF-8"));
+                }
+            }
+            return new String(bytes.toByteArray(), "UTF-8");
+        } catch (RuntimeException e) {
+            throw new InvalidSearchFilterException("Invalid escape in filter value " + value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static final class And extends SnapshotSearchFilter {
+        private final List<SnapshotSearchFilter> filters;
+
+        And(List<SnapshotSearchFilter> filters) {
+            this.filters = filters;
+        }
+
+        boolean matches(LdifSnapshot.Entry entry) {
+            for (SnapshotSearchFilter filter : filters) {
+                if (!filter.matches(entry)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        int[] candidates(LdifSnapshot snapshot) {
+            int[] smallest = null;
+            for (SnapshotSearchFilter filter : filters) {
+                int[] candidates = filter.candidates(snapshot);
+                if (candidates != null && (smallest == null || candidates.length < smallest.length)) {
+                    smallest = candidates;
+                }
+            }
+            return smallest;
+        }
+    }
+
+    static final class Or extends SnapshotSearchFilter {
+        private final List<SnapshotSearchFilter> filters;
+
+        Or(List<SnapshotSearchFilter> filters) {
+            this.filters = filters;
+        }
+
+        boolean matches(LdifSnapshot.Entry entry) {
+            for (SnapshotSearchFilter filter : filters) {
+                if (filter.matches(entry)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        int[] candidates(LdifSnapshot snapshot) {
+            int[] union = new int[0];
+            for (SnapshotSearchFilter filter : filters) {
+                int[] candidates = filter.candidates(snapshot);
+                if (candidates == null) {
+                    return null;
+                }
+                int[] merged = Arrays.copyOf(union, union.length + candidates.length);
+                System.arraycopy(candidates, 0, merged, union.length, candidates.length);
+                union = merged;
+            }
+            Arrays.sort(union);
+            int size = 0;
+            for (int i = 0; i < union.length; i++) {
+                if (i == 0 || union[i] != union[i - 1]) {
+                    union[size++] = union[i];
+                }
+            }
+            return Arrays.copyOf(union, size);
+        }
+    }
+
+    static final class Not extends SnapshotSearchFilter {
+        private final SnapshotSearchFilter filter;
+
+        Not(SnapshotSearchFilter filter) {
+            this.filter = filter;
+        }
+
+        boolean matches(LdifSnapshot.Entry entry) {
+            return !filter.matches(entry);
+        }
+    }
+
+    static final class Present extends SnapshotSearchFilter {
+        private final String attributeId;
+
+        Present(String attributeId) {
+            this.attributeId = attributeId;
+        }
+
+        boolean matches(LdifSnapshot.Entry entry) {
+            return entry.get(attributeId) != null;
+        }
+    }
+
+    /**
+     * Equality when <code>order</code> is 0, greater or equal when 1 and less or equal when -1.
+     */
+    static final class Compare extends SnapshotSearchFilter {
+        private final String attributeId;
+        private final String value;
+        private final String normalizedValue;
+        private final int order;
+
+        Compare(String attributeId, String value, int order) {
+            this.attributeId = attributeId;
+            this.value = value;
+            this.normalizedValue = LdifSnapshot.normalizeValue(attributeId, value);
+            this.order = order;
+        }
+
+        boolean matches(LdifSnapshot.Entry entry) {
+            String[] values = entry.get(attributeId);
+            if (values == null) {
+                return false;
+            }
+            for (String candidate : values) {
+                int comparison = LdifSnapshot.normalizeValue(attributeId, candidate).compareTo(normalizedValue);
+                if (order == 0 ? comparison == 0 : (order > 0 ? comparison >= 0 : comparison <= 0)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        int[] candidates(LdifSnapshot snapshot) {
+            return order == 0 ? snapshot.lookup(attributeId, value) : null;
+        }
+    }
+
+    /**
+     * <code>parts</code> holds the initial, any and final parts of the pattern, lower case; the initial and
+     * final parts are empty when the pattern starts or ends with a star.
+     */
+    static final class Substring extends SnapshotSearchFilter {
+        private final String attributeId;
+        private final String[] parts;
+
+        Substring(String attributeId, String[] parts) {
+            this.attributeId = attributeId;
+            this.parts = parts;
+        }
+
+        boolean matches(LdifSnapshot.Entry entry) {
+            String[] values = entry.get(attributeId);
+            if (values == null) {
+                return false;
+            }
+            for (String candidate : values) {
+                if (matches(candidate.trim().toLowerCase(Locale.ENGLISH))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean matches(String candidate) {
+            String first = parts[0];
+            String last = parts[parts.length - 1];
+            if (!candidate.startsWith(first) || candidate.length() < first.length() + last.length()) {
+                return false;
+            }
+            int position = first.length();
+            for (int i = 1; i < parts.length - 1; i++) {
+                position = candidate.indexOf(parts[i], position);
+                if (position < 0) {
+                    return false;
+                }
+                position += parts[i].length();
+            }
+            return candidate.length() - last.length() >= position && candidate.endsWith(last);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package github.priyatam.springsecurity.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-stage latency timers and handshake outcome counters of CustomAuthenticationFilter, published as
+ * JMX MBeans under <code>github.priyatam.springsecurity:type=NegotiateFilter</code>.
+ * Recording does not allocate.
+ */
+public class NegotiateFilterMetrics implements NegotiateOutcomesMBean, InitializingBean, DisposableBean {
+
+    Logger logger = LoggerFactory.getLogger(NegotiateFilterMetrics.class);
+
+    public enum Stage {
+        HEADER_PARSE("headerParse"),
+        HANDSHAKE("handshake"),
+        GUEST_CHECK("guestCheck"),
+        PRINCIPAL("principal"),
+        ROLE_LOAD("roleLoad"),
+        PUBLISH("publish");
+
+        private final String jmxName;
+
+        Stage(String jmxName) {
+            this.jmxName = jmxName;
+        }
+    }
+
+    private final StageTimer[] timers = new StageTimer[Stage.values().length];
+
+    private final AtomicLong successCount = new AtomicLong();
+    private final AtomicLong continueCount = new AtomicLong();
+    private final AtomicLong unauthorizedCount = new AtomicLong();
+    private final AtomicLong guestRejectedCount = new AtomicLong();
+
+    private String domain = "github.priyatam.springsecurity";
+    private final List<ObjectName> registered = new ArrayList<ObjectName>();
+
+    public NegotiateFilterMetrics() {
+        for (Stage stage : Stage.values()) {
+            timers[stage.ordinal()] = new StageTimer();
+        }
+    }
+
+    public void afterPropertiesSet() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        // not named after the class, so not a standard MBean by itself
+        register(server, new ObjectName(domain + ":type=NegotiateFilter,name=outcomes"),
+                new StandardMBean(this, NegotiateOutcomesMBean.class));
+        for (Stage stage : Stage.values()) {
+            register(server, new ObjectName(domain + ":type=NegotiateFilter,name=" + stage.jmxName), timer(stage));
+        }
+    }
+
+    public void destroy() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registered) {
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        }
+        registered.clear();
+    }
+
+    private void register(MBeanServer server, ObjectName name, Object mbean) throws Exception {
+        if (server.isRegistered(name)) {
+            logger.warn("Replacing MBean " + name);
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(mbean, name);
+        registered.add(name);
+    }
+
+    public StageTimer timer(Stage stage) {
+        return timers[stage.ordinal()];
+    }
+
+    /**
+     * Record the time elapsed since <code>startNanos</code> for the passed stage.
+     *
+     * @return the current System.nanoTime(), to chain the next stage
+     */
+    public long record(Stage stage, long startNanos) {
+        return timers[stage.ordinal()].record(startNanos);
+    }
+
+    public void success() {
+        successCount.incrementAndGet();
+    }
+
+    public void handshakeContinue() {
+        continueCount.incrementAndGet();
+    }
+
+    public void unauthorized() {
+        unauthorizedCount.incrementAndGet();
+    }
+
+    public void guestRejected() {
+        guestRejectedCount.incrementAndGet();
+    }
+
+    public long getSuccessCount() {
+        return successCount.get();
+    }
+
+    public long getContinueCount() {
+        return continueCount.get();
+    }
+
+    public long getUnauthorizedCount() {
+        return unauthorizedCount.get();
+    }
+
+    public long getGuestRejectedCount() {
+        return guestRejectedCount.get();
+    }
+
+    public void reset() {
+        successCount.set(0);
+        continueCount.set(0);
+        unauthorizedCount.set(0);
+        guestRejectedCount.set(0);
+        for (StageTimer timer : timers) {
+            timer.reset();
+        }
+    }
+
+    /**
+     * JMX domain of the MBeans, <code>github.priyatam.springsecurity</code> by default.
+     */
+    public void setDomain(String domain) {
+        this.domain = domain;
+    }
+}
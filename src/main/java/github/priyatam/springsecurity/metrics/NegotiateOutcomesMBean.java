@@ -0,0 +1,17 @@
+package github.priyatam.springsecurity.metrics;
+
+/**
+ * JMX view of the Negotiate handshake outcomes.
+ */
+public interface NegotiateOutcomesMBean {
+
+    long getSuccessCount();
+
+    long getContinueCount();
+
+    long getUnauthorizedCount();
+
+    long getGuestRejectedCount();
+
+    void reset();
+}
@@ -0,0 +1,48 @@
+package github.priyatam.springsecurity.metrics;
+
+/**
+ * Latency of one processing stage, recorded in nanoseconds.
+ */
+public class StageTimer implements StageTimerMBean {
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    /**
+     * Record the time elapsed since <code>startNanos</code> (a System.nanoTime() value).
+     *
+     * @return the current System.nanoTime(), to chain the next stage
+     */
+    public long record(long startNanos) {
+        long now = System.nanoTime();
+        histogram.record(now - startNanos);
+        return now;
+    }
+
+    public long getCount() {
+        return histogram.getCount();
+    }
+
+    public double getMeanMicros() {
+        return histogram.getMean() / 1000;
+    }
+
+    public double getP50Micros() {
+        return histogram.getPercentile(0.5) / 1000.0;
+    }
+
+    public double getP99Micros() {
+        return histogram.getPercentile(0.99) / 1000.0;
+    }
+
+    public double getP999Micros() {
+        return histogram.getPercentile(0.999) / 1000.0;
+    }
+
+    public double getMaxMicros() {
+        return histogram.getMax() / 1000.0;
+    }
+
+    public void reset() {
+        histogram.reset();
+    }
+}
@@ -0,0 +1,21 @@
+package github.priyatam.springsecurity.metrics;
+
+/**
+ * JMX view of a StageTimer. Durations are in microseconds.
+ */
+public interface StageTimerMBean {
+
+    long getCount();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaxMicros();
+
+    void reset();
+}
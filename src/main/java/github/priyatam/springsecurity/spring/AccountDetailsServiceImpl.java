@@ -1,8 +1,10 @@
 package github.priyatam.springsecurity.spring;
 
 import github.priyatam.springsecurity.domain.User;
+import github.priyatam.springsecurity.utils.AccountContextSupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataAccessException;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -11,8 +13,7 @@ import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import javax.persistence.EntityManager;
-import javax.persistence.PersistenceContext;
+import javax.persistence.NoResultException;
 import java.util.Collection;
 
 /**
@@ -22,8 +23,8 @@ public class AccountDetailsServiceImpl implements UserDetailsService {
 
     Logger logger = LoggerFactory.getLogger(AccountDetailsServiceImpl.class);
 
-    @PersistenceContext
-    private EntityManager entityManager;
+    @Autowired
+    private AccountContextSupport accountContextSupport;
 
     /**
      * Retrieve an account depending on its login this method is not case sensitive.<br>
@@ -43,7 +44,12 @@ public class AccountDetailsServiceImpl implements UserDetailsService {
 
         logger.debug("Security verification for user '" + login + "'");
 
-        User account = obtainAccount(login);
+        User account;
+        try {
+            account = obtainAccount(login);
+        } catch (NoResultException e) {
+            account = null;
+        }
 
         if (account == null) {
             logger.info("Account " + login + " could not be found");
@@ -73,13 +79,18 @@ public class AccountDetailsServiceImpl implements UserDetailsService {
 
     /**
      * Return the account depending on the login provided by spring security.
+     * The account is a read-only snapshot served from the account cache when possible, see
+     * AccountContextSupport.obtainAccount.
      *
      * @return the user if found
+     * @throws NoResultException if there is no such account
      */
     protected User obtainAccount(String username) {
-        return entityManager.createNamedQuery("User.FIND_BY_USERNAME", User.class)
-                .setParameter("username", username)
-                .getSingleResult();
+        return accountContextSupport.obtainAccount(username);
+    }
+
+    public void setAccountContextSupport(AccountContextSupport accountContextSupport) {
+        this.accountContextSupport = accountContextSupport;
     }
 
     /**
@@ -0,0 +1,243 @@
+package github.priyatam.springsecurity.spring;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.GrantedAuthorityImpl;
+
+import java.io.Serializable;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Process-wide factory of canonical, immutable authority sets: the same role names always give the same
+ * set instance, made of the same GrantedAuthority instances, as long as someone holds on to it. Sessions
+ * with the same roles then share one set, and equality checks between canonical sets are identity checks.
+ * <p/>
+ * Sets and authorities are weakly referenced: those no session uses any more are garbage collected.
+ * Role names are compared case-sensitively, like GrantedAuthorityImpl does; a set iterates in role name order.
+ */
+public final class AuthoritySetFactory {
+
+    public static final Collection<GrantedAuthority> EMPTY = new AuthoritySet(new GrantedAuthority[0]);
+
+    private static final Interner<String, GrantedAuthority> authorities = new Interner<String, GrantedAuthority>();
+    private static final Interner<List<String>, AuthoritySet> sets = new Interner<List<String>, AuthoritySet>();
+
+    private AuthoritySetFactory() {
+    }
+
+    /**
+     * Return the canonical authority of the passed role.
+     */
+    public static GrantedAuthority authority(String role) {
+        GrantedAuthority authority = authorities.get(role);
+        if (authority == null) {
+            authority = authorities.intern(role, new GrantedAuthorityImpl(role));
+        }
+        return authority;
+    }
+
+    /**
+     * Return the canonical set of the authorities of the passed roles. Duplicates are ignored.
+     */
+    public static Collection<GrantedAuthority> of(Collection<String> roles) {
+        if (roles == null || roles.isEmpty()) {
+            return EMPTY;
+        }
+
+        String[] names = roles.toArray(new String[roles.size()]);
+        for (String name : names) {
+            if (name == null) {
+                throw new IllegalArgumentException("Null role in " + roles);
+            }
+        }
+        Arrays.sort(names);
+        int size = 0;
+        for (int i = 0; i < names.length; i++) {
+            if (size == 0 || !names[i].equals(names[size - 1])) {
+                names[size++] = names[i];
+            }
+        }
+        List<String> key = Arrays.asList(size == names.length ? names : Arrays.copyOf(names, size));
+
+        AuthoritySet set = sets.get(key);
+        if (set == null) {
+            GrantedAuthority[] members = new GrantedAuthority[size];
+            for (int i = 0; i < size; i++) {
+                members[i] = authority(names[i]);
+            }
+            set = sets.intern(key, new AuthoritySet(members));
+        }
+        return set;
+    }
+
+    /**
+     * Tell whether the passed collection is a set returned by this factory.
+     */
+    public static boolean isCanonical(Collection<? extends GrantedAuthority> authorities) {
+        return authorities instanceof AuthoritySet;
+    }
+
+    /**
+     * Return the number of canonical sets currently alive, collected ones may still be counted.
+     */
+    public static int size() {
+        sets.expunge();
+        return sets.entries.size();
+    }
+
+    /**
+     * Immutable set of canonical authorities, sorted by role name.
+     */
+    private static final class AuthoritySet extends AbstractSet<GrantedAuthority> implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final GrantedAuthority[] members;
+        private final int hash;
+
+        AuthoritySet(GrantedAuthority[] members) {
+            this.members = members;
+            int hash = 0;
+            for (GrantedAuthority member : members) {
+                hash += member.hashCode();
+            }
+            this.hash = hash;
+        }
+
+        @Override
+        public Iterator<GrantedAuthority> iterator() {
+            return new Iterator<GrantedAuthority>() {
+                private int next = 0;
+
+                public boolean hasNext() {
+                    return next < members.length;
+                }
+
+                public GrantedAuthority next() {
+                    if (next >= members.length) {
+                        throw new NoSuchElementException();
+                    }
+                    return members[next++];
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return members.length;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof GrantedAuthority) || ((GrantedAuthority) o).getAuthority() == null) {
+                return false;
+            }
+            String role = ((GrantedAuthority) o).getAuthority();
+            int low = 0;
+            int high = members.length - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int comparison = members[middle].getAuthority().compareTo(role);
+                if (comparison < 0) {
+                    low = middle + 1;
+                } else if (comparison > 0) {
+                    high = middle - 1;
+                } else {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (o instanceof AuthoritySet) {
+                // canonical: another instance can only hold other roles
+                return false;
+            }
+            return super.equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        private Object readResolve() {
+            String[] names = new String[members.length];
+            for (int i = 0; i < members.length; i++) {
+                names[i] = members[i].getAuthority();
+            }
+            return of(Arrays.asList(names));
+        }
+    }
+
+    /**
+     * Map of weakly referenced canonical values; entries of collected values are removed on the next call.
+     */
+    private static final class Interner<K, V> {
+
+        private final ConcurrentMap<K, Entry<K, V>> entries = new ConcurrentHashMap<K, Entry<K, V>>();
+        private final ReferenceQueue<V> queue = new ReferenceQueue<V>();
+
+        V get(K key) {
+            Entry<K, V> entry = entries.get(key);
+            return entry != null ? entry.get() : null;
+        }
+
+        /**
+         * Return the canonical value of the key, the passed candidate if there was none.
+         */
+        V intern(K key, V candidate) {
+            expunge();
+            Entry<K, V> created = new Entry<K, V>(key, candidate, queue);
+            while (true) {
+                Entry<K, V> existing = entries.putIfAbsent(key, created);
+                if (existing == null) {
+                    return candidate;
+                }
+                V value = existing.get();
+                if (value != null) {
+                    return value;
+                }
+                if (entries.replace(key, existing, created)) {
+                    return candidate;
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        void expunge() {
+            Reference<? extends V> reference;
+            while ((reference = queue.poll()) != null) {
+                Entry<K, V> entry = (Entry<K, V>) reference;
+                entries.remove(entry.key, entry);
+            }
+        }
+    }
+
+    private static final class Entry<K, V> extends WeakReference<V> {
+        private final K key;
+
+        Entry(K key, V value, ReferenceQueue<V> queue) {
+            super(value, queue);
+            this.key = key;
+        }
+    }
+}
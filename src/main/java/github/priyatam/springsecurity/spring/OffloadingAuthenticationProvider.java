@@ -0,0 +1,42 @@
+package github.priyatam.springsecurity.spring;
+
+import github.priyatam.springsecurity.utils.BlockingCallExecutor;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Runs a directory backed AuthenticationProvider (e.g. the LDAP bind and search chain) through a
+ * BlockingCallExecutor, so that it is bounded by the directory call cap and timeout.
+ */
+public class OffloadingAuthenticationProvider implements AuthenticationProvider {
+
+    private final AuthenticationProvider delegate;
+    private final BlockingCallExecutor executor;
+
+    public OffloadingAuthenticationProvider(AuthenticationProvider delegate, BlockingCallExecutor executor) {
+        this.delegate = delegate;
+        this.executor = executor;
+    }
+
+    public Authentication authenticate(final Authentication authentication) throws AuthenticationException {
+        try {
+            return executor.call(BlockingCallExecutor.Kind.DIRECTORY, new Callable<Authentication>() {
+                public Authentication call() {
+                    return delegate.authenticate(authentication);
+                }
+            });
+        } catch (AuthenticationException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new AuthenticationServiceException(e.getMessage(), e);
+        }
+    }
+
+    public boolean supports(Class<? extends Object> authentication) {
+        return delegate.supports(authentication);
+    }
+}
@@ -1,11 +1,11 @@
 package github.priyatam.springsecurity.spring;
 
+import github.priyatam.springsecurity.domain.RoleSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.GrantedAuthorityImpl;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -69,6 +69,20 @@ public abstract class SpringSecurityContext {
         return new ArrayList<String>(0);
     }
 
+    /**
+     * Return the current roles bound to the current thread by Spring Security, compiled to a RoleSet
+     * for repeated checks.
+     */
+    public static RoleSet getRoleSet() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+
+        if (auth != null) {
+            return RoleSet.of(toStringList(auth.getAuthorities()));
+        }
+
+        return RoleSet.EMPTY;
+    }
+
     /**
      * Force user authentication programmatically. It can be used to auto login a user
      * upon a successful registration phase, when the user confirms his email
@@ -93,14 +107,12 @@ public abstract class SpringSecurityContext {
                 new UsernamePasswordAuthenticationToken(user, password, roles));
     }
 
+    /**
+     * Return the canonical, immutable set of the authorities of the passed roles, shared by every caller
+     * with the same roles (see AuthoritySetFactory).
+     */
     public static Collection<GrantedAuthority> toGrantedAuthorities(List<String> roles) {
-        List<GrantedAuthority> result = new ArrayList<GrantedAuthority>();
-
-        for (String role : roles) {
-            result.add(new GrantedAuthorityImpl(role));
-        }
-
-        return result;
+        return AuthoritySetFactory.of(roles);
     }
 
     public static List<String> toStringList(Iterable<GrantedAuthority> grantedAuthorities) {
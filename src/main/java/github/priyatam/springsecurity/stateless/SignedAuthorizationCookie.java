@@ -0,0 +1,219 @@
+package github.priyatam.springsecurity.stateless;
+
+import github.priyatam.springsecurity.spring.SpringSecurityContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.codec.Base64;
+import org.springframework.security.web.authentication.logout.LogoutHandler;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Issues and verifies a compact HMAC-SHA256 signed cookie holding the username, the role names and an expiry:
+ * <pre>
+ * v1.&lt;key id&gt;.&lt;base64url(expiry|username|role,role)&gt;.&lt;base64url(hmac)&gt;
+ * </pre>
+ * Role names are used rather than RoleRegistry ids, which are only meaningful inside one JVM.
+ * The cookie is http-only; as a LogoutHandler it expires the cookie on logout.
+ */
+public class SignedAuthorizationCookie implements LogoutHandler {
+    static Logger logger = LoggerFactory.getLogger(SignedAuthorizationCookie.class);
+
+    private static final String VERSION = "v1";
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private SigningKeyRing keyRing;
+    private String cookieName = "AUTHZ";
+    private String cookiePath = "/";
+    private int maxAge = 1800;
+    private boolean secure = true;
+
+    /**
+     * Set the signed cookie of the passed authentication on the response.
+     */
+    public void issue(HttpServletResponse response, Authentication authentication) {
+        String username = authentication.getName();
+        List<String> roles = SpringSecurityContext.toStringList(authentication.getAuthorities());
+        if (!isEncodable(username) || !isEncodable(roles)) {
+            logger.warn("Not issuing an authorization cookie, unsupported characters in " + username + " " + roles);
+            return;
+        }
+
+        long expiresAt = System.currentTimeMillis() + maxAge * 1000L;
+        StringBuilder payload = new StringBuilder().append(expiresAt).append('|').append(username).append('|');
+        for (int i = 0; i < roles.size(); i++) {
+            payload.append(i == 0 ? "" : ",").append(roles.get(i));
+        }
+
+        String keyId = keyRing.getSigningKeyId();
+        String signed = VERSION + "." + keyId + "." + encode(utf8(payload.toString()));
+        Cookie cookie = new Cookie(cookieName, signed + "." + encode(sign(keyRing.getKey(keyId), signed)));
+        cookie.setPath(cookiePath);
+        cookie.setMaxAge(maxAge);
+        cookie.setSecure(secure);
+        cookie.setHttpOnly(true);
+        response.addCookie(cookie);
+    }
+
+    /**
+     * Return the authentication of the request cookie, or null if there is none, or it is
+     * malformed, expired or not signed by a known key.
+     */
+    public SignedCookieAuthentication verify(HttpServletRequest request) {
+        String value = getCookieValue(request);
+        if (value == null) {
+            return null;
+        }
+
+        String[] parts = value.split("\\.");
+        if (parts.length != 4 || !VERSION.equals(parts[0])) {
+            return null;
+        }
+        SecretKey key = keyRing.getKey(parts[1]);
+        if (key == null) {
+            logger.debug("Authorization cookie signed with an unknown key: " + parts[1]);
+            return null;
+        }
+
+        try {
+            byte[] signature = decode(parts[3]);
+            if (!MessageDigest.isEqual(signature, sign(key, parts[0] + "." + parts[1] + "." + parts[2]))) {
+                logger.warn("Authorization cookie with an invalid signature");
+                return null;
+            }
+
+            String[] fields = new String(decode(parts[2]), "UTF-8").split("\\|", -1);
+            if (fields.length != 3) {
+                return null;
+            }
+            long expiresAt = Long.parseLong(fields[0]);
+            if (expiresAt < System.currentTimeMillis()) {
+                return null;
+            }
+            List<String> roles = fields[2].length() == 0
+                    ? new ArrayList<String>(0) : Arrays.asList(fields[2].split(","));
+            return new SignedCookieAuthentication(fields[1], SpringSecurityContext.toGrantedAuthorities(roles), expiresAt);
+        } catch (IllegalArgumentException e) {
+            return null;
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Expire the cookie, e.g. on logout.
+     */
+    public void clear(HttpServletResponse response) {
+        Cookie cookie = new Cookie(cookieName, "");
+        cookie.setPath(cookiePath);
+        cookie.setMaxAge(0);
+        cookie.setSecure(secure);
+        cookie.setHttpOnly(true);
+        response.addCookie(cookie);
+    }
+
+    public void logout(HttpServletRequest request, HttpServletResponse response, Authentication authentication) {
+        clear(response);
+    }
+
+    private String getCookieValue(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                if (cookieName.equals(cookie.getName())) {
+                    return cookie.getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    private static byte[] sign(SecretKey key, String data) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(utf8(data));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean isEncodable(String value) {
+        return value != null && value.indexOf('|') < 0 && value.indexOf(',') < 0;
+    }
+
+    private static boolean isEncodable(List<String> values) {
+        for (String value : values) {
+            if (!isEncodable(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] utf8(String value) {
+        try {
+            return value.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Base64 without padding, using the url and cookie safe alphabet.
+     */
+    private static String encode(byte[] bytes) {
+        String base64 = new String(Base64.encode(bytes));
+        int end = base64.length();
+        while (end > 0 && base64.charAt(end - 1) == '=') {
+            end--;
+        }
+        return base64.substring(0, end).replace('+', '-').replace('/', '_');
+    }
+
+    private static byte[] decode(String value) {
+        StringBuilder base64 = new StringBuilder(value.replace('-', '+').replace('_', '/'));
+        while (base64.length() % 4 != 0) {
+            base64.append('=');
+        }
+        byte[] bytes = base64.toString().getBytes();
+        if (!Base64.isBase64(bytes)) {
+            throw new IllegalArgumentException("Not base64: " + value);
+        }
+        return Base64.decode(bytes);
+    }
+
+    public void setKeyRing(SigningKeyRing keyRing) {
+        this.keyRing = keyRing;
+    }
+
+    public void setCookieName(String cookieName) {
+        this.cookieName = cookieName;
+    }
+
+    public void setCookiePath(String cookiePath) {
+        this.cookiePath = cookiePath;
+    }
+
+    /**
+     * Lifetime, in seconds, of an issued cookie.
+     */
+    public void setMaxAge(int maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    public void setSecure(boolean secure) {
+        this.secure = secure;
+    }
+}
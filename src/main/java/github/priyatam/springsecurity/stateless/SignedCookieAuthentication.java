@@ -0,0 +1,38 @@
+package github.priyatam.springsecurity.stateless;
+
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.Collection;
+
+/**
+ * Authentication rebuilt from a verified authorization cookie. It carries no credentials.
+ */
+public class SignedCookieAuthentication extends AbstractAuthenticationToken {
+    private static final long serialVersionUID = 1L;
+
+    private final String username;
+    private final long expiresAt;
+
+    public SignedCookieAuthentication(String username, Collection<GrantedAuthority> authorities, long expiresAt) {
+        super(authorities);
+        this.username = username;
+        this.expiresAt = expiresAt;
+        setAuthenticated(true);
+    }
+
+    public Object getCredentials() {
+        return null;
+    }
+
+    public Object getPrincipal() {
+        return username;
+    }
+
+    /**
+     * Return the expiry of the cookie, in milliseconds since the epoch.
+     */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+}
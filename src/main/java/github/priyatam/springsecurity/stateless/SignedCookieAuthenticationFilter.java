@@ -0,0 +1,40 @@
+package github.priyatam.springsecurity.stateless;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.GenericFilterBean;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+
+/**
+ * Rebuilds the Authentication from a signed authorization cookie, without touching the http session,
+ * the database or the directory. Requests without a valid cookie go on to the Negotiate filter.
+ */
+public class SignedCookieAuthenticationFilter extends GenericFilterBean {
+    static Logger logger = LoggerFactory.getLogger(SignedCookieAuthenticationFilter.class);
+
+    private SignedAuthorizationCookie authorizationCookie;
+
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        if (SecurityContextHolder.getContext().getAuthentication() == null) {
+            SignedCookieAuthentication authentication = authorizationCookie.verify((HttpServletRequest) request);
+            if (authentication != null) {
+                logger.debug("authenticated " + authentication.getName() + " from the authorization cookie");
+                SecurityContextHolder.getContext().setAuthentication(authentication);
+            }
+        }
+
+        chain.doFilter(request, response);
+    }
+
+    public void setAuthorizationCookie(SignedAuthorizationCookie authorizationCookie) {
+        this.authorizationCookie = authorizationCookie;
+    }
+}
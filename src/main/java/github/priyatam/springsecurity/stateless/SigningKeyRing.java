@@ -0,0 +1,138 @@
+package github.priyatam.springsecurity.stateless;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+
+import javax.crypto.SecretKey;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.security.Key;
+import java.security.KeyStore;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * HMAC keys loaded from a local JCEKS keystore. Every secret key of the keystore verifies tokens,
+ * the most recently created one signs new tokens. The keystore is reloaded when the file changes,
+ * so keys are rotated by adding a new key and, once the old tokens have expired, removing the old one:
+ * <pre>
+ * keytool -genseckey -alias key-2 -keyalg HmacSHA256 -keysize 256 -storetype JCEKS -keystore authz-keys.jceks
+ * </pre>
+ */
+public class SigningKeyRing implements InitializingBean {
+    static Logger logger = LoggerFactory.getLogger(SigningKeyRing.class);
+
+    private File keyStoreFile;
+    private String keyStorePassword;
+    private long reloadInterval = 60;
+
+    private volatile Keys keys;
+    private volatile long lastCheck;
+
+    public void afterPropertiesSet() throws Exception {
+        if (keyStoreFile == null || keyStorePassword == null) {
+            throw new IllegalArgumentException("keyStoreFile and keyStorePassword are required");
+        }
+        keys = load();
+        lastCheck = System.currentTimeMillis();
+    }
+
+    /**
+     * Return the id of the key signing new tokens.
+     */
+    public String getSigningKeyId() {
+        return current().signingKeyId;
+    }
+
+    /**
+     * Return the key of the passed id, or null if it is unknown (e.g. rotated out).
+     */
+    public SecretKey getKey(String keyId) {
+        return current().byId.get(keyId);
+    }
+
+    private Keys current() {
+        long now = System.currentTimeMillis();
+        if (now - lastCheck > reloadInterval * 1000) {
+            synchronized (this) {
+                if (now - lastCheck > reloadInterval * 1000) {
+                    lastCheck = now;
+                    if (keyStoreFile.lastModified() != keys.lastModified) {
+                        try {
+                            keys = load();
+                        } catch (Exception e) {
+                            logger.error("Could not reload signing keys, keeping the current ones: " + e.getMessage());
+                        }
+                    }
+                }
+            }
+        }
+        return keys;
+    }
+
+    private Keys load() throws Exception {
+        long lastModified = keyStoreFile.lastModified();
+        KeyStore keyStore = KeyStore.getInstance("JCEKS");
+        InputStream in = new FileInputStream(keyStoreFile);
+        try {
+            keyStore.load(in, keyStorePassword.toCharArray());
+        } finally {
+            in.close();
+        }
+
+        Map<String, SecretKey> byId = new HashMap<String, SecretKey>();
+        String signingKeyId = null;
+        Date newest = null;
+        for (Enumeration<String> aliases = keyStore.aliases(); aliases.hasMoreElements(); ) {
+            String alias = aliases.nextElement();
+            Key key = keyStore.isKeyEntry(alias) ? keyStore.getKey(alias, keyStorePassword.toCharArray()) : null;
+            if (!(key instanceof SecretKey)) {
+                continue;
+            }
+            byId.put(alias, (SecretKey) key);
+            Date created = keyStore.getCreationDate(alias);
+            if (newest == null || (created != null && created.after(newest))) {
+                newest = created;
+                signingKeyId = alias;
+            }
+        }
+        if (signingKeyId == null) {
+            throw new IllegalStateException("No secret key in " + keyStoreFile);
+        }
+
+        logger.info("Loaded " + byId.size() + " signing keys, signing with " + signingKeyId);
+        return new Keys(signingKeyId, Collections.unmodifiableMap(byId), lastModified);
+    }
+
+    public void setKeyStoreFile(File keyStoreFile) {
+        this.keyStoreFile = keyStoreFile;
+    }
+
+    public void setKeyStorePassword(String keyStorePassword) {
+        this.keyStorePassword = keyStorePassword;
+    }
+
+    /**
+     * Interval, in seconds, between checks of the keystore file for changes.
+     */
+    public void setReloadInterval(long reloadInterval) {
+        this.reloadInterval = reloadInterval;
+    }
+
+    private static class Keys {
+        final String signingKeyId;
+        final Map<String, SecretKey> byId;
+        final long lastModified;
+
+        Keys(String signingKeyId, Map<String, SecretKey> byId, long lastModified) {
+            this.signingKeyId = signingKeyId;
+            this.byId = byId;
+            this.lastModified = lastModified;
+        }
+    }
+}
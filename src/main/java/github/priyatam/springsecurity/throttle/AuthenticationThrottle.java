@@ -0,0 +1,170 @@
+package github.priyatam.springsecurity.throttle;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission control of authentication attempts. Every failed attempt takes a token from the bucket of the
+ * client address and from the bucket of the attempted username; once either bucket is empty, attempts are
+ * rejected before they reach the Windows provider or the directory, until the bucket refills. Successful
+ * logins are not limited, and clear the failures of their username.
+ */
+public class AuthenticationThrottle implements AuthenticationThrottleMBean, InitializingBean, DisposableBean {
+    static Logger logger = LoggerFactory.getLogger(AuthenticationThrottle.class);
+
+    private double addressCapacity = 20;
+    private double addressRefillPerSecond = 1;
+    private double principalCapacity = 10;
+    private double principalRefillPerSecond = 0.2;
+    private long idleSeconds = 600;
+    private int maxBuckets = 100000;
+    private int stripes = 64;
+    private String jmxName = "github.priyatam.springsecurity:type=AuthenticationThrottle";
+
+    private TokenBucketLimiter byAddress;
+    private TokenBucketLimiter byPrincipal;
+    private final AtomicLong failureCount = new AtomicLong();
+    private ObjectName objectName;
+
+    public void afterPropertiesSet() throws Exception {
+        byAddress = new TokenBucketLimiter(addressCapacity, addressRefillPerSecond, idleSeconds, maxBuckets, stripes);
+        byPrincipal = new TokenBucketLimiter(principalCapacity, principalRefillPerSecond, idleSeconds, maxBuckets, stripes);
+
+        objectName = new ObjectName(jmxName);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (!server.isRegistered(objectName)) {
+            server.registerMBean(this, objectName);
+        }
+    }
+
+    public void destroy() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (objectName != null && server.isRegistered(objectName)) {
+            server.unregisterMBean(objectName);
+        }
+    }
+
+    /**
+     * Tell whether an attempt from the passed address, for the passed username if known, may proceed.
+     */
+    public boolean isAdmitted(String remoteAddress, String username) {
+        if (remoteAddress != null && !byAddress.isAdmitted(remoteAddress)) {
+            logger.warn("Too many failed authentications from " + remoteAddress);
+            return false;
+        }
+        if (username != null && !byPrincipal.isAdmitted(normalize(username))) {
+            logger.warn("Too many failed authentications for " + username);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Record a failed attempt.
+     */
+    public void failure(String remoteAddress, String username) {
+        failureCount.incrementAndGet();
+        if (remoteAddress != null) {
+            byAddress.consume(remoteAddress);
+        }
+        if (username != null) {
+            byPrincipal.consume(normalize(username));
+        }
+    }
+
+    /**
+     * Record a successful login: the username starts over with a full bucket. The bucket of the address is
+     * kept, a client logging in to one account may still be guessing others.
+     */
+    public void success(String remoteAddress, String username) {
+        if (username != null) {
+            byPrincipal.reset(normalize(username));
+        }
+    }
+
+    /**
+     * Strip the domain, as in DOMAIN\\user, and ignore the case.
+     */
+    private static String normalize(String username) {
+        return username.substring(username.lastIndexOf('\\') + 1).toLowerCase(Locale.ENGLISH);
+    }
+
+    // JMX
+
+    public long getAddressRejectedCount() {
+        return byAddress.getRejectedCount();
+    }
+
+    public long getPrincipalRejectedCount() {
+        return byPrincipal.getRejectedCount();
+    }
+
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    public long getEvictedCount() {
+        return byAddress.getEvictedCount() + byPrincipal.getEvictedCount();
+    }
+
+    public int getBucketCount() {
+        return byAddress.size() + byPrincipal.size();
+    }
+
+    // Configuration
+
+    /**
+     * Number of failed attempts a client address may burst.
+     */
+    public void setAddressCapacity(double addressCapacity) {
+        this.addressCapacity = addressCapacity;
+    }
+
+    /**
+     * Failed attempts per second a client address regains.
+     */
+    public void setAddressRefillPerSecond(double addressRefillPerSecond) {
+        this.addressRefillPerSecond = addressRefillPerSecond;
+    }
+
+    /**
+     * Number of failed attempts a username may burst.
+     */
+    public void setPrincipalCapacity(double principalCapacity) {
+        this.principalCapacity = principalCapacity;
+    }
+
+    /**
+     * Failed attempts per second a username regains.
+     */
+    public void setPrincipalRefillPerSecond(double principalRefillPerSecond) {
+        this.principalRefillPerSecond = principalRefillPerSecond;
+    }
+
+    /**
+     * Idle time, in seconds, after which a bucket is evicted.
+     */
+    public void setIdleSeconds(long idleSeconds) {
+        this.idleSeconds = idleSeconds;
+    }
+
+    public void setMaxBuckets(int maxBuckets) {
+        this.maxBuckets = maxBuckets;
+    }
+
+    public void setStripes(int stripes) {
+        this.stripes = stripes;
+    }
+
+    public void setJmxName(String jmxName) {
+        this.jmxName = jmxName;
+    }
+}
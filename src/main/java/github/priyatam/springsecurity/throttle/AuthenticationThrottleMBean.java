@@ -0,0 +1,17 @@
+package github.priyatam.springsecurity.throttle;
+
+/**
+ * JMX view of an AuthenticationThrottle.
+ */
+public interface AuthenticationThrottleMBean {
+
+    long getAddressRejectedCount();
+
+    long getPrincipalRejectedCount();
+
+    long getFailureCount();
+
+    long getEvictedCount();
+
+    int getBucketCount();
+}
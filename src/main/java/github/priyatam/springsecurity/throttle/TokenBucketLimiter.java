@@ -0,0 +1,168 @@
+package github.priyatam.springsecurity.throttle;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token buckets keyed by string, e.g. a client address or a username, in lock stripes. A bucket holds up
+ * to <code>capacity</code> tokens and refills at <code>refillPerSecond</code>; a key is admitted while its
+ * bucket has a token. Buckets idle long enough to be full again are evicted, and each stripe is bounded,
+ * evicting its least recently used bucket. Only the first sight of a key allocates.
+ */
+public class TokenBucketLimiter {
+
+    private final double capacity;
+    private final double refillPerNano;
+    private final long idleNanos;
+    private final Stripe[] stripes;
+
+    private final AtomicLong admittedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+
+    /**
+     * @param capacity        maximum number of tokens (burst) of a bucket
+     * @param refillPerSecond tokens added per second
+     * @param idleSeconds     idle time after which a bucket is evicted; at least the time to refill it
+     * @param maxBuckets      maximum number of buckets, across all stripes
+     * @param stripeCount     number of lock stripes
+     */
+    public TokenBucketLimiter(double capacity, double refillPerSecond, long idleSeconds, int maxBuckets, int stripeCount) {
+        if (capacity < 1 || refillPerSecond <= 0) {
+            throw new IllegalArgumentException("capacity must be at least 1 and refillPerSecond positive");
+        }
+        this.capacity = capacity;
+        this.refillPerNano = refillPerSecond / 1e9;
+        this.idleNanos = Math.max(idleSeconds * 1000000000L, (long) (capacity / refillPerNano));
+        this.stripes = new Stripe[Math.max(1, stripeCount)];
+        int perStripe = Math.max(1, maxBuckets / stripes.length);
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe(perStripe);
+        }
+    }
+
+    /**
+     * Tell whether the key has a token left, without taking it.
+     */
+    public boolean isAdmitted(String key) {
+        Stripe stripe = stripeFor(key);
+        boolean admitted;
+        synchronized (stripe) {
+            Bucket bucket = stripe.get(key);
+            admitted = bucket == null || bucket.refill(System.nanoTime(), capacity, refillPerNano) >= 1;
+        }
+        (admitted ? admittedCount : rejectedCount).incrementAndGet();
+        return admitted;
+    }
+
+    /**
+     * Take a token from the bucket of the key, if any is left.
+     *
+     * @return false if the bucket was empty
+     */
+    public boolean consume(String key) {
+        Stripe stripe = stripeFor(key);
+        long now = System.nanoTime();
+        synchronized (stripe) {
+            Bucket bucket = stripe.get(key);
+            if (bucket == null) {
+                stripe.evictIdle(now);
+                bucket = new Bucket(capacity, now);
+                stripe.put(key, bucket);
+            }
+            if (bucket.refill(now, capacity, refillPerNano) < 1) {
+                return false;
+            }
+            bucket.tokens -= 1;
+            return true;
+        }
+    }
+
+    /**
+     * Forget the bucket of the key, e.g. after a successful login.
+     */
+    public void reset(String key) {
+        Stripe stripe = stripeFor(key);
+        synchronized (stripe) {
+            stripe.remove(key);
+        }
+    }
+
+    public long getAdmittedCount() {
+        return admittedCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public long getEvictedCount() {
+        return evictedCount.get();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    private Stripe stripeFor(String key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return stripes[(hash & 0x7fffffff) % stripes.length];
+    }
+
+    private static class Bucket {
+        double tokens;
+        long lastRefill;
+
+        Bucket(double tokens, long now) {
+            this.tokens = tokens;
+            this.lastRefill = now;
+        }
+
+        double refill(long now, double capacity, double refillPerNano) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerNano);
+            lastRefill = now;
+            return tokens;
+        }
+    }
+
+    /**
+     * Access ordered, so the least recently used buckets come first.
+     */
+    private class Stripe extends LinkedHashMap<String, Bucket> {
+        private static final long serialVersionUID = 1L;
+        private final int maxSize;
+
+        Stripe(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Bucket> eldest) {
+            if (size() > maxSize) {
+                evictedCount.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        void evictIdle(long now) {
+            for (Iterator<Bucket> buckets = values().iterator(); buckets.hasNext(); ) {
+                if (now - buckets.next().lastRefill < idleNanos) {
+                    break;
+                }
+                buckets.remove();
+                evictedCount.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package github.priyatam.springsecurity.throttle;
+
+import org.springframework.security.core.AuthenticationException;
+
+/**
+ * Thrown when a client address or a username has failed to authenticate too often.
+ */
+public class TooManyAttemptsException extends AuthenticationException {
+    private static final long serialVersionUID = 1L;
+
+    public TooManyAttemptsException(String msg) {
+        super(msg);
+    }
+}
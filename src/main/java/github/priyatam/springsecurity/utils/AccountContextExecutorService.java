@@ -0,0 +1,47 @@
+package github.priyatam.springsecurity.utils;
+
+import github.priyatam.springsecurity.domain.AccountContext;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ExecutorService decorator running every task with the AccountContext of the thread that submitted it.
+ * The worker thread gets its previous context back once the task is done, so nothing leaks into pooled
+ * threads. Pass it as the Executor of asynchronous APIs (e.g. CompletableFuture's *Async methods)
+ * to propagate the context there as well.
+ */
+public class AccountContextExecutorService extends AbstractExecutorService {
+
+    private final ExecutorService delegate;
+
+    public AccountContextExecutorService(ExecutorService delegate) {
+        this.delegate = delegate;
+    }
+
+    public void execute(Runnable command) {
+        delegate.execute(AccountContext.wrap(command));
+    }
+
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    public List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+}
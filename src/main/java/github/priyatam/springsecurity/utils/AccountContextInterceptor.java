@@ -21,10 +21,30 @@ public class AccountContextInterceptor implements HandlerInterceptor {
     @Autowired
     private github.priyatam.springsecurity.utils.AccountContextSupport accountContextSupport;
 
+    private boolean lazy = false;
+
+    /**
+     * When true, the account context loads the session id, roles and account on first access
+     * instead of up front.
+     */
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
             throws ServletException {
         // Setup AccountContext and Log Context
-        accountContextSupport.processAccountContext(request);
+        // afterCompletion is not called when preHandle fails, so clean up here
+        try {
+            if (lazy) {
+                accountContextSupport.processLazyAccountContext(request);
+            } else {
+                accountContextSupport.processAccountContext(request);
+            }
+        } catch (RuntimeException e) {
+            accountContextSupport.resetContext();
+            throw e;
+        }
         User n = null;
         // Give access to the current account context to the view
         // Note: using the modelAndView in the postHandle would not work
@@ -41,6 +61,7 @@ public class AccountContextInterceptor implements HandlerInterceptor {
 
     public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex)
             throws Exception {
+        // always unbind, the request thread goes back to the container's pool
         accountContextSupport.resetContext();
     }
 }
\ No newline at end of file
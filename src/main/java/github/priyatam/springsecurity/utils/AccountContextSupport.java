@@ -1,15 +1,27 @@
 package github.priyatam.springsecurity.utils;
 
+import github.priyatam.springsecurity.cache.AccountCache;
+import github.priyatam.springsecurity.cache.UnknownUserCache;
 import github.priyatam.springsecurity.domain.AccountContext;
+import github.priyatam.springsecurity.domain.AuthorizationSnapshot;
 import github.priyatam.springsecurity.domain.User;
 import github.priyatam.springsecurity.spring.SpringSecurityContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 
 import javax.persistence.EntityManager;
+import javax.persistence.FlushModeType;
+import javax.persistence.NoResultException;
 import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 @Service
 public class AccountContextSupport {
@@ -17,7 +29,16 @@ public class AccountContextSupport {
 
     @PersistenceContext
     private EntityManager entityManager;
-    
+
+    @Autowired
+    private AccountCache accountCache;
+
+    @Autowired
+    private UnknownUserCache unknownUserCache;
+
+    @Autowired(required = false)
+    private BlockingCallExecutor blockingCallExecutor;
+
     /**
      * Set up the AccountContext on the current thread.
      * Should be invoked once, e.g from your web filter or interceptor.
@@ -28,13 +49,13 @@ public class AccountContextSupport {
         // set up the account context
         AccountContext accountContext = new AccountContext();
         AccountContext.setAccountContext(accountContext);
-        accountContext.setSessionId(req.getSession().getId());
+        // do not create a session, e.g. for stateless requests; the session id is null then
+        HttpSession session = req.getSession(false);
+        accountContext.setSessionId(session != null ? session.getId() : null);
         accountContext.setRoles(SpringSecurityContext.getRoles());
 
         if (SpringSecurityContext.getUserDetails() != null) {
-            // load the account from the database.
-            // we assume here that the second level cache is used,
-            // otherwise we would hit the database at each request.
+            // load the account from the account cache, or from the database on a miss.
             User account = obtainAccount(SpringSecurityContext.getUsername());
 
             if (account != null) {
@@ -47,6 +68,18 @@ public class AccountContextSupport {
         }
     }
 
+    /**
+     * Set up a lazy AccountContext on the current thread. Only the session id, if the request has a
+     * session, and the current Authentication are captured; the roles and account are loaded on first access.
+     * Do not forget to call the resetContext method when you are done
+     * with the request.
+     */
+    public void processLazyAccountContext(HttpServletRequest req) {
+        HttpSession session = req.getSession(false);
+        AccountContext.setAccountContext(new LazyAccountContext(session != null ? session.getId() : null,
+                SecurityContextHolder.getContext().getAuthentication(), this));
+    }
+
     /**
      * Reset the account context and the log context from the current thread.
      */
@@ -54,9 +87,130 @@ public class AccountContextSupport {
         AccountContext.resetAccountContext();
     }
     
-    public User obtainAccount(String username) {
-        return entityManager.createNamedQuery("User.FIND_BY_USERNAME", User.class)
+    /**
+     * Return a read-only snapshot of the account matching the passed username, served
+     * from the account cache when possible.
+     *
+     * @throws NoResultException if there is no such account; the answer is cached for a short while
+     */
+    public User obtainAccount(final String username) {
+        User account = accountCache.get(username);
+        if (account != null) {
+            return account;
+        }
+
+        if (unknownUserCache.isUnknown(username)) {
+            throw new NoResultException("No account " + username + " (cached)");
+        }
+
+        // concurrent misses for the same user share one query
+        return accountCache.load(username, new Callable<User>() {
+            public User call() {
+                try {
+                    return findAccount(username);
+                } catch (NoResultException e) {
+                    unknownUserCache.markUnknown(username);
+                    throw e;
+                }
+            }
+        });
+    }
+
+    /**
+     * Return the username and role names of the passed account, from the account cache when possible. On a
+     * miss, concurrent callers share one scalar projection: no User entity is hydrated, dirty checked or kept
+     * in the persistence context. The snapshot it builds is cached like the one of <code>obtainAccount</code>.
+     *
+     * @throws NoResultException if there is no such account; the answer is cached for a short while
+     */
+    public AuthorizationSnapshot obtainAuthorization(final String username) {
+        User account = accountCache.get(username);
+        if (account != null) {
+            return AuthorizationSnapshot.of(account);
+        }
+
+        if (unknownUserCache.isUnknown(username)) {
+            throw new NoResultException("No account " + username + " (cached)");
+        }
+
+        return AuthorizationSnapshot.of(accountCache.load(username, new Callable<User>() {
+            public User call() {
+                User snapshot = query(new Callable<User>() {
+                    public User call() {
+                        return querySnapshot(username);
+                    }
+                });
+                if (snapshot == null) {
+                    unknownUserCache.markUnknown(username);
+                    throw new NoResultException("No account " + username);
+                }
+                return snapshot;
+            }
+        }));
+    }
+
+    private User findAccount(final String username) {
+        return query(new Callable<User>() {
+            public User call() {
+                return queryAccount(username);
+            }
+        });
+    }
+
+    /**
+     * Run a query on the calling thread, through the blocking call executor when one is configured.
+     */
+    private <T> T query(Callable<T> query) {
+        try {
+            if (blockingCallExecutor == null) {
+                return query.call();
+            }
+            return blockingCallExecutor.call(BlockingCallExecutor.Kind.DATABASE, query);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Load the account by its username. The query is cacheable, so with the query cache enabled a warm
+     * lookup is served from the query cache and the second-level cache of User. Runs on Spring's shared
+     * EntityManager, no transaction is required.
+     */
+    private User queryAccount(String username) {
+        TypedQuery<User> query = entityManager.createNamedQuery("User.FIND_BY_USERNAME", User.class);
+        List<User> accounts = withTimeout(query)
+                .setParameter("username", username)
+                .setFlushMode(FlushModeType.COMMIT)
+                .setHint("org.hibernate.cacheable", Boolean.TRUE)
+                .setHint("org.hibernate.cacheRegion", User.BY_USERNAME_CACHE_REGION)
+                .getResultList();
+        if (accounts.isEmpty()) {
+            throw new NoResultException("No account " + username);
+        }
+        return accounts.get(0);
+    }
+
+    /**
+     * Select the columns of the account and its roles, and build a read-only snapshot from them. Scalar
+     * rows are not managed, and the query does not flush the persistence context first.
+     *
+     * @return null if there is no such account
+     */
+    private User querySnapshot(String username) {
+        TypedQuery<Object[]> query = entityManager.createNamedQuery("User.SNAPSHOT_BY_USERNAME", Object[].class);
+        return User.fromSnapshotRows(withTimeout(query)
                 .setParameter("username", username)
-                .getSingleResult();
+                .setFlushMode(FlushModeType.COMMIT)
+                .setHint("org.hibernate.readOnly", Boolean.TRUE)
+                .getResultList());
+    }
+
+    /**
+     * Apply the database timeout of the blocking call executor, when one is configured, to the query.
+     */
+    private <Q extends Query> Q withTimeout(Q query) {
+        return blockingCallExecutor != null ? blockingCallExecutor.applyDatabaseTimeout(query) : query;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,359 @@
+package github.priyatam.springsecurity.utils;
+
+import github.priyatam.springsecurity.metrics.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.persistence.Query;
+import javax.persistence.QueryTimeoutException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs blocking directory (Active Directory, LDAP) and database calls with a per-call timeout, a cap on
+ * concurrent directory calls, and metrics, so that a slow domain controller fails the calls waiting
+ * on it instead of tying up every container thread.
+ * <p/>
+ * Modes:
+ * <ul>
+ * <li><code>direct</code> (default): calls run on the calling thread; only the cap and metrics apply</li>
+ * <li><code>virtual</code>: calls run on virtual threads when the JVM provides them, else on the pool</li>
+ * <li><code>pool</code>: calls run on a bounded offload thread pool</li>
+ * </ul>
+ * The AccountContext of the caller is propagated to the offloaded call.
+ * <p/>
+ * Database calls always run on the calling thread, whatever the mode: an offload thread has neither the
+ * caller's transaction nor its EntityManager. Their timeout is applied to the query itself, see
+ * {@link #applyDatabaseTimeout(Query)}, and counted when the query times out.
+ */
+public class BlockingCallExecutor implements BlockingCallExecutorMBean, InitializingBean, DisposableBean {
+    static Logger logger = LoggerFactory.getLogger(BlockingCallExecutor.class);
+
+    public enum Kind {
+        DIRECTORY, DATABASE
+    }
+
+    private static final String QUERY_TIMEOUT_HINT = "javax.persistence.query.timeout";
+
+    private String mode = "direct";
+    private int poolThreads = 32;
+    private int poolQueueSize = 256;
+    private long directoryTimeout = 10000;
+    private long databaseTimeout = 5000;
+    private int maxConcurrentDirectoryCalls = 16;
+    private long directoryPermitWait = 100;
+    private String jmxName = "github.priyatam.springsecurity:type=BlockingCallExecutor";
+
+    private ExecutorService executor;
+    private Semaphore directoryPermits;
+    private ObjectName objectName;
+
+    private final CallMetrics directory = new CallMetrics();
+    private final CallMetrics database = new CallMetrics();
+
+    public void afterPropertiesSet() throws Exception {
+        directoryPermits = new Semaphore(maxConcurrentDirectoryCalls);
+
+        if ("virtual".equals(mode)) {
+            executor = newVirtualThreadExecutor();
+            if (executor == null) {
+                logger.info("Virtual threads are not available, offloading blocking calls to a thread pool");
+                mode = "pool";
+            }
+        }
+        if ("pool".equals(mode)) {
+            executor = new AccountContextExecutorService(new ThreadPoolExecutor(poolThreads, poolThreads,
+                    60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(poolQueueSize), new OffloadThreadFactory()));
+        } else if (executor == null && !"direct".equals(mode)) {
+            throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+
+        objectName = new ObjectName(jmxName);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (!server.isRegistered(objectName)) {
+            server.registerMBean(this, objectName);
+        }
+        logger.info("Blocking calls run in " + mode + " mode, at most " + maxConcurrentDirectoryCalls
+                + " concurrent directory calls");
+    }
+
+    public void destroy() throws Exception {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (objectName != null && server.isRegistered(objectName)) {
+            server.unregisterMBean(objectName);
+        }
+    }
+
+    /**
+     * Run the passed blocking call.
+     *
+     * @throws BlockingCallTimeoutException when the call times out or too many directory calls are running
+     */
+    public <T> T call(Kind kind, Callable<T> call) throws Exception {
+        boolean isDirectory = kind == Kind.DIRECTORY;
+        CallMetrics metrics = isDirectory ? directory : database;
+
+        if (isDirectory && !directoryPermits.tryAcquire(directoryPermitWait, TimeUnit.MILLISECONDS)) {
+            metrics.rejected.incrementAndGet();
+            throw new BlockingCallTimeoutException("Too many concurrent directory calls");
+        }
+
+        // an offloaded call releases its permit itself, when it is done
+        boolean offloaded = isDirectory && executor != null;
+        long start = System.nanoTime();
+        metrics.inFlight.incrementAndGet();
+        try {
+            return offloaded ? offload(call, directoryTimeout, metrics) : call.call();
+        } catch (BlockingCallTimeoutException e) {
+            throw e;
+        } catch (QueryTimeoutException e) {
+            metrics.timeouts.incrementAndGet();
+            throw e;
+        } catch (Exception e) {
+            metrics.failures.incrementAndGet();
+            throw e;
+        } finally {
+            metrics.inFlight.decrementAndGet();
+            metrics.latency.record(System.nanoTime() - start);
+            if (isDirectory && !offloaded) {
+                directoryPermits.release();
+            }
+        }
+    }
+
+    /**
+     * Set the database timeout on the passed query, to be run by a {@link Kind#DATABASE} call.
+     * Hibernate only accepts an Integer or a String as the value of the hint.
+     */
+    public <Q extends Query> Q applyDatabaseTimeout(Q query) {
+        query.setHint(QUERY_TIMEOUT_HINT, (int) databaseTimeout);
+        return query;
+    }
+
+    /**
+     * Run a directory call on the executor. A call that times out keeps running, a native call cannot be
+     * interrupted, so it holds its directory permit until it returns: the cap keeps bounding the calls
+     * in flight on a slow domain controller.
+     */
+    private <T> T offload(Callable<T> call, long timeout, CallMetrics metrics) throws Exception {
+        PermitReleasingCall<T> permitReleasingCall = new PermitReleasingCall<T>(call, directoryPermits);
+        Future<T> future;
+        try {
+            future = executor.submit(permitReleasingCall);
+        } catch (RejectedExecutionException e) {
+            permitReleasingCall.abandon();
+            metrics.rejected.incrementAndGet();
+            throw new BlockingCallTimeoutException("Offload executor is saturated");
+        }
+
+        try {
+            return future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            permitReleasingCall.abandon();
+            future.cancel(true);
+            metrics.timeouts.incrementAndGet();
+            throw new BlockingCallTimeoutException("Blocking call timed out after " + timeout + "ms");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        } catch (InterruptedException e) {
+            permitReleasingCall.abandon();
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            ExecutorService virtual = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            return new AccountContextExecutorService(virtual);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    // JMX
+
+    public String getMode() {
+        return mode;
+    }
+
+    public int getDirectoryInFlight() {
+        return directory.inFlight.get();
+    }
+
+    public long getDirectoryCallCount() {
+        return directory.latency.getCount();
+    }
+
+    public long getDirectoryTimeoutCount() {
+        return directory.timeouts.get();
+    }
+
+    public long getDirectoryRejectedCount() {
+        return directory.rejected.get();
+    }
+
+    public long getDirectoryFailureCount() {
+        return directory.failures.get();
+    }
+
+    public double getDirectoryP99Micros() {
+        return directory.latency.getPercentile(0.99) / 1000.0;
+    }
+
+    public int getDatabaseInFlight() {
+        return database.inFlight.get();
+    }
+
+    public long getDatabaseCallCount() {
+        return database.latency.getCount();
+    }
+
+    public long getDatabaseTimeoutCount() {
+        return database.timeouts.get();
+    }
+
+    public long getDatabaseFailureCount() {
+        return database.failures.get();
+    }
+
+    public double getDatabaseP99Micros() {
+        return database.latency.getPercentile(0.99) / 1000.0;
+    }
+
+    // Configuration
+
+    /**
+     * One of <code>direct</code>, <code>virtual</code> or <code>pool</code>.
+     */
+    public void setMode(String mode) {
+        this.mode = mode;
+    }
+
+    public void setPoolThreads(int poolThreads) {
+        this.poolThreads = poolThreads;
+    }
+
+    public void setPoolQueueSize(int poolQueueSize) {
+        this.poolQueueSize = poolQueueSize;
+    }
+
+    /**
+     * Timeout, in milliseconds, of an offloaded directory call.
+     */
+    public void setDirectoryTimeout(long directoryTimeout) {
+        this.directoryTimeout = directoryTimeout;
+    }
+
+    /**
+     * Timeout, in milliseconds, of a database query, see applyDatabaseTimeout.
+     */
+    public void setDatabaseTimeout(long databaseTimeout) {
+        this.databaseTimeout = databaseTimeout;
+    }
+
+    public void setMaxConcurrentDirectoryCalls(int maxConcurrentDirectoryCalls) {
+        this.maxConcurrentDirectoryCalls = maxConcurrentDirectoryCalls;
+    }
+
+    /**
+     * Time, in milliseconds, a directory call waits for a free slot before being rejected.
+     */
+    public void setDirectoryPermitWait(long directoryPermitWait) {
+        this.directoryPermitWait = directoryPermitWait;
+    }
+
+    public void setJmxName(String jmxName) {
+        this.jmxName = jmxName;
+    }
+
+    /**
+     * Thrown when a blocking call times out or is rejected because too many are running.
+     */
+    public static class BlockingCallTimeoutException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public BlockingCallTimeoutException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Releases the directory permit of a call when the call returns, or when the caller abandons it before it
+     * started: whichever of the two comes first claims the call.
+     */
+    private static class PermitReleasingCall<T> implements Callable<T> {
+        private final Callable<T> call;
+        private final Semaphore permits;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        PermitReleasingCall(Callable<T> call, Semaphore permits) {
+            this.call = call;
+            this.permits = permits;
+        }
+
+        public T call() throws Exception {
+            if (!claimed.compareAndSet(false, true)) {
+                throw new BlockingCallTimeoutException("Blocking call abandoned before it started");
+            }
+            try {
+                return call.call();
+            } finally {
+                permits.release();
+            }
+        }
+
+        /**
+         * Release the permit if the call has not started, otherwise the running call releases it.
+         */
+        void abandon() {
+            if (claimed.compareAndSet(false, true)) {
+                permits.release();
+            }
+        }
+    }
+
+    private static class CallMetrics {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicLong timeouts = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        final LatencyHistogram latency = new LatencyHistogram();
+    }
+
+    private static class OffloadThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "blocking-call-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package github.priyatam.springsecurity.utils;
+
+/**
+ * JMX view of a BlockingCallExecutor. Durations are in microseconds.
+ */
+public interface BlockingCallExecutorMBean {
+
+    String getMode();
+
+    int getDirectoryInFlight();
+
+    long getDirectoryCallCount();
+
+    long getDirectoryTimeoutCount();
+
+    long getDirectoryRejectedCount();
+
+    long getDirectoryFailureCount();
+
+    double getDirectoryP99Micros();
+
+    int getDatabaseInFlight();
+
+    long getDatabaseCallCount();
+
+    long getDatabaseTimeoutCount();
+
+    long getDatabaseFailureCount();
+
+    double getDatabaseP99Micros();
+}
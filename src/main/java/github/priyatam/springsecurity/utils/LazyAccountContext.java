@@ -0,0 +1,103 @@
+package github.priyatam.springsecurity.utils;
+
+import github.priyatam.springsecurity.domain.AccountContext;
+import github.priyatam.springsecurity.domain.RoleSet;
+import github.priyatam.springsecurity.domain.User;
+import github.priyatam.springsecurity.spring.SpringSecurityContext;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.List;
+
+/**
+ * AccountContext holding only the session id and the Authentication up front. The roles and account
+ * are loaded on first access and memoized for the rest of the request, so requests that never look at
+ * the account cost nothing extra. The request itself is not kept, the context may outlive it.
+ * <p/>
+ * Unlike the eager context, no http session is created: the session id is <code>null</code> when the
+ * request has none.
+ */
+public class LazyAccountContext extends AccountContext {
+
+    private final Authentication authentication;
+    private final AccountContextSupport accountContextSupport;
+
+    private boolean rolesLoaded;
+    private boolean accountLoaded;
+
+    /**
+     * @param sessionId id of the http session of the request, <code>null</code> when there is none
+     */
+    public LazyAccountContext(String sessionId, Authentication authentication,
+                              AccountContextSupport accountContextSupport) {
+        this.authentication = authentication;
+        this.accountContextSupport = accountContextSupport;
+        setSessionId(sessionId);
+    }
+
+    @Override
+    public synchronized List<String> getRoleNames() {
+        loadRoles();
+        return super.getRoleNames();
+    }
+
+    @Override
+    public synchronized RoleSet getRoleSet() {
+        loadRoles();
+        return super.getRoleSet();
+    }
+
+    @Override
+    public synchronized void setRoles(List<String> roles) {
+        rolesLoaded = true;
+        super.setRoles(roles);
+    }
+
+    @Override
+    public synchronized String getUsername() {
+        loadAccount();
+        return super.getUsername();
+    }
+
+    @Override
+    public synchronized void setUsername(String username) {
+        accountLoaded = true;
+        super.setUsername(username);
+    }
+
+    @Override
+    public synchronized User getAccount() {
+        loadAccount();
+        return super.getAccount();
+    }
+
+    @Override
+    public synchronized void setAccount(User account) {
+        accountLoaded = true;
+        super.setAccount(account);
+    }
+
+    private void loadRoles() {
+        if (!rolesLoaded) {
+            setRoles(authentication != null
+                    ? SpringSecurityContext.toStringList(authentication.getAuthorities())
+                    : null);
+        }
+    }
+
+    private void loadAccount() {
+        if (accountLoaded) {
+            return;
+        }
+        accountLoaded = true;
+
+        if (authentication != null && authentication.getPrincipal() instanceof UserDetails) {
+            User account = accountContextSupport.obtainAccount(((UserDetails) authentication.getPrincipal()).getUsername());
+
+            if (account != null) {
+                super.setAccount(account);
+                super.setUsername(account.getUsername());
+            }
+        }
+    }
+}
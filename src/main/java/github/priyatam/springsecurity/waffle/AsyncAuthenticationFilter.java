@@ -0,0 +1,347 @@
+package github.priyatam.springsecurity.waffle;
+
+import github.priyatam.springsecurity.audit.AuditEventType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Servlet 3 variant of CustomAuthenticationFilter: the Windows handshake and the role load run on a bounded
+ * pool instead of the container thread, so a small container pool serves many concurrent logins.
+ * <p/>
+ * Once the header is parsed, the request goes asynchronous. A handshake to continue or a 401 completes the
+ * response from the pool; a successful login is dispatched back to the container, which publishes the
+ * authentication and resumes the chain. Handshakes exceeding <code>asyncTimeout</code>, or finding the pool
+ * full, get a 503. Requests without async support are authenticated on the calling thread.
+ * <p/>
+ * The filter mapping of springSecurityFilterChain must support async requests and the ASYNC dispatcher:
+ * <pre>
+ * &lt;filter&gt; ... &lt;async-supported&gt;true&lt;/async-supported&gt; &lt;/filter&gt;
+ * &lt;filter-mapping&gt; ... &lt;dispatcher&gt;REQUEST&lt;/dispatcher&gt; &lt;dispatcher&gt;ASYNC&lt;/dispatcher&gt; &lt;/filter-mapping&gt;
+ * </pre>
+ */
+public class AsyncAuthenticationFilter extends CustomAuthenticationFilter {
+
+    Logger logger = LoggerFactory.getLogger(AsyncAuthenticationFilter.class);
+
+    private static final String OUTCOME_ATTRIBUTE = AsyncAuthenticationFilter.class.getName() + ".OUTCOME";
+
+    private int handshakeThreads = 32;
+    private int handshakeQueueSize = 256;
+    private long asyncTimeout = 30000;
+
+    private ExecutorService executor;
+
+    @Override
+    public void afterPropertiesSet() throws ServletException {
+        super.afterPropertiesSet();
+        executor = new ThreadPoolExecutor(handshakeThreads, handshakeThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(handshakeQueueSize), new HandshakeThreadFactory());
+        logger.info("Asynchronous handshakes on " + handshakeThreads + " threads, timeout " + asyncTimeout + "ms");
+    }
+
+    @Override
+    public void destroy() {
+        super.destroy();
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain)
+            throws IOException, ServletException {
+
+        Outcome outcome = (Outcome) req.getAttribute(OUTCOME_ATTRIBUTE);
+        if (outcome == null) {
+            super.doFilter(req, res, chain);
+            return;
+        }
+
+        // dispatched back after an asynchronous login
+        req.removeAttribute(OUTCOME_ATTRIBUTE);
+        if (outcome.failure instanceof RuntimeException) {
+            throw (RuntimeException) outcome.failure;
+        } else if (outcome.failure instanceof Error) {
+            throw (Error) outcome.failure;
+        }
+        publish((HttpServletResponse) res, outcome.authentication);
+        chain.doFilter(req, res);
+    }
+
+    @Override
+    protected void handshake(HttpServletRequest request, HttpServletResponse response, FilterChain chain,
+                             String attemptedUsername) throws IOException, ServletException {
+        if (!request.isAsyncSupported()) {
+            super.handshake(request, response, chain, attemptedUsername);
+            return;
+        }
+
+        // the original response: the wrappers of the filters above may not be used from another thread
+        AsyncContext asyncContext = request.startAsync();
+        asyncContext.setTimeout(asyncTimeout);
+        AsyncLogin login = new AsyncLogin(asyncContext, request, attemptedUsername);
+        asyncContext.addListener(login);
+        try {
+            login.future = executor.submit(login);
+        } catch (RejectedExecutionException e) {
+            if (login.finish()) {
+                logger.warn("handshake pool full, rejecting " + request.getRemoteAddr());
+                sendServiceUnavailable((HttpServletResponse) asyncContext.getResponse());
+                asyncContext.complete();
+            }
+        }
+    }
+
+    /**
+     * Send a 503 Service Unavailable without protocol authentication headers, asking the client to retry shortly.
+     */
+    private void sendServiceUnavailable(HttpServletResponse response) {
+        try {
+            response.setHeader("Retry-After", "1");
+            response.setHeader("Connection", "close");
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } catch (IllegalStateException e) {
+            logger.debug("response already committed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Number of threads running the handshakes and role loads, 32 by default.
+     */
+    public void setHandshakeThreads(int handshakeThreads) {
+        this.handshakeThreads = handshakeThreads;
+    }
+
+    /**
+     * Number of handshakes waiting for a thread before new ones get a 503, 256 by default.
+     */
+    public void setHandshakeQueueSize(int handshakeQueueSize) {
+        this.handshakeQueueSize = handshakeQueueSize;
+    }
+
+    /**
+     * Time, in milliseconds, a handshake may take, queueing included, before the client gets a 503.
+     */
+    public void setAsyncTimeout(long asyncTimeout) {
+        this.asyncTimeout = asyncTimeout;
+    }
+
+    private static class Outcome {
+        private CustomAuthenticationToken authentication;
+        private Throwable failure;
+    }
+
+    /**
+     * One asynchronous login. Whichever of the handshake, the timeout or a container error finishes first
+     * owns the response; the others leave it alone.
+     */
+    private class AsyncLogin implements Runnable, AsyncListener {
+        private final AsyncContext asyncContext;
+        private final HttpServletRequest request;
+        private final String remoteAddr;
+        private final String attemptedUsername;
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private volatile Future<?> future;
+
+        AsyncLogin(AsyncContext asyncContext, HttpServletRequest request, String attemptedUsername) {
+            this.asyncContext = asyncContext;
+            this.request = request;
+            this.remoteAddr = request.getRemoteAddr();
+            this.attemptedUsername = attemptedUsername;
+        }
+
+        boolean finish() {
+            return finished.compareAndSet(false, true);
+        }
+
+        public void run() {
+            // written to the response only if the handshake finishes first
+            DeferredResponse response = new DeferredResponse((HttpServletResponse) asyncContext.getResponse());
+            Outcome outcome = new Outcome();
+            try {
+                outcome.authentication = authenticate(request, response, attemptedUsername);
+            } catch (RuntimeException e) {
+                outcome.failure = e;
+            } catch (Error e) {
+                outcome.failure = e;
+            }
+
+            if (!finish()) {
+                logger.debug("discarding the handshake outcome of " + remoteAddr + ", timed out");
+                return;
+            }
+            try {
+                if (outcome.authentication == null && outcome.failure == null) {
+                    response.replay();
+                    asyncContext.complete();
+                } else {
+                    request.setAttribute(OUTCOME_ATTRIBUTE, outcome);
+                    asyncContext.dispatch();
+                }
+            } catch (IOException e) {
+                logger.warn("error completing the handshake of " + remoteAddr + ": " + e.getMessage());
+                asyncContext.complete();
+            }
+        }
+
+        public void onTimeout(AsyncEvent event) {
+            if (finish()) {
+                cancel();
+                logger.warn("handshake of " + remoteAddr + " timed out after " + asyncTimeout + "ms");
+                audit(AuditEventType.NEGOTIATE_FAILURE, attemptedUsername, remoteAddr, "handshake timed out");
+                sendServiceUnavailable((HttpServletResponse) asyncContext.getResponse());
+                asyncContext.complete();
+            }
+        }
+
+        public void onError(AsyncEvent event) {
+            if (finish()) {
+                cancel();
+                logger.warn("handshake of " + remoteAddr + " failed: " + event.getThrowable());
+            }
+        }
+
+        public void onComplete(AsyncEvent event) {
+        }
+
+        public void onStartAsync(AsyncEvent event) {
+        }
+
+        private void cancel() {
+            Future<?> running = future;
+            if (running != null) {
+                running.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Records the headers, cookies and status set during a handshake, to apply them to the response afterwards.
+     */
+    private static class DeferredResponse extends HttpServletResponseWrapper {
+        private final List<Object[]> headers = new ArrayList<Object[]>();
+        private final List<Cookie> cookies = new ArrayList<Cookie>();
+        private int status = 0;
+        private int error = 0;
+        private String errorMessage;
+
+        DeferredResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            headers.add(new Object[]{Boolean.FALSE, name, value});
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            headers.add(new Object[]{Boolean.TRUE, name, value});
+        }
+
+        @Override
+        public void setIntHeader(String name, int value) {
+            setHeader(name, String.valueOf(value));
+        }
+
+        @Override
+        public void addIntHeader(String name, int value) {
+            addHeader(name, String.valueOf(value));
+        }
+
+        @Override
+        public boolean containsHeader(String name) {
+            for (Object[] header : headers) {
+                if (name.equalsIgnoreCase((String) header[1])) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void addCookie(Cookie cookie) {
+            cookies.add(cookie);
+        }
+
+        @Override
+        public void setStatus(int status) {
+            this.status = status;
+        }
+
+        @Override
+        public void sendError(int error) {
+            this.error = error;
+        }
+
+        @Override
+        public void sendError(int error, String errorMessage) {
+            this.error = error;
+            this.errorMessage = errorMessage;
+        }
+
+        @Override
+        public void flushBuffer() {
+        }
+
+        void replay() throws IOException {
+            HttpServletResponse response = (HttpServletResponse) getResponse();
+            for (Object[] header : headers) {
+                if ((Boolean) header[0]) {
+                    response.addHeader((String) header[1], (String) header[2]);
+                } else {
+                    response.setHeader((String) header[1], (String) header[2]);
+                }
+            }
+            for (Cookie cookie : cookies) {
+                response.addCookie(cookie);
+            }
+            if (error != 0) {
+                if (errorMessage != null) {
+                    response.sendError(error, errorMessage);
+                } else {
+                    response.sendError(error);
+                }
+            } else if (status != 0) {
+                response.setStatus(status);
+            }
+            response.flushBuffer();
+        }
+    }
+
+    private static class HandshakeThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "negotiate-handshake-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
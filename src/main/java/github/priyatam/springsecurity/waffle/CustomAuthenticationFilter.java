@@ -1,9 +1,19 @@
 package github.priyatam.springsecurity.waffle;
 
+import github.priyatam.springsecurity.audit.AuditEventType;
+import github.priyatam.springsecurity.audit.AuditTrail;
+import github.priyatam.springsecurity.metrics.NegotiateFilterMetrics;
+import github.priyatam.springsecurity.metrics.NegotiateFilterMetrics.Stage;
+import github.priyatam.springsecurity.stateless.SignedAuthorizationCookie;
+import github.priyatam.springsecurity.stateless.SignedCookieAuthentication;
+import github.priyatam.springsecurity.throttle.AuthenticationThrottle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.codec.Base64;
 import org.springframework.security.core.context.SecurityContextHolder;
-import waffle.servlet.WindowsPrincipal;
 import waffle.spring.NegotiateSecurityFilter;
 import waffle.util.AuthorizationHeader;
 import waffle.windows.auth.IWindowsIdentity;
@@ -15,6 +25,7 @@ import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 
 /**
  * Custom Authentication Filter extending Waffle's built-in Filter.
@@ -24,6 +35,71 @@ public class CustomAuthenticationFilter extends NegotiateSecurityFilter {
 
     Logger logger = LoggerFactory.getLogger(CustomAuthenticationFilter.class);
 
+    // not defined by the servlet api
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
+    private long authenticationMaxAge = 0;
+
+    private CustomAuthenticationTokenFactory tokenFactory;
+
+    private NegotiateFilterMetrics metrics;
+
+    private SignedAuthorizationCookie authorizationCookie;
+
+    private AuditTrail auditTrail;
+
+    private AuthenticationThrottle throttle;
+
+    /**
+     * Maximum age, in seconds, of a session-bound authentication that is reused instead of running the
+     * Windows handshake again. 0 (the default) always runs the handshake.
+     */
+    public void setAuthenticationMaxAge(long authenticationMaxAge) {
+        this.authenticationMaxAge = authenticationMaxAge;
+    }
+
+    public long getAuthenticationMaxAge() {
+        return authenticationMaxAge;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws ServletException {
+        super.afterPropertiesSet();
+        if (tokenFactory == null) {
+            throw new IllegalStateException("A tokenFactory is required");
+        }
+    }
+
+    /**
+     * Builds the token of each authenticated identity, required.
+     */
+    public void setTokenFactory(CustomAuthenticationTokenFactory tokenFactory) {
+        this.tokenFactory = tokenFactory;
+    }
+
+    public void setMetrics(NegotiateFilterMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * When set, clients and usernames failing the handshake too often get a 429 before reaching the provider.
+     */
+    public void setThrottle(AuthenticationThrottle throttle) {
+        this.throttle = throttle;
+    }
+
+    public void setAuditTrail(AuditTrail auditTrail) {
+        this.auditTrail = auditTrail;
+    }
+
+    /**
+     * When set, a signed authorization cookie is issued after each successful login, for the
+     * stateless mode.
+     */
+    public void setAuthorizationCookie(SignedAuthorizationCookie authorizationCookie) {
+        this.authorizationCookie = authorizationCookie;
+    }
+
     @Override
     public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain)
             throws IOException, ServletException {
@@ -31,51 +107,216 @@ public class CustomAuthenticationFilter extends NegotiateSecurityFilter {
         HttpServletRequest request = (HttpServletRequest) req;
         HttpServletResponse response = (HttpServletResponse) res;
 
-        logger.info(request.getMethod() + " " + request.getRequestURI() + ", contentlength: " + request.getContentLength());
+        if (logger.isDebugEnabled()) {
+            logger.debug(request.getMethod() + " " + request.getRequestURI() + ", contentlength: "
+                    + request.getContentLength());
+        }
+        long time = System.nanoTime();
         AuthorizationHeader authorizationHeader = new AuthorizationHeader(request);
+        boolean authenticate = !authorizationHeader.isNull()
+                && getProvider().isSecurityPackageSupported(authorizationHeader.getSecurityPackage());
+        record(Stage.HEADER_PARSE, time);
 
         // authenticate user
-        if (!authorizationHeader.isNull()
-                && getProvider().isSecurityPackageSupported(authorizationHeader.getSecurityPackage())) {
-
-            // log the user in using the token
-            IWindowsIdentity windowsIdentity = null;
+        if (authenticate) {
 
-            try {
-                windowsIdentity = getProvider().doFilter(request, response);
-                if (windowsIdentity == null) {
-                    return;
-                }
-            } catch (Exception e) {
-                logger.warn("error logging in user: " + e.getMessage());
-                sendUnauthorized(response, true);
+            // skip the handshake and the role load if the session is already authenticated
+            if (isReusable(SecurityContextHolder.getContext().getAuthentication(), authorizationHeader)) {
+                logger.debug("reusing session authentication");
+                chain.doFilter(request, response);
                 return;
             }
 
-            if (!getAllowGuestLogin() && windowsIdentity.isGuest()) {
-                logger.warn("guest login disabled: " + windowsIdentity.getFqn());
-                sendUnauthorized(response, true);
+            String attemptedUsername = throttle != null ? getBasicUsername(authorizationHeader) : null;
+            if (throttle != null && !throttle.isAdmitted(request.getRemoteAddr(), attemptedUsername)) {
+                sendTooManyRequests(response);
                 return;
             }
 
-            try {
-                logger.debug("logged in user: " + windowsIdentity.getFqn() +
-                        " (" + windowsIdentity.getSidString() + ")");
-                WindowsPrincipal principal = new WindowsPrincipal(
-                        windowsIdentity, getPrincipalFormat(), getRoleFormat());
-                logger.debug("roles: " + principal.getRolesString());
+            handshake(request, response, chain, attemptedUsername);
+            return;
+        }
+
+        chain.doFilter(request, response);
+    }
+
+    /**
+     * Log the user in, then continue the chain once authenticated. Runs on the calling thread.
+     */
+    protected void handshake(HttpServletRequest request, HttpServletResponse response, FilterChain chain,
+                             String attemptedUsername) throws IOException, ServletException {
+        CustomAuthenticationToken authentication = authenticate(request, response, attemptedUsername);
+        if (authentication != null) {
+            publish(response, authentication);
+            chain.doFilter(request, response);
+        }
+    }
+
+    /**
+     * Run the Windows handshake and build the authentication token of the user.
+     *
+     * @return the token, or null if the response is complete: handshake to continue or 401
+     */
+    protected CustomAuthenticationToken authenticate(HttpServletRequest request, HttpServletResponse response,
+                                                     String attemptedUsername) {
+        String remoteAddr = request.getRemoteAddr();
+        long time = System.nanoTime();
+
+        // log the user in using the token
+        IWindowsIdentity windowsIdentity = null;
+
+        try {
+            windowsIdentity = getProvider().doFilter(request, response);
+            time = record(Stage.HANDSHAKE, time);
+            if (windowsIdentity == null) {
+                if (metrics != null) {
+                    metrics.handshakeContinue();
+                }
+                return null;
+            }
+        } catch (Exception e) {
+            record(Stage.HANDSHAKE, time);
+            logger.warn("error logging in user: " + e.getMessage());
+            if (metrics != null) {
+                metrics.unauthorized();
+            }
+            audit(AuditEventType.NEGOTIATE_FAILURE, null, remoteAddr, e.getMessage());
+            if (throttle != null) {
+                throttle.failure(remoteAddr, attemptedUsername);
+            }
+            sendUnauthorized(response, true);
+            return null;
+        }
 
-                // Populate Authentication Token along with GrantedAuthorities
-                CustomAuthenticationToken authentication = new CustomAuthenticationToken(principal);
+        boolean guestRejected = !getAllowGuestLogin() && windowsIdentity.isGuest();
+        record(Stage.GUEST_CHECK, time);
+        if (guestRejected) {
+            logger.warn("guest login disabled: " + windowsIdentity.getFqn());
+            if (metrics != null) {
+                metrics.guestRejected();
+            }
+            audit(AuditEventType.GUEST_REJECTED, windowsIdentity.getFqn(), remoteAddr, null);
+            if (throttle != null) {
+                throttle.failure(remoteAddr, windowsIdentity.getFqn());
+            }
+            sendUnauthorized(response, true);
+            return null;
+        }
 
-                SecurityContextHolder.getContext().setAuthentication(authentication);
-                logger.info("successfully logged in user: " + windowsIdentity.getFqn());
-            } finally {
-                windowsIdentity.dispose();
+        try {
+            logger.debug("logged in user: " + windowsIdentity.getFqn() +
+                    " (" + windowsIdentity.getSidString() + ")");
+            // Populate Authentication Token along with GrantedAuthorities
+            CustomAuthenticationToken authentication = createToken(windowsIdentity);
+            if (metrics != null) {
+                metrics.success();
+            }
+            audit(AuditEventType.NEGOTIATE_SUCCESS, windowsIdentity.getFqn(), remoteAddr, null);
+            if (throttle != null) {
+                throttle.success(remoteAddr, windowsIdentity.getFqn());
             }
+            logger.info("successfully logged in user: " + windowsIdentity.getFqn());
+            return authentication;
+        } catch (AuthenticationException e) {
+            // e.g. no account for the windows user
+            logger.warn("error loading user " + windowsIdentity.getFqn() + ": " + e.getMessage());
+            if (metrics != null) {
+                metrics.unauthorized();
+            }
+            audit(AuditEventType.NEGOTIATE_FAILURE, windowsIdentity.getFqn(), remoteAddr, e.getMessage());
+            // a back-end outage is not the client's fault
+            if (throttle != null && !(e instanceof AuthenticationServiceException)) {
+                throttle.failure(remoteAddr, windowsIdentity.getFqn());
+            }
+            sendUnauthorized(response, true);
+            return null;
+        } finally {
+            windowsIdentity.dispose();
+        }
+    }
+
+    /**
+     * Make the authentication current, and issue the authorization cookie in stateless mode.
+     */
+    protected void publish(HttpServletResponse response, CustomAuthenticationToken authentication) {
+        long time = System.nanoTime();
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+        if (authorizationCookie != null) {
+            authorizationCookie.issue(response, authentication);
         }
+        record(Stage.PUBLISH, time);
+    }
 
-        chain.doFilter(request, response);
+    private CustomAuthenticationToken createToken(IWindowsIdentity windowsIdentity) {
+        return tokenFactory.createToken(windowsIdentity, getPrincipalFormat(), getRoleFormat());
+    }
+
+    protected void audit(AuditEventType type, String username, String remoteAddr, String detail) {
+        if (auditTrail != null) {
+            auditTrail.record(type, username, remoteAddr, detail);
+        }
+    }
+
+    private long record(Stage stage, long startNanos) {
+        return metrics != null ? metrics.record(stage, startNanos) : startNanos;
+    }
+
+    /**
+     * Tell whether the passed (session-bound or cookie) authentication is recent enough and belongs to the identity
+     * carried by the Authorization header, if the header tells it (Basic). A Negotiate token is opaque,
+     * so the identity is assumed to be bound to the session.
+     */
+    private boolean isReusable(Authentication authentication, AuthorizationHeader authorizationHeader) {
+        if (authentication instanceof SignedCookieAuthentication) {
+            // verified and unexpired
+            String username = getBasicUsername(authorizationHeader);
+            return username == null || username.equalsIgnoreCase(authentication.getName());
+        }
+
+        if (authenticationMaxAge <= 0 || !(authentication instanceof CustomAuthenticationToken)) {
+            return false;
+        }
+
+        CustomAuthenticationToken token = (CustomAuthenticationToken) authentication;
+        long age = System.currentTimeMillis() - token.getAuthenticationTime();
+        if (!token.isAuthenticated() || age > authenticationMaxAge * 1000) {
+            return false;
+        }
+
+        String username = getBasicUsername(authorizationHeader);
+        return username == null || username.equalsIgnoreCase(token.getName());
+    }
+
+    /**
+     * Returns the username, without its domain, of a Basic Authorization header or null.
+     */
+    private String getBasicUsername(AuthorizationHeader authorizationHeader) {
+        if (!"Basic".equalsIgnoreCase(authorizationHeader.getSecurityPackage())) {
+            return null;
+        }
+
+        try {
+            String credentials = new String(Base64.decode(authorizationHeader.getToken().getBytes("UTF-8")), "UTF-8");
+            int colon = credentials.indexOf(':');
+            String username = colon < 0 ? credentials : credentials.substring(0, colon);
+            return username.substring(username.lastIndexOf('\\') + 1);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Send a 429 Too Many Requests, without protocol authentication headers so the client does not retry at once.
+     */
+    private void sendTooManyRequests(HttpServletResponse response) {
+        try {
+            response.setHeader("Retry-After", "1");
+            response.setHeader("Connection", "close");
+            response.sendError(SC_TOO_MANY_REQUESTS);
+            response.flushBuffer();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     /**
@@ -1,30 +1,75 @@
 package github.priyatam.springsecurity.waffle;
 
+import github.priyatam.springsecurity.throttle.AuthenticationThrottle;
+import github.priyatam.springsecurity.throttle.TooManyAttemptsException;
+import github.priyatam.springsecurity.utils.BlockingCallExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
-import waffle.servlet.WindowsPrincipal;
+import org.springframework.security.web.authentication.WebAuthenticationDetails;
 import waffle.spring.GuestLoginDisabledAuthenticationException;
 import waffle.spring.WindowsAuthenticationProvider;
 import waffle.windows.auth.IWindowsIdentity;
 
+import java.util.concurrent.Callable;
+
 /**
  * Custom Authentication Provider that extends Waffle Authentication Provider to add Roles
  * from SAEC Db
  */
-public class CustomAuthenticationProvider extends WindowsAuthenticationProvider {
+public class CustomAuthenticationProvider extends WindowsAuthenticationProvider implements InitializingBean {
 
     Logger logger = LoggerFactory.getLogger(CustomAuthenticationProvider.class);
 
+    private CustomAuthenticationTokenFactory tokenFactory;
+
+    private BlockingCallExecutor blockingCallExecutor;
+
+    private AuthenticationThrottle throttle;
+
+    public void afterPropertiesSet() {
+        if (tokenFactory == null) {
+            throw new IllegalStateException("A tokenFactory is required");
+        }
+    }
+
+    /**
+     * Builds the token of each logged on identity, required.
+     */
+    public void setTokenFactory(CustomAuthenticationTokenFactory tokenFactory) {
+        this.tokenFactory = tokenFactory;
+    }
+
+    /**
+     * When set, client addresses and usernames failing to log on too often are rejected before the Windows logon.
+     */
+    public void setThrottle(AuthenticationThrottle throttle) {
+        this.throttle = throttle;
+    }
+
+    /**
+     * Optional executor bounding the Windows logon, a directory call, with a timeout and a concurrency cap.
+     */
+    public void setBlockingCallExecutor(BlockingCallExecutor blockingCallExecutor) {
+        this.blockingCallExecutor = blockingCallExecutor;
+    }
+
     @Override
     public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+        String remoteAddress = authentication.getDetails() instanceof WebAuthenticationDetails
+                ? ((WebAuthenticationDetails) authentication.getDetails()).getRemoteAddress() : null;
+        if (throttle != null && !throttle.isAdmitted(remoteAddress, authentication.getName())) {
+            throw new TooManyAttemptsException("Too many failed logins, try again later");
+        }
 
         try {
             UsernamePasswordAuthenticationToken auth = (UsernamePasswordAuthenticationToken) authentication;
-            IWindowsIdentity windowsIdentity = getAuthProvider().logonUser(auth.getName(), auth.getCredentials().toString());
+            IWindowsIdentity windowsIdentity = logonUser(auth.getName(), auth.getCredentials().toString());
             logger.debug("logged in user: " + windowsIdentity.getFqn() + " (" + windowsIdentity.getSidString() + ")");
 
             if (!getAllowGuestLogin() && windowsIdentity.isGuest()) {
@@ -32,18 +77,50 @@ public class CustomAuthenticationProvider extends WindowsAuthenticationProvider
                 throw new GuestLoginDisabledAuthenticationException(windowsIdentity.getFqn());
             }
 
-            WindowsPrincipal windowsPrincipal = new WindowsPrincipal(windowsIdentity, getPrincipalFormat(), getRoleFormat());
-            logger.debug("roles: " + windowsPrincipal.getRolesString());
-
             // Populate Authentication Token along with GrantedAuthorities
-            CustomAuthenticationToken token = new CustomAuthenticationToken(windowsPrincipal);
+            CustomAuthenticationToken token = createToken(windowsIdentity);
+            if (throttle != null) {
+                throttle.success(remoteAddress, authentication.getName());
+            }
             logger.info("successfully logged in user: " + windowsIdentity.getFqn());
             return token;
-        } catch (Exception e) {
-            logger.error("An error occurred while loading Authentication Roles: " + e.getMessage());
-            e.printStackTrace();
+        } catch (AuthenticationException e) {
+            // only failed attempts count, not a back-end outage
+            if (throttle != null && !(e instanceof AuthenticationServiceException)) {
+                throttle.failure(remoteAddress, authentication.getName());
+            }
+            logger.warn("Authentication of " + authentication.getName() + " failed: " + e.getMessage());
+            throw e;
+        } catch (RuntimeException e) {
+            logger.error("An error occurred while loading Authentication Roles: " + e.getMessage(), e);
+            throw new AuthenticationServiceException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Run the Windows logon. A rejected logon (unknown user, wrong password, locked account) is a
+     * BadCredentialsException, a logon that timed out an AuthenticationServiceException.
+     */
+    private IWindowsIdentity logonUser(final String username, final String password) {
+        try {
+            if (blockingCallExecutor == null) {
+                return getAuthProvider().logonUser(username, password);
+            }
+
+            return blockingCallExecutor.call(BlockingCallExecutor.Kind.DIRECTORY, new Callable<IWindowsIdentity>() {
+                public IWindowsIdentity call() {
+                    return getAuthProvider().logonUser(username, password);
+                }
+            });
+        } catch (BlockingCallExecutor.BlockingCallTimeoutException e) {
             throw new AuthenticationServiceException(e.getMessage(), e);
+        } catch (Exception e) {
+            throw new BadCredentialsException(e.getMessage(), e);
         }
     }
 
+    private CustomAuthenticationToken createToken(IWindowsIdentity windowsIdentity) {
+        return tokenFactory.createToken(windowsIdentity, getPrincipalFormat(), getRoleFormat());
+    }
+
 }
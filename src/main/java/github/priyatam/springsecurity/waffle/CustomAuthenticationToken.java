@@ -1,16 +1,17 @@
 package github.priyatam.springsecurity.waffle;
 
-import github.priyatam.springsecurity.domain.User;
+import github.priyatam.springsecurity.domain.AuthorizationSnapshot;
 import github.priyatam.springsecurity.spring.SpringSecurityContext;
 import github.priyatam.springsecurity.utils.AccountContextSupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.authentication.AuthenticationServiceException;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import waffle.servlet.WindowsPrincipal;
 
+import javax.persistence.NoResultException;
 import java.util.Collection;
 import java.util.List;
 
@@ -26,56 +27,56 @@ public class CustomAuthenticationToken implements Authentication {
     private WindowsPrincipal windowsPrincipal = null;
     private org.springframework.security.core.userdetails.User principal = null;
     private Collection<GrantedAuthority> authorities = null;
+    private final long authenticationTime = System.currentTimeMillis();
 
     // TODO: Move this to a config
     public static final String LDAP_DOMAIN = "LDAP_DOMAIN";
 
-    @Autowired
-    AccountContextSupport accountContextSupport;
-
     /**
-     * Constructor that fully initializes the principal
+     * Constructor for a principal whose authorities were already loaded, see CustomAuthenticationTokenFactory,
+     * which creates every token
      *
      * @param windowsPrincipal windows principal
+     * @param authorities      authorities of the mapped user
      */
-    public CustomAuthenticationToken(WindowsPrincipal windowsPrincipal) {
+    public CustomAuthenticationToken(WindowsPrincipal windowsPrincipal, Collection<GrantedAuthority> authorities) {
         this.windowsPrincipal = windowsPrincipal;
-        // Strip <domainName>\\ to get mapped username in SAEC
-        String username = windowsPrincipal.getName().substring(LDAP_DOMAIN.length() + 1);
-        logger.debug("Login Info derived from ActiveDirectory: " + username);
-
-        // Load roles
-        Collection<GrantedAuthority> authorities = loadAuthorities(username);
+        this.authorities = authorities;
+        this.principal = new org.springframework.security.core.userdetails.User(toUsername(windowsPrincipal.getName()),
+                "", true, true, true, true, authorities);
+    }
 
-        // Create UserDetails object
-        this.principal = new org.springframework.security.core.userdetails.User(username, "", true, true,
-                true, true, authorities);
+    /**
+     * Strips <domainName>\\ from a Windows fqn to get the mapped username
+     */
+    static String toUsername(String fqn) {
+        return fqn.substring(LDAP_DOMAIN.length() + 1);
     }
 
     /**
-     * Loads granted authorities by looking up User=>Roles.
-     * Throws UsernameNotFoundException if principal isn't mapped mapped to Db
-     *
-     * @return
+     * Loads granted authorities from the read-only User=>Roles projection.
+     * Throws UsernameNotFoundException if principal isn't mapped to Db, AuthenticationServiceException if
+     * the roles could not be loaded, e.g. the database is down or the query timed out
      */
-    private Collection<GrantedAuthority> loadAuthorities(String username) {
+    static Collection<GrantedAuthority> loadAuthorities(AccountContextSupport accountContextSupport, String username) {
+        Logger logger = LoggerFactory.getLogger(CustomAuthenticationToken.class);
 
-        // Match User Account from Db
-        User account = null;
+        // Match the account's username and role names from Db
+        AuthorizationSnapshot authorization = null;
         try {
-            account = accountContextSupport.obtainAccount(username);
-        } catch (Exception e) {
+            authorization = accountContextSupport.obtainAuthorization(username);
+        } catch (NoResultException e) {
             logger.info("A unique account " + username + " could not be found: " + e.getMessage());
             throw new UsernameNotFoundException("A unique account " + username + " could not be found");
+        } catch (RuntimeException e) {
+            logger.warn("Roles of " + username + " could not be loaded: " + e.getMessage());
+            throw new AuthenticationServiceException("Roles of " + username + " could not be loaded", e);
         }
 
         // Load User Roles
-        List<String> roles = account.getRoleNames();
+        List<String> roles = authorization.getRoleNames();
         logger.debug("Loaded Roles from Database: " + roles.toString());
-        Collection<GrantedAuthority> grantedAuthorities =
-                SpringSecurityContext.toGrantedAuthorities(roles);
-        this.authorities = grantedAuthorities;
-        return authorities;
+        return SpringSecurityContext.toGrantedAuthorities(roles);
     }
 
 
@@ -107,4 +108,12 @@ public class CustomAuthenticationToken implements Authentication {
     public String getName() {
         return principal.getUsername();
     }
+
+    /**
+     * Returns the time this token was created, that is when the Windows handshake and the
+     * role load completed.
+     */
+    public long getAuthenticationTime() {
+        return authenticationTime;
+    }
 }
\ No newline at end of file
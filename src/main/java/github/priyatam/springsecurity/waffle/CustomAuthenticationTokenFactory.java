@@ -0,0 +1,192 @@
+package github.priyatam.springsecurity.waffle;
+
+import github.priyatam.springsecurity.cache.UnknownUserCache;
+import github.priyatam.springsecurity.metrics.NegotiateFilterMetrics;
+import github.priyatam.springsecurity.metrics.NegotiateFilterMetrics.Stage;
+import github.priyatam.springsecurity.utils.AccountContextSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import waffle.servlet.WindowsPrincipal;
+import waffle.windows.auth.IWindowsIdentity;
+import waffle.windows.auth.PrincipalFormat;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds the CustomAuthenticationToken of a Windows identity: the WindowsPrincipal (Windows group
+ * enumeration) and the granted authorities (database role load).
+ * <p/>
+ * With <code>parallelRoleLoading</code> the role load starts as soon as the username is known and
+ * runs on a bounded executor while the WindowsPrincipal is built on the calling thread, so a login
+ * costs the slowest of the two steps instead of their sum.
+ */
+public class CustomAuthenticationTokenFactory {
+
+    Logger logger = LoggerFactory.getLogger(CustomAuthenticationTokenFactory.class);
+
+    @Autowired
+    private AccountContextSupport accountContextSupport;
+
+    @Autowired(required = false)
+    private UnknownUserCache unknownUserCache;
+
+    private boolean parallelRoleLoading = false;
+    private int roleLoaderThreads = 8;
+    private int roleLoaderQueueSize = 64;
+    private long roleLoadTimeout = 10;
+
+    private ExecutorService executor;
+
+    private NegotiateFilterMetrics metrics;
+
+    @PostConstruct
+    public void initialize() {
+        if (parallelRoleLoading) {
+            executor = new ThreadPoolExecutor(roleLoaderThreads, roleLoaderThreads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(roleLoaderQueueSize), new RoleLoaderThreadFactory(),
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+            logger.info("Parallel role loading enabled with " + roleLoaderThreads + " threads");
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Create the authentication token of the passed Windows identity.
+     *
+     * @throws org.springframework.security.core.userdetails.UsernameNotFoundException
+     *          if the user is not mapped to the database
+     */
+    public CustomAuthenticationToken createToken(IWindowsIdentity windowsIdentity, PrincipalFormat principalFormat,
+                                                 PrincipalFormat roleFormat) {
+        // an unmapped user fails before the Windows group enumeration
+        if (unknownUserCache != null && unknownUserCache.isUnknown(CustomAuthenticationToken.toUsername(windowsIdentity.getFqn()))) {
+            throw new UsernameNotFoundException("A unique account " + windowsIdentity.getFqn() + " could not be found");
+        }
+
+        if (executor == null) {
+            WindowsPrincipal principal = createPrincipal(windowsIdentity, principalFormat, roleFormat);
+            String username = CustomAuthenticationToken.toUsername(principal.getName());
+            return new CustomAuthenticationToken(principal, loadAuthorities(username));
+        }
+
+        final String username = CustomAuthenticationToken.toUsername(windowsIdentity.getFqn());
+        Future<Collection<GrantedAuthority>> authorities = executor.submit(new Callable<Collection<GrantedAuthority>>() {
+            public Collection<GrantedAuthority> call() {
+                return loadAuthorities(username);
+            }
+        });
+
+        WindowsPrincipal principal;
+        try {
+            principal = createPrincipal(windowsIdentity, principalFormat, roleFormat);
+        } catch (RuntimeException e) {
+            authorities.cancel(true);
+            throw e;
+        }
+
+        return new CustomAuthenticationToken(principal, await(authorities, username));
+    }
+
+    private WindowsPrincipal createPrincipal(IWindowsIdentity windowsIdentity, PrincipalFormat principalFormat,
+                                             PrincipalFormat roleFormat) {
+        long time = System.nanoTime();
+        WindowsPrincipal principal = new WindowsPrincipal(windowsIdentity, principalFormat, roleFormat);
+        if (metrics != null) {
+            metrics.record(Stage.PRINCIPAL, time);
+        }
+        logger.debug("roles: " + principal.getRolesString());
+        return principal;
+    }
+
+    private Collection<GrantedAuthority> loadAuthorities(String username) {
+        long time = System.nanoTime();
+        try {
+            return CustomAuthenticationToken.loadAuthorities(accountContextSupport, username);
+        } finally {
+            if (metrics != null) {
+                metrics.record(Stage.ROLE_LOAD, time);
+            }
+        }
+    }
+
+    private Collection<GrantedAuthority> await(Future<Collection<GrantedAuthority>> authorities, String username) {
+        try {
+            return authorities.get(roleLoadTimeout, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new AuthenticationServiceException("Roles of " + username + " could not be loaded", e.getCause());
+        } catch (TimeoutException e) {
+            authorities.cancel(true);
+            throw new AuthenticationServiceException("Timed out loading the roles of " + username, e);
+        } catch (InterruptedException e) {
+            authorities.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new AuthenticationServiceException("Interrupted loading the roles of " + username, e);
+        }
+    }
+
+    public void setAccountContextSupport(AccountContextSupport accountContextSupport) {
+        this.accountContextSupport = accountContextSupport;
+    }
+
+    public void setUnknownUserCache(UnknownUserCache unknownUserCache) {
+        this.unknownUserCache = unknownUserCache;
+    }
+
+    public void setMetrics(NegotiateFilterMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void setParallelRoleLoading(boolean parallelRoleLoading) {
+        this.parallelRoleLoading = parallelRoleLoading;
+    }
+
+    public void setRoleLoaderThreads(int roleLoaderThreads) {
+        this.roleLoaderThreads = roleLoaderThreads;
+    }
+
+    public void setRoleLoaderQueueSize(int roleLoaderQueueSize) {
+        this.roleLoaderQueueSize = roleLoaderQueueSize;
+    }
+
+    /**
+     * Maximum time, in seconds, to wait for the role load once the WindowsPrincipal is built.
+     */
+    public void setRoleLoadTimeout(long roleLoadTimeout) {
+        this.roleLoadTimeout = roleLoadTimeout;
+    }
+
+    private static class RoleLoaderThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "role-loader-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package github.priyatam.springsecurity.audit;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AuditLogFormatTest {
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(AuditLogFormat.HEADER_SIZE + 2 * AuditLogFormat.RECORD_SIZE);
+
+    @Test
+    public void headerIsValidOnceWritten() {
+        assertFalse(AuditLogFormat.isValidHeader(buffer));
+
+        AuditLogFormat.writeHeader(buffer);
+
+        assertTrue(AuditLogFormat.isValidHeader(buffer));
+    }
+
+    @Test
+    public void recordRoundTrip() {
+        int position = AuditLogFormat.HEADER_SIZE + AuditLogFormat.RECORD_SIZE;
+        AuditLogFormat.writeRecord(buffer, position, 1234567890123L, AuditEventType.NEGOTIATE_FAILURE.getCode(),
+                "alice", "10.0.0.1", "Bad credentials");
+
+        assertEquals(1234567890123L, AuditLogFormat.readTimestamp(buffer, position));
+        assertEquals(AuditEventType.NEGOTIATE_FAILURE, AuditEventType.fromCode(AuditLogFormat.readType(buffer, position)));
+        assertEquals("alice", AuditLogFormat.readUsername(buffer, position));
+        assertEquals("10.0.0.1", AuditLogFormat.readRemoteAddress(buffer, position));
+        assertEquals("Bad credentials", AuditLogFormat.readDetail(buffer, position));
+        // the first record is untouched
+        assertEquals(0, AuditLogFormat.readTimestamp(buffer, AuditLogFormat.HEADER_SIZE));
+    }
+
+    @Test
+    public void nullAndEmptyStringsAreKept() {
+        AuditLogFormat.writeRecord(buffer, AuditLogFormat.HEADER_SIZE, 1L, AuditEventType.GUEST_REJECTED.getCode(),
+                "", null, null);
+
+        assertEquals("", AuditLogFormat.readUsername(buffer, AuditLogFormat.HEADER_SIZE));
+        assertNull(AuditLogFormat.readRemoteAddress(buffer, AuditLogFormat.HEADER_SIZE));
+        assertNull(AuditLogFormat.readDetail(buffer, AuditLogFormat.HEADER_SIZE));
+    }
+
+    @Test
+    public void longValuesAreTruncated() {
+        AuditLogFormat.writeRecord(buffer, AuditLogFormat.HEADER_SIZE, 1L, AuditEventType.NEGOTIATE_SUCCESS.getCode(),
+                repeat("u", 100), repeat("1", 50), repeat("d", 200));
+
+        assertEquals(repeat("u", 92), AuditLogFormat.readUsername(buffer, AuditLogFormat.HEADER_SIZE));
+        assertEquals(repeat("1", 46), AuditLogFormat.readRemoteAddress(buffer, AuditLogFormat.HEADER_SIZE));
+        assertEquals(repeat("d", 102), AuditLogFormat.readDetail(buffer, AuditLogFormat.HEADER_SIZE));
+    }
+
+    @Test
+    public void truncationDoesNotSplitACharacter() {
+        // 1 + 46 * 2 bytes: the last two byte character straddles the 92 byte limit
+        String username = "a" + repeat("\u00e9", 46);
+        // 4 byte characters: 25 * 4 bytes, the 26th straddles the 102 byte limit
+        String detail = repeat("\uD83D\uDE00", 26);
+        AuditLogFormat.writeRecord(buffer, AuditLogFormat.HEADER_SIZE, 1L, AuditEventType.NEGOTIATE_SUCCESS.getCode(),
+                username, null, detail);
+
+        assertEquals("a" + repeat("\u00e9", 45), AuditLogFormat.readUsername(buffer, AuditLogFormat.HEADER_SIZE));
+        assertEquals(repeat("\uD83D\uDE00", 25), AuditLogFormat.readDetail(buffer, AuditLogFormat.HEADER_SIZE));
+    }
+
+    @Test
+    public void valueOfExactlyTheFieldSizeIsKept() {
+        String username = repeat("\u00e9", 46);
+        AuditLogFormat.writeRecord(buffer, AuditLogFormat.HEADER_SIZE, 1L, AuditEventType.NEGOTIATE_SUCCESS.getCode(),
+                username, null, null);
+
+        assertEquals(username, AuditLogFormat.readUsername(buffer, AuditLogFormat.HEADER_SIZE));
+    }
+
+    static String repeat(String value, int count) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            result.append(value);
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,78 @@
+package github.priyatam.springsecurity.audit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+
+public class AuditLogReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Write two records to the temporary folder and return it.
+     */
+    private File writeSegment() throws IOException {
+        File directory = folder.getRoot();
+        AuditSegmentWriter writer = new AuditSegmentWriter(directory, 64 * 1024);
+        writer.accept(1000L, AuditEventType.AUTHENTICATION_FAILURE.getCode(), "alice", "10.0.0.1",
+                "Bad, \"wrong\" password");
+        writer.accept(2000L, AuditEventType.NEGOTIATE_SUCCESS.getCode(), "DOMAIN\\bob", null, "line\nbreak");
+        writer.close();
+        return directory;
+    }
+
+    @Test
+    public void writesCsv() throws Exception {
+        File directory = writeSegment();
+        StringWriter out = new StringWriter();
+
+        assertEquals(2, new AuditLogReader(false).read(directory, out));
+        assertEquals("timestamp,type,username,remoteAddress,detail\n"
+                + "1970-01-01T00:00:01.000Z,AUTHENTICATION_FAILURE,alice,10.0.0.1,\"Bad, \"\"wrong\"\" password\"\n"
+                + "1970-01-01T00:00:02.000Z,NEGOTIATE_SUCCESS,DOMAIN\\bob,,\"line\nbreak\"\n", out.toString());
+    }
+
+    @Test
+    public void writesJsonLines() throws Exception {
+        File directory = writeSegment();
+        StringWriter out = new StringWriter();
+
+        assertEquals(2, new AuditLogReader(true).read(directory, out));
+        assertEquals("{\"timestamp\":\"1970-01-01T00:00:01.000Z\",\"type\":\"AUTHENTICATION_FAILURE\","
+                + "\"username\":\"alice\",\"remoteAddress\":\"10.0.0.1\",\"detail\":\"Bad, \\\"wrong\\\" password\"}\n"
+                + "{\"timestamp\":\"1970-01-01T00:00:02.000Z\",\"type\":\"NEGOTIATE_SUCCESS\","
+                + "\"username\":\"DOMAIN\\\\bob\",\"remoteAddress\":null,\"detail\":\"line\\u000abreak\"}\n",
+                out.toString());
+    }
+
+    @Test
+    public void skipsOtherFilesAndInvalidSegments() throws Exception {
+        File directory = writeSegment();
+        write(new File(directory, "notes.txt"), new byte[]{1, 2, 3});
+        write(new File(directory, AuditLogFormat.SEGMENT_PREFIX + "0" + AuditLogFormat.SEGMENT_SUFFIX), new byte[512]);
+
+        assertEquals(2, new AuditLogReader(true).read(directory, new StringWriter()));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsAMissingDirectory() throws Exception {
+        new AuditLogReader(false).read(new File(folder.getRoot(), "missing"), new StringWriter());
+    }
+
+    private static void write(File file, byte[] bytes) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+}
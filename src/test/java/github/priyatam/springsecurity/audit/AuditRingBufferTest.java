@@ -0,0 +1,120 @@
+package github.priyatam.springsecurity.audit;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AuditRingBufferTest {
+
+    @Test
+    public void capacityIsRoundedUpToAPowerOfTwo() {
+        assertEquals(8, new AuditRingBuffer(8).getCapacity());
+        assertEquals(1024, new AuditRingBuffer(1000).getCapacity());
+    }
+
+    @Test
+    public void drainsInOfferOrderAcrossWraps() {
+        AuditRingBuffer ringBuffer = new AuditRingBuffer(8);
+        RecordingSink sink = new RecordingSink();
+
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 6; i++) {
+                assertTrue(ringBuffer.offer(AuditEventType.NEGOTIATE_SUCCESS, "user", null, "" + (round * 6 + i)));
+            }
+            assertEquals(6, ringBuffer.drain(sink, 100));
+        }
+
+        assertEquals(30, sink.details.size());
+        for (int i = 0; i < 30; i++) {
+            assertEquals("" + i, sink.details.get(i));
+        }
+        assertEquals(0, ringBuffer.size());
+    }
+
+    @Test
+    public void fullRingDropsRecords() {
+        AuditRingBuffer ringBuffer = new AuditRingBuffer(8);
+        for (int i = 0; i < 8; i++) {
+            assertTrue(ringBuffer.offer(AuditEventType.NEGOTIATE_FAILURE, "user", null, "" + i));
+        }
+
+        assertFalse(ringBuffer.offer(AuditEventType.NEGOTIATE_FAILURE, "user", null, "8"));
+        assertEquals(1, ringBuffer.getDroppedCount());
+
+        RecordingSink sink = new RecordingSink();
+        assertEquals(3, ringBuffer.drain(sink, 3));
+        assertTrue(ringBuffer.offer(AuditEventType.NEGOTIATE_FAILURE, "user", null, "9"));
+        assertEquals(6, ringBuffer.drain(sink, 100));
+        assertEquals("9", sink.details.get(8));
+    }
+
+    @Test
+    public void concurrentPublishersKeepTheirOrder() throws Exception {
+        final int producers = 4;
+        final int records = 50000;
+        final AuditRingBuffer ringBuffer = new AuditRingBuffer(256);
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(producers);
+        final AtomicBoolean failed = new AtomicBoolean();
+
+        for (int p = 0; p < producers; p++) {
+            final String username = "producer-" + p;
+            new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < records; i++) {
+                            ringBuffer.offer(AuditEventType.AUTHENTICATION_SUCCESS, username, null, "" + i);
+                        }
+                    } catch (InterruptedException e) {
+                        failed.set(true);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        final int[] last = new int[producers];
+        final long[] received = new long[1];
+        for (int p = 0; p < producers; p++) {
+            last[p] = -1;
+        }
+        AuditRingBuffer.Sink sink = new AuditRingBuffer.Sink() {
+            public void accept(long timestamp, byte type, String username, String remoteAddress, String detail) {
+                int producer = Integer.parseInt(username.substring("producer-".length()));
+                int index = Integer.parseInt(detail);
+                // each producer's records come out in order, none twice
+                if (index <= last[producer] || type != AuditEventType.AUTHENTICATION_SUCCESS.getCode()) {
+                    failed.set(true);
+                }
+                last[producer] = index;
+                received[0]++;
+            }
+        };
+
+        start.countDown();
+        while (done.getCount() > 0 || ringBuffer.size() > 0) {
+            ringBuffer.drain(sink, 64);
+        }
+
+        assertFalse(failed.get());
+        assertEquals((long) producers * records, received[0] + ringBuffer.getDroppedCount());
+        assertTrue(received[0] > 0);
+    }
+
+    private static class RecordingSink implements AuditRingBuffer.Sink {
+        final List<String> details = new ArrayList<String>();
+
+        public void accept(long timestamp, byte type, String username, String remoteAddress, String detail) {
+            details.add(detail);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package github.priyatam.springsecurity.audit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+
+public class AuditSegmentWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void rollsToANewSegmentWhenFull() throws Exception {
+        File directory = new File(folder.getRoot(), "audit");
+        AuditSegmentWriter writer = new AuditSegmentWriter(directory,
+                AuditLogFormat.HEADER_SIZE + 2 * AuditLogFormat.RECORD_SIZE);
+
+        for (int i = 1; i <= 5; i++) {
+            writer.accept(i * 1000L, AuditEventType.NEGOTIATE_SUCCESS.getCode(), "user" + i, "10.0.0." + i, null);
+        }
+        writer.close();
+
+        assertEquals(3, writer.getSegmentCount());
+        assertEquals(3, segments(directory).length);
+
+        StringWriter out = new StringWriter();
+        assertEquals(5, new AuditLogReader(false).read(directory, out));
+        String[] lines = out.toString().split("\n");
+        assertEquals(6, lines.length);
+        for (int i = 1; i <= 5; i++) {
+            assertEquals("1970-01-01T00:00:0" + i + ".000Z,NEGOTIATE_SUCCESS,user" + i + ",10.0.0." + i + ",", lines[i]);
+        }
+    }
+
+    @Test
+    public void segmentHoldsAtLeastOneRecord() throws Exception {
+        File directory = folder.getRoot();
+        AuditSegmentWriter writer = new AuditSegmentWriter(directory, 1);
+
+        writer.accept(1000L, AuditEventType.GUEST_REJECTED.getCode(), "guest", null, null);
+        writer.accept(2000L, AuditEventType.GUEST_REJECTED.getCode(), "guest", null, null);
+        writer.close();
+
+        assertEquals(2, writer.getSegmentCount());
+        assertEquals(2, new AuditLogReader(false).read(directory, new StringWriter()));
+    }
+
+    private static File[] segments(File directory) {
+        return directory.listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.endsWith(AuditLogFormat.SEGMENT_SUFFIX);
+            }
+        });
+    }
+}
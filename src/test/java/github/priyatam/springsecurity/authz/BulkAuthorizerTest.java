@@ -0,0 +1,105 @@
+package github.priyatam.springsecurity.authz;
+
+import github.priyatam.springsecurity.domain.AuthorizationSnapshot;
+import github.priyatam.springsecurity.domain.RoleSet;
+import github.priyatam.springsecurity.utils.AccountContextSupport;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.persistence.NoResultException;
+import javax.persistence.QueryTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BulkAuthorizerTest {
+
+    private AccountContextSupport accountContextSupport;
+    private BulkAuthorizer bulkAuthorizer;
+
+    @Before
+    public void setUp() {
+        accountContextSupport = mock(AccountContextSupport.class);
+        when(accountContextSupport.obtainAuthorization("alice"))
+                .thenReturn(new AuthorizationSnapshot("alice", Arrays.asList("ROLE_USER", "ROLE_ADMIN")));
+        when(accountContextSupport.obtainAuthorization("bob"))
+                .thenReturn(new AuthorizationSnapshot("bob", Arrays.asList("ROLE_USER")));
+        when(accountContextSupport.obtainAuthorization("mallory")).thenThrow(new NoResultException("No account mallory"));
+        when(accountContextSupport.obtainAuthorization("carol")).thenThrow(new QueryTimeoutException("timed out"));
+
+        bulkAuthorizer = new BulkAuthorizer();
+        bulkAuthorizer.setAccountContextSupport(accountContextSupport);
+    }
+
+    @Test
+    public void matchModes() {
+        List<RoleSet> required = Arrays.asList(RoleSet.of("ROLE_USER"), RoleSet.of("ROLE_USER", "ROLE_AUDITOR"),
+                RoleSet.of("ROLE_AUDITOR"));
+
+        assertEquals(bits(0), bulkAuthorizer.authorize("bob", required, BulkAuthorizer.Match.ALL));
+        assertEquals(bits(0, 1), bulkAuthorizer.authorize("bob", required, BulkAuthorizer.Match.ANY));
+        assertEquals(bits(2), bulkAuthorizer.authorize("bob", required, BulkAuthorizer.Match.NONE));
+    }
+
+    @Test
+    public void eachPrincipalIsResolvedOnce() {
+        List<BulkAuthorizer.Check> checks = new ArrayList<BulkAuthorizer.Check>();
+        for (int i = 0; i < 10; i++) {
+            checks.add(new BulkAuthorizer.Check(i % 2 == 0 ? "alice" : "bob", RoleSet.of("ROLE_ADMIN")));
+        }
+
+        BitSet result = bulkAuthorizer.authorize(checks, BulkAuthorizer.Match.ALL);
+
+        assertEquals(bits(0, 2, 4, 6, 8), result);
+        verify(accountContextSupport, times(1)).obtainAuthorization("alice");
+        verify(accountContextSupport, times(1)).obtainAuthorization("bob");
+    }
+
+    @Test
+    public void unknownPrincipalHasNoRole() {
+        BitSet result = bulkAuthorizer.authorize("mallory", Arrays.asList(RoleSet.of("ROLE_USER")),
+                BulkAuthorizer.Match.NONE);
+
+        assertTrue(result.get(0));
+    }
+
+    @Test(expected = QueryTimeoutException.class)
+    public void otherFailuresPropagate() {
+        bulkAuthorizer.authorize("carol", Arrays.asList(RoleSet.of("ROLE_USER")), BulkAuthorizer.Match.NONE);
+    }
+
+    @Test
+    public void parallelEvaluationMatchesSequential() {
+        List<BulkAuthorizer.Check> checks = new ArrayList<BulkAuthorizer.Check>();
+        for (int i = 0; i < 1000; i++) {
+            checks.add(new BulkAuthorizer.Check(i % 3 == 0 ? "alice" : i % 3 == 1 ? "bob" : "mallory",
+                    i % 2 == 0 ? RoleSet.of("ROLE_ADMIN") : RoleSet.of("ROLE_USER")));
+        }
+        BitSet sequential = bulkAuthorizer.authorize(checks, BulkAuthorizer.Match.ANY);
+
+        bulkAuthorizer.setParallelThreshold(100);
+        bulkAuthorizer.setChunkSize(64);
+        BitSet parallel = bulkAuthorizer.authorize(checks, BulkAuthorizer.Match.ANY);
+
+        assertEquals(sequential, parallel);
+        assertTrue(parallel.get(0));
+        assertFalse(parallel.get(2));
+    }
+
+    private static BitSet bits(int... indexes) {
+        BitSet bits = new BitSet();
+        for (int index : indexes) {
+            bits.set(index);
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,182 @@
+package github.priyatam.springsecurity.authz;
+
+import org.junit.Test;
+import org.springframework.security.access.AccessDecisionVoter;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.access.ConfigAttribute;
+import org.springframework.security.access.SecurityConfig;
+import org.springframework.security.access.vote.AffirmativeBased;
+import org.springframework.security.access.vote.AuthenticatedVoter;
+import org.springframework.security.access.vote.RoleVoter;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CachingAccessDecisionManagerTest {
+
+    private final CountingDecisionManager delegate = new CountingDecisionManager();
+    private final CachingAccessDecisionManager manager = new CachingAccessDecisionManager(delegate, 100, 60000);
+
+    private final CompiledConfigAttributes userRule =
+            new CompiledConfigAttributes("/app/**", SecurityConfig.createList("ROLE_USER"));
+
+    @Test
+    public void sameAuthoritiesHitTheCache() {
+        manager.decide(user("alice", "ROLE_USER", "ROLE_STAFF"), null, userRule);
+        manager.decide(user("bob", "ROLE_STAFF", "ROLE_USER"), null, userRule);
+
+        assertEquals(1, delegate.calls);
+        assertEquals(1, manager.getHitCount());
+        assertEquals(1, manager.size());
+    }
+
+    @Test
+    public void denialIsCachedAndRethrown() {
+        for (int i = 0; i < 2; i++) {
+            try {
+                manager.decide(user("mallory", "ROLE_GUEST"), null, userRule);
+                fail();
+            } catch (AccessDeniedException e) {
+                // expected
+            }
+        }
+
+        assertEquals(1, delegate.calls);
+    }
+
+    @Test
+    public void differentAuthoritiesDoNotShareAnEntry() {
+        manager.decide(user("alice", "ROLE_USER"), null, userRule);
+        try {
+            manager.decide(user("mallory", "ROLE_GUEST"), null, userRule);
+            fail();
+        } catch (AccessDeniedException e) {
+            // expected
+        }
+        try {
+            manager.decide(user("nobody"), null, userRule);
+            fail();
+        } catch (AccessDeniedException e) {
+            // expected
+        }
+
+        assertEquals(3, delegate.calls);
+        assertEquals(3, manager.size());
+    }
+
+    @Test
+    public void differentTrustLevelsDoNotShareAnEntry() {
+        CompiledConfigAttributes fullyRule =
+                new CompiledConfigAttributes("/secure/**", SecurityConfig.createList("IS_AUTHENTICATED_FULLY"));
+
+        manager.decide(user("alice", "ROLE_USER"), null, fullyRule);
+        try {
+            manager.decide(new AnonymousAuthenticationToken("key", "anonymous",
+                    AuthorityUtils.createAuthorityList("ROLE_USER")), null, fullyRule);
+            fail();
+        } catch (AccessDeniedException e) {
+            // expected
+        }
+
+        assertEquals(2, delegate.calls);
+    }
+
+    @Test
+    public void equalRulesDoNotShareAnEntry() {
+        CompiledConfigAttributes otherRule =
+                new CompiledConfigAttributes("/api/**", SecurityConfig.createList("ROLE_USER"));
+
+        manager.decide(user("alice", "ROLE_USER"), null, userRule);
+        manager.decide(user("alice", "ROLE_USER"), null, otherRule);
+
+        assertEquals(2, delegate.calls);
+    }
+
+    @Test
+    public void nonCacheableExpressionBypassesTheCache() {
+        CompiledConfigAttributes ipRule = new CompiledConfigAttributes("/admin/**",
+                Collections.<ConfigAttribute>singletonList(new Expression("hasRole('ROLE_USER') and hasIpAddress('10.0.0.1')")));
+        assertFalse(ipRule.isCacheable());
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                manager.decide(user("alice", "ROLE_USER"), null, ipRule);
+            } catch (AccessDeniedException e) {
+                // the voters of the delegate abstain
+            }
+        }
+
+        assertEquals(2, delegate.calls);
+        assertEquals(0, manager.size());
+    }
+
+    @Test
+    public void cacheableExpressionIsCached() {
+        CompiledConfigAttributes roleRule = new CompiledConfigAttributes("/app/**",
+                Collections.<ConfigAttribute>singletonList(new Expression("hasAnyRole('ROLE_USER', 'ROLE_ADMIN') and isFullyAuthenticated()")));
+
+        assertTrue(roleRule.isCacheable());
+    }
+
+    @Test
+    public void uncompiledAttributesBypassTheCache() {
+        List<ConfigAttribute> attributes = SecurityConfig.createList("ROLE_USER");
+
+        manager.decide(user("alice", "ROLE_USER"), null, attributes);
+        manager.decide(user("alice", "ROLE_USER"), null, attributes);
+
+        assertEquals(2, delegate.calls);
+        assertEquals(0, manager.size());
+    }
+
+    private static Authentication user(String username, String... roles) {
+        return new UsernamePasswordAuthenticationToken(username, "secret", AuthorityUtils.createAuthorityList(roles));
+    }
+
+    /**
+     * Like a web expression attribute: no attribute value, the expression is only exposed by toString.
+     */
+    private static class Expression implements ConfigAttribute {
+        private final String expression;
+
+        Expression(String expression) {
+            this.expression = expression;
+        }
+
+        public String getAttribute() {
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return expression;
+        }
+    }
+
+    private static class CountingDecisionManager extends AffirmativeBased {
+        int calls;
+
+        @SuppressWarnings("rawtypes")
+        CountingDecisionManager() {
+            setDecisionVoters(Arrays.<AccessDecisionVoter>asList(new RoleVoter(), new AuthenticatedVoter()));
+        }
+
+        @Override
+        public void decide(Authentication authentication, Object object, Collection<ConfigAttribute> configAttributes)
+                throws AccessDeniedException {
+            calls++;
+            super.decide(authentication, object, configAttributes);
+        }
+    }
+}
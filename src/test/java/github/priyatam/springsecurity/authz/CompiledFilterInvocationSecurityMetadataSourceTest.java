@@ -0,0 +1,149 @@
+package github.priyatam.springsecurity.authz;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.access.ConfigAttribute;
+import org.springframework.security.access.SecurityConfig;
+import org.springframework.security.web.FilterInvocation;
+import org.springframework.security.web.access.intercept.DefaultFilterInvocationSecurityMetadataSource;
+import org.springframework.security.web.access.intercept.RequestKey;
+import org.springframework.security.web.util.AntUrlPathMatcher;
+import org.springframework.security.web.util.UrlMatcher;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Checks the compiled lookup against the stock DefaultFilterInvocationSecurityMetadataSource on the same rules.
+ */
+public class CompiledFilterInvocationSecurityMetadataSourceTest {
+
+    private static final String[] METHODS = {null, "GET", "POST", "DELETE"};
+
+    private static final String[] URLS = {
+            "/", "", "/admin", "/admin/", "/admin/users", "/admin/users/42", "/Admin", "/ADMIN/Users",
+            "/administrator", "/adm", "/app", "/app/", "/app/home", "/app/home?tab=1", "/app/logout",
+            "/app/logout?timeout=true", "/app/logoutnow", "/app/resource/site.css", "/app/resource/img/logo.png",
+            "/app/javax.faces.resource/jsf.js", "/app/javax.faces.resource", "/app/javaxfaces/x",
+            "/api/orders", "/api/orders/", "/api/orders/7", "/api/orders/7/lines", "/api/orders?page=2",
+            "/api/ORDERS/7", "/reports/2012/q1.pdf", "/reports/q1.pdf", "/reports/2012/q1.PDF",
+            "/public/a/b/index.html", "/public/index.html", "/public", "/x?y=/admin/", "/secure/file1",
+            "/secure/file", "/secure/file12", "/user/bob/settings", "/user//settings", "/user/bob"
+    };
+
+    @Test
+    public void trailingDoubleWildcardAlsoMatchesTheBareDirectory() {
+        LinkedHashMap<RequestKey, Collection<ConfigAttribute>> rules = new LinkedHashMap<RequestKey, Collection<ConfigAttribute>>();
+        rules.put(new RequestKey("/admin/**"), SecurityConfig.createList("ROLE_ADMIN"));
+        rules.put(new RequestKey("/**"), SecurityConfig.createList("IS_AUTHENTICATED_FULLY"));
+
+        CompiledFilterInvocationSecurityMetadataSource compiled = CompiledFilterInvocationSecurityMetadataSource.compile(
+                new DefaultFilterInvocationSecurityMetadataSource(new AntUrlPathMatcher(), rules));
+
+        assertEquals(SecurityConfig.createList("ROLE_ADMIN"), list(compiled.lookupAttributes("/admin", "GET")));
+    }
+
+    @Test
+    public void literalPrefixStopsBeforeTheWildcardSegment() {
+        CompiledFilterInvocationSecurityMetadataSource.PatternTrie trie = new CompiledFilterInvocationSecurityMetadataSource.PatternTrie(
+                new AntUrlPathMatcher(), new LinkedHashMap<Object, Collection<ConfigAttribute>>());
+
+        assertEquals("/admin", trie.literalPrefix("/admin/**"));
+        assertEquals("/app", trie.literalPrefix("/app/javax.*/**"));
+        assertEquals("/app/logout", trie.literalPrefix("/app/logout"));
+        assertEquals("", trie.literalPrefix("/**"));
+        assertEquals("", trie.literalPrefix("**/*.pdf"));
+    }
+
+    @Test
+    public void lowerCaseMatcherWithQueryStringStripping() {
+        assertSameAsStock(new AntUrlPathMatcher(), true);
+    }
+
+    @Test
+    public void lowerCaseMatcherWithoutQueryStringStripping() {
+        assertSameAsStock(new AntUrlPathMatcher(), false);
+    }
+
+    @Test
+    public void caseSensitiveMatcherWithQueryStringStripping() {
+        assertSameAsStock(new AntUrlPathMatcher(false), true);
+    }
+
+    @Test
+    public void caseSensitiveMatcherWithoutQueryStringStripping() {
+        assertSameAsStock(new AntUrlPathMatcher(false), false);
+    }
+
+    @Test
+    public void filterInvocationsGetTheStockAttributes() {
+        DefaultFilterInvocationSecurityMetadataSource stock = stock(new AntUrlPathMatcher(), true);
+        CompiledFilterInvocationSecurityMetadataSource compiled = CompiledFilterInvocationSecurityMetadataSource.compile(stock);
+        assertNotNull(compiled);
+
+        for (String method : new String[]{"GET", "POST", "DELETE", "PUT"}) {
+            for (String path : new String[]{"/admin", "/api/orders/7", "/app/logout", "/Reports/2012/q1.pdf"}) {
+                MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+                request.setServletPath(path);
+                request.setQueryString("a=b");
+                FilterInvocation invocation = new FilterInvocation(request, new MockHttpServletResponse(), new MockFilterChain());
+
+                assertEquals(method + " " + path, list(stock.getAttributes(invocation)), list(compiled.getAttributes(invocation)));
+            }
+        }
+    }
+
+    private static void assertSameAsStock(UrlMatcher urlMatcher, boolean stripQueryString) {
+        DefaultFilterInvocationSecurityMetadataSource stock = stock(urlMatcher, stripQueryString);
+        CompiledFilterInvocationSecurityMetadataSource compiled = CompiledFilterInvocationSecurityMetadataSource.compile(stock);
+        assertNotNull(compiled);
+        assertEquals(stock.getAllConfigAttributes(), compiled.getAllConfigAttributes());
+
+        for (String method : METHODS) {
+            for (String url : URLS) {
+                assertEquals(method + " " + url, list(stock.lookupAttributes(url, method)), list(compiled.lookupAttributes(url, method)));
+            }
+        }
+    }
+
+    private static List<ConfigAttribute> list(Collection<ConfigAttribute> attributes) {
+        return attributes != null ? new ArrayList<ConfigAttribute>(attributes) : null;
+    }
+
+    /**
+     * Rules in the order of the intercept-url elements, mixing method-specific and any-method rules.
+     */
+    private static DefaultFilterInvocationSecurityMetadataSource stock(UrlMatcher urlMatcher, boolean stripQueryString) {
+        List<Object[]> rules = new ArrayList<Object[]>();
+        rules.add(new Object[]{"/app/logout*", null, "IS_AUTHENTICATED_REMEMBERED"});
+        rules.add(new Object[]{"/app/resource/*", null, "IS_AUTHENTICATED_ANONYMOUSLY"});
+        rules.add(new Object[]{"/app/javax.*/**", null, "IS_AUTHENTICATED_ANONYMOUSLY"});
+        rules.add(new Object[]{"/Admin/**", null, "ROLE_ADMIN"});
+        rules.add(new Object[]{"/api/orders/**", "DELETE", "ROLE_ADMIN"});
+        rules.add(new Object[]{"/api/orders/*", "POST", "ROLE_CLERK"});
+        rules.add(new Object[]{"/api/orders", "GET", "ROLE_VIEWER"});
+        rules.add(new Object[]{"/api/**", null, "ROLE_USER"});
+        rules.add(new Object[]{"/reports/**/*.pdf", null, "ROLE_REPORTS"});
+        rules.add(new Object[]{"/public/**/index.html", "GET", "IS_AUTHENTICATED_ANONYMOUSLY"});
+        rules.add(new Object[]{"/secure/file?", null, "ROLE_FILES"});
+        rules.add(new Object[]{"/user/{name}/settings", null, "ROLE_SELF"});
+        rules.add(new Object[]{"/x?y=/admin/**", null, "ROLE_QUERY"});
+        rules.add(new Object[]{"/**", "POST", "ROLE_WRITER"});
+        rules.add(new Object[]{"/**", null, "IS_AUTHENTICATED_FULLY"});
+
+        LinkedHashMap<RequestKey, Collection<ConfigAttribute>> requestMap = new LinkedHashMap<RequestKey, Collection<ConfigAttribute>>();
+        for (Object[] rule : rules) {
+            requestMap.put(new RequestKey((String) rule[0], (String) rule[1]), SecurityConfig.createList((String) rule[2]));
+        }
+        DefaultFilterInvocationSecurityMetadataSource source = new DefaultFilterInvocationSecurityMetadataSource(urlMatcher, requestMap);
+        source.setStripQueryStringFromUrls(stripQueryString);
+        return source;
+    }
+}
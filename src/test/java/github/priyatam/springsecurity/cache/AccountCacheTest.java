@@ -0,0 +1,51 @@
+package github.priyatam.springsecurity.cache;
+
+import github.priyatam.springsecurity.domain.User;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class AccountCacheTest {
+
+    private AccountCache accountCache;
+
+    @Before
+    public void setUp() {
+        accountCache = new AccountCache();
+        accountCache.initialize();
+    }
+
+    @Test
+    public void loadCachesUnderTheRequestedUsername() {
+        User loaded = accountCache.load("ALICE", new Callable<User>() {
+            public User call() {
+                return new User("secret", "alice");
+            }
+        });
+
+        assertEquals("alice", loaded.getUsername());
+        assertNotNull(accountCache.get("ALICE"));
+        assertEquals(1, accountCache.getHitCount());
+    }
+
+    @Test
+    public void putCachesUnderTheStoredUsername() {
+        accountCache.put(new User("secret", "alice"));
+
+        assertNotNull(accountCache.get("alice"));
+        assertNull(accountCache.get("Alice"));
+    }
+
+    @Test
+    public void invalidateDropsTheEntry() {
+        accountCache.put(new User("secret", "alice"));
+        accountCache.invalidate("alice");
+
+        assertNull(accountCache.get("alice"));
+    }
+}
@@ -0,0 +1,116 @@
+package github.priyatam.springsecurity.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class BoundedCacheTest {
+
+    @Test
+    public void getReturnsPutValue() {
+        BoundedCache<String, String> cache = new BoundedCache<String, String>(10, 0, 0);
+        cache.put("alice", "a");
+
+        assertEquals("a", cache.get("alice"));
+        assertNull(cache.get("bob"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void putNullInvalidates() {
+        BoundedCache<String, String> cache = new BoundedCache<String, String>(10, 0, 0);
+        cache.put("alice", "a");
+        cache.put("alice", null);
+
+        assertNull(cache.get("alice"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedEntryOfFullSegment() {
+        BoundedCache<String, String> cache = new BoundedCache<String, String>(2, 0, 0, 1);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.get("a");
+        cache.put("c", "3");
+
+        assertEquals("1", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("3", cache.get("c"));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void sizeIsBoundedAcrossSegments() {
+        BoundedCache<Integer, Integer> cache = new BoundedCache<Integer, Integer>(64, 0, 0);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, i);
+        }
+
+        // each segment holds up to maxSize / segments entries
+        assertEquals(64, cache.size());
+    }
+
+    @Test
+    public void expiresAfterWrite() throws InterruptedException {
+        BoundedCache<String, String> cache = new BoundedCache<String, String>(10, 50, 0);
+        cache.put("alice", "a");
+        Thread.sleep(80);
+
+        assertNull(cache.get("alice"));
+        assertEquals(1, cache.getExpirationCount());
+    }
+
+    @Test
+    public void readsExtendExpireAfterAccess() throws InterruptedException {
+        BoundedCache<String, String> cache = new BoundedCache<String, String>(10, 0, 100);
+        cache.put("alice", "a");
+        for (int i = 0; i < 4; i++) {
+            Thread.sleep(40);
+            assertEquals("a", cache.get("alice"));
+        }
+        Thread.sleep(150);
+
+        assertNull(cache.get("alice"));
+    }
+
+    @Test
+    public void entryWithItsOwnAccessLifetimeOutlivesTheDefault() throws InterruptedException {
+        BoundedCache<String, String> cache = new BoundedCache<String, String>(10, 0, 50);
+        cache.put("warmed", "w", 0);
+        cache.put("loaded", "l");
+        Thread.sleep(80);
+
+        assertEquals("w", cache.get("warmed"));
+        assertNull(cache.get("loaded"));
+    }
+
+    @Test
+    public void cleanUpDropsExpiredEntries() throws InterruptedException {
+        BoundedCache<String, String> cache = new BoundedCache<String, String>(10, 50, 0);
+        cache.put("alice", "a");
+        cache.put("bob", "b");
+        Thread.sleep(80);
+        cache.cleanUp();
+
+        assertEquals(0, cache.size());
+        assertEquals(2, cache.getExpirationCount());
+    }
+
+    @Test
+    public void invalidateAllEmptiesTheCache() {
+        BoundedCache<String, String> cache = new BoundedCache<String, String>(10, 0, 0);
+        cache.put("alice", "a");
+        cache.put("bob", "b");
+        cache.invalidateAll();
+
+        assertEquals(0, cache.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveMaxSize() {
+        new BoundedCache<String, String>(0, 0, 0);
+    }
+}
@@ -0,0 +1,129 @@
+package github.priyatam.springsecurity.cache;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class SingleFlightTest {
+
+    private final SingleFlight<String, Object> singleFlight = new SingleFlight<String, Object>();
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void concurrentCallersShareOneLoad() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        final Object value = new Object();
+        final Callable<Object> loader = new Callable<Object>() {
+            public Object call() throws Exception {
+                calls.incrementAndGet();
+                started.countDown();
+                release.await();
+                return value;
+            }
+        };
+
+        Future<Object> first = executor.submit(new Callable<Object>() {
+            public Object call() {
+                return singleFlight.load("alice", loader, 5, TimeUnit.SECONDS);
+            }
+        });
+        started.await();
+        List<Future<Object>> others = new ArrayList<Future<Object>>();
+        for (int i = 0; i < 3; i++) {
+            others.add(executor.submit(new Callable<Object>() {
+                public Object call() {
+                    return singleFlight.load("alice", loader, 5, TimeUnit.SECONDS);
+                }
+            }));
+        }
+        while (singleFlight.getSharedCount() < 3) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        assertSame(value, first.get());
+        for (Future<Object> other : others) {
+            assertSame(value, other.get());
+        }
+        assertEquals(1, calls.get());
+        assertEquals(1, singleFlight.getLoadCount());
+    }
+
+    @Test
+    public void sequentialCallersLoadAgain() {
+        AtomicInteger calls = new AtomicInteger();
+
+        singleFlight.load("alice", counting(calls), 1, TimeUnit.SECONDS);
+        singleFlight.load("alice", counting(calls), 1, TimeUnit.SECONDS);
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void runtimeExceptionOfTheLoaderIsRethrown() {
+        try {
+            singleFlight.load("alice", new Callable<Object>() {
+                public Object call() {
+                    throw new IllegalArgumentException("no such user");
+                }
+            }, 1, TimeUnit.SECONDS);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("no such user", e.getMessage());
+        }
+    }
+
+    @Test
+    public void waiterTimesOutOnASlowLoad() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Future<Object> first = executor.submit(new Callable<Object>() {
+            public Object call() {
+                return singleFlight.load("alice", new Callable<Object>() {
+                    public Object call() throws Exception {
+                        started.countDown();
+                        release.await();
+                        return "done";
+                    }
+                }, 1, TimeUnit.SECONDS);
+            }
+        });
+        started.await();
+
+        try {
+            singleFlight.load("alice", counting(new AtomicInteger()), 10, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (SingleFlight.LoadTimeoutException e) {
+            release.countDown();
+        }
+        assertEquals("done", first.get());
+    }
+
+    private static Callable<Object> counting(final AtomicInteger calls) {
+        return new Callable<Object>() {
+            public Object call() {
+                return calls.incrementAndGet();
+            }
+        };
+    }
+}
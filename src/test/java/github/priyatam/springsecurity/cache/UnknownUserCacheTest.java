@@ -0,0 +1,60 @@
+package github.priyatam.springsecurity.cache;
+
+import github.priyatam.springsecurity.domain.User;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UnknownUserCacheTest {
+
+    private UnknownUserCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new UnknownUserCache();
+        cache.initialize();
+    }
+
+    @After
+    public void tearDown() {
+        cache.destroy();
+    }
+
+    @Test
+    public void unknownUserIsSuppressed() {
+        cache.markUnknown("alice");
+
+        assertTrue(cache.isUnknown("alice"));
+        assertEquals(1, cache.getSuppressedCount());
+    }
+
+    @Test
+    public void otherSpellingsAreStillLookedUp() {
+        cache.markUnknown("ALICE");
+
+        assertFalse(cache.isUnknown("alice"));
+        assertFalse(cache.isUnknown(" ALICE"));
+        assertTrue(cache.isUnknown("ALICE"));
+    }
+
+    @Test
+    public void savedAccountIsNoLongerUnknown() {
+        cache.markUnknown("alice");
+        new UserCacheListener().accountSaved(new User("secret", "alice"));
+
+        assertFalse(cache.isUnknown("alice"));
+    }
+
+    @Test
+    public void destroyedCacheIsNoLongerNotified() {
+        cache.markUnknown("alice");
+        cache.destroy();
+        new UserCacheListener().accountSaved(new User("secret", "alice"));
+
+        assertTrue(cache.isUnknown("alice"));
+    }
+}
@@ -0,0 +1,89 @@
+package github.priyatam.springsecurity.domain;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RoleSetTest {
+
+    @Test
+    public void emptyRoleNamesGiveEmptySet() {
+        assertSame(RoleSet.EMPTY, RoleSet.of());
+        assertSame(RoleSet.EMPTY, RoleSet.of((List<String>) null));
+        assertTrue(RoleSet.EMPTY.isEmpty());
+        assertEquals(0, RoleSet.EMPTY.size());
+    }
+
+    @Test
+    public void containsIgnoresCase() {
+        RoleSet roles = RoleSet.of("ROLE_TEST_CSR", "ROLE_TEST_OPS");
+
+        assertTrue(roles.contains("role_test_csr"));
+        assertTrue(roles.contains("ROLE_TEST_OPS"));
+        assertFalse(roles.contains("ROLE_TEST_MANAGER"));
+        assertFalse(roles.contains("ROLE_TEST_NEVER_REGISTERED"));
+        assertFalse(roles.contains(-1));
+    }
+
+    @Test
+    public void duplicatesAreCountedOnce() {
+        RoleSet roles = RoleSet.of("ROLE_TEST_CSR", "role_test_csr");
+
+        assertEquals(1, roles.size());
+    }
+
+    @Test
+    public void containsAllAndIntersects() {
+        RoleSet all = RoleSet.of("ROLE_TEST_CSR", "ROLE_TEST_OPS", "ROLE_TEST_SUPERVISOR");
+        RoleSet some = RoleSet.of("ROLE_TEST_OPS", "ROLE_TEST_CSR");
+        RoleSet other = RoleSet.of("ROLE_TEST_MANAGER");
+
+        assertTrue(all.containsAll(some));
+        assertFalse(some.containsAll(all));
+        assertTrue(all.containsAll(RoleSet.EMPTY));
+        assertTrue(all.intersects(some));
+        assertFalse(all.intersects(other));
+        assertFalse(all.intersects(RoleSet.EMPTY));
+    }
+
+    @Test
+    public void setsSpanningSeveralWords() {
+        List<String> names = new ArrayList<String>();
+        for (int i = 0; i < 200; i++) {
+            names.add("ROLE_TEST_WIDE_" + i);
+        }
+        RoleSet wide = RoleSet.of(names);
+        RoleSet last = RoleSet.of("ROLE_TEST_WIDE_199");
+        RoleSet first = RoleSet.of("ROLE_TEST_WIDE_0");
+
+        assertEquals(200, wide.size());
+        assertTrue(wide.containsAll(last));
+        assertFalse(last.containsAll(wide));
+        assertTrue(last.intersects(wide));
+        assertFalse(last.intersects(first));
+    }
+
+    @Test
+    public void equalSetsHaveEqualHashCodes() {
+        RoleSet a = RoleSet.of("ROLE_TEST_CSR", "ROLE_TEST_OPS");
+        RoleSet b = RoleSet.of(Arrays.asList("role_test_ops", "ROLE_TEST_CSR"));
+
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        assertFalse(a.equals(RoleSet.of("ROLE_TEST_CSR")));
+    }
+
+    @Test
+    public void toRoleNamesReturnsNormalizedNames() {
+        RoleSet roles = RoleSet.of("role_test_csr");
+
+        assertEquals(Arrays.asList("ROLE_TEST_CSR"), roles.toRoleNames());
+    }
+}
@@ -0,0 +1,100 @@
+package github.priyatam.springsecurity.ldap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GroupMembershipIndexTest {
+
+    private static final String LDIF = ""
+            + "dn: ou=groups,dc=springframework,dc=org\n"
+            + "objectclass: organizationalUnit\n"
+            + "ou: groups\n"
+            + "\n"
+            + "dn: ou=people,dc=springframework,dc=org\n"
+            + "objectclass: organizationalUnit\n"
+            + "ou: people\n"
+            + "\n"
+            + "dn: cn=developers,ou=groups,dc=springframework,dc=org\n"
+            + "objectclass: groupOfNames\n"
+            + "cn: developers\n"
+            + "member: uid=rod,ou=people,dc=springframework,dc=org\n"
+            + "\n"
+            + "dn: cn=staff,ou=groups,dc=springframework,dc=org\n"
+            + "objectclass: groupOfNames\n"
+            + "cn: staff\n"
+            + "member: CN=Developers, OU=Groups, DC=springframework, DC=org\n"
+            + "member: uid=dianne,ou=people,dc=springframework,dc=org\n"
+            + "\n"
+            + "dn: cn=left,ou=groups,dc=springframework,dc=org\n"
+            + "objectclass: groupOfNames\n"
+            + "cn: left\n"
+            + "member: cn=right,ou=groups,dc=springframework,dc=org\n"
+            + "member: uid=scott,ou=people,dc=springframework,dc=org\n"
+            + "\n"
+            + "dn: cn=right,ou=groups,dc=springframework,dc=org\n"
+            + "objectclass: groupOfNames\n"
+            + "cn: right\n"
+            + "member: cn=left,ou=groups,dc=springframework,dc=org\n";
+
+    private File snapshotFile;
+    private GroupMembershipIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+        snapshotFile = File.createTempFile("groups", ".snapshot");
+        snapshotFile.delete();
+        SnapshotContextSource contextSource = new SnapshotContextSource("dc=springframework,dc=org");
+        contextSource.setLdif(new ByteArrayResource(LDIF.getBytes("UTF-8")));
+        contextSource.setSnapshotFile(snapshotFile);
+        contextSource.afterPropertiesSet();
+
+        index = new GroupMembershipIndex(contextSource, "ou=groups");
+        index.setRefreshInterval(0);
+        index.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() {
+        index.destroy();
+        snapshotFile.delete();
+    }
+
+    @Test
+    public void allGroupsAreLoaded() {
+        assertEquals(4, index.getGroupCount());
+    }
+
+    @Test
+    public void nestedGroupsAreResolved() {
+        assertEquals(new HashSet<String>(Arrays.asList("developers", "staff")),
+                index.getGroupNames("uid=rod,ou=people,dc=springframework,dc=org"));
+        assertEquals(new HashSet<String>(Arrays.asList("staff")),
+                index.getGroupNames("uid=dianne,ou=people,dc=springframework,dc=org"));
+    }
+
+    @Test
+    public void principalDnIsNormalized() {
+        assertEquals(new HashSet<String>(Arrays.asList("developers", "staff")),
+                index.getGroupNames("UID=Rod, OU=People, DC=springframework, DC=org"));
+    }
+
+    @Test
+    public void cyclesTerminate() {
+        assertEquals(new HashSet<String>(Arrays.asList("left", "right")),
+                index.getGroupNames("uid=scott,ou=people,dc=springframework,dc=org"));
+    }
+
+    @Test
+    public void unknownPrincipalHasNoGroup() {
+        assertTrue(index.getGroupNames("uid=nobody,ou=people,dc=springframework,dc=org").isEmpty());
+    }
+}
@@ -0,0 +1,131 @@
+package github.priyatam.springsecurity.ldap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.naming.directory.InvalidSearchFilterException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class SnapshotSearchFilterTest {
+
+    private static final String LDIF = ""
+            + "dn: uid=rod,ou=people,dc=springframework,dc=org\n"
+            + "objectclass: person\n"
+            + "cn: Rod Johnson\n"
+            + "uid: rod\n"
+            + "employeeNumber: 100\n"
+            + "\n"
+            + "dn: uid=dianne,ou=people,dc=springframework,dc=org\n"
+            + "objectclass: person\n"
+            + "cn: Dianne Emu\n"
+            + "uid: dianne\n"
+            + "employeeNumber: 200\n"
+            + "\n"
+            + "dn: uid=star*man,ou=people,dc=springframework,dc=org\n"
+            + "objectclass: person\n"
+            + "cn: Star (Man)\n"
+            + "uid: star*man\n"
+            + "\n"
+            + "dn: cn=developers,ou=groups,dc=springframework,dc=org\n"
+            + "objectclass: groupOfNames\n"
+            + "cn: developers\n"
+            + "member: uid=rod,ou=people,dc=springframework,dc=org\n"
+            + "member: UID=Dianne, OU=People, DC=springframework, DC=org\n";
+
+    private LdifSnapshot snapshot;
+
+    @Before
+    public void setUp() throws Exception {
+        snapshot = LdifSnapshot.parse(LDIF.getBytes("UTF-8"));
+    }
+
+    @Test
+    public void equalityIgnoresCase() throws Exception {
+        assertEquals(Arrays.asList("uid=rod"), matching("(uid=ROD)"));
+        assertEquals(Arrays.asList("uid=rod"), matching("uid=rod"));
+    }
+
+    @Test
+    public void dnValuesAreComparedNormalized() throws Exception {
+        assertEquals(Arrays.asList("cn=developers"), matching("(member=uid=dianne,ou=people,dc=springframework,dc=org)"));
+    }
+
+    @Test
+    public void presenceAndSubstring() throws Exception {
+        assertEquals(Arrays.asList("uid=rod", "uid=dianne"), matching("(employeeNumber=*)"));
+        assertEquals(Arrays.asList("uid=rod"), matching("(cn=rod*)"));
+        assertEquals(Arrays.asList("uid=dianne"), matching("(cn=*emu)"));
+        assertEquals(Arrays.asList("uid=rod", "uid=dianne"), matching("(cn=*n*n*)"));
+    }
+
+    @Test
+    public void ordering() throws Exception {
+        assertEquals(Arrays.asList("uid=dianne"), matching("(employeeNumber>=150)"));
+        assertEquals(Arrays.asList("uid=rod"), matching("(employeeNumber<=150)"));
+    }
+
+    @Test
+    public void andOrNot() throws Exception {
+        assertEquals(Arrays.asList("uid=rod"), matching("(&(objectclass=person)(employeeNumber<=150))"));
+        assertEquals(Arrays.asList("uid=rod", "uid=dianne"), matching("(|(uid=rod)(uid=dianne))"));
+        assertEquals(Arrays.asList("uid=star*man", "cn=developers"), matching("(!(employeeNumber=*))"));
+    }
+
+    @Test
+    public void escapedValues() throws Exception {
+        assertEquals(Arrays.asList("uid=star*man"), matching("(uid=star\\2aman)"));
+        assertEquals(Arrays.asList("uid=star*man"), matching("(cn=star \\28man\\29)"));
+    }
+
+    @Test
+    public void formatEscapesArguments() throws Exception {
+        String filter = SnapshotSearchFilter.format("(&(uid={0})(cn={1}))", new Object[]{"star*man", "a(b)\\"});
+
+        assertEquals("(&(uid=star\\2aman)(cn=a\\28b\\29\\5c))", filter);
+        assertEquals(Arrays.asList("uid=star*man"), matching(SnapshotSearchFilter.format("(uid={0})", new Object[]{"star*man"})));
+    }
+
+    @Test
+    public void indexedItemsSelectCandidates() throws Exception {
+        int[] rod = snapshot.lookup("uid", "rod");
+
+        assertArrayEquals(rod, SnapshotSearchFilter.parse("(uid=rod)").candidates(snapshot));
+        assertArrayEquals(rod, SnapshotSearchFilter.parse("(&(objectclass=person)(uid=rod))").candidates(snapshot));
+        assertEquals(2, SnapshotSearchFilter.parse("(|(uid=rod)(uid=dianne)(uid=rod))").candidates(snapshot).length);
+        assertNull(SnapshotSearchFilter.parse("(|(uid=rod)(cn=rod*))").candidates(snapshot));
+        assertNull(SnapshotSearchFilter.parse("(cn=Rod Johnson)").candidates(snapshot));
+    }
+
+    @Test
+    public void invalidFiltersAreRejected() {
+        for (String filter : new String[]{"(uid=rod", "(uid=rod))", "(=rod)", "(uid:dn:=rod)", "(uid=\\zz)", "(|(uid=a)x)"}) {
+            try {
+                SnapshotSearchFilter.parse(filter);
+                fail(filter);
+            } catch (InvalidSearchFilterException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * Returns the first RDN of the entries matching the filter, in snapshot order.
+     */
+    private List<String> matching(String filter) throws Exception {
+        SnapshotSearchFilter parsed = SnapshotSearchFilter.parse(filter);
+        List<String> rdns = new ArrayList<String>();
+        for (LdifSnapshot.Entry entry : snapshot.getEntries()) {
+            if (parsed.matches(entry)) {
+                rdns.add(entry.dn.substring(0, entry.dn.indexOf(',')));
+            }
+        }
+        return rdns;
+    }
+}
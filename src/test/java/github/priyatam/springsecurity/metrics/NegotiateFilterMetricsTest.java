@@ -0,0 +1,54 @@
+package github.priyatam.springsecurity.metrics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NegotiateFilterMetricsTest {
+
+    private static final String DOMAIN = "github.priyatam.springsecurity.test";
+
+    private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    private NegotiateFilterMetrics metrics;
+
+    @Before
+    public void setUp() throws Exception {
+        metrics = new NegotiateFilterMetrics();
+        metrics.setDomain(DOMAIN);
+        metrics.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        metrics.destroy();
+    }
+
+    @Test
+    public void registersTheOutcomesAndStageMBeans() throws Exception {
+        ObjectName outcomes = new ObjectName(DOMAIN + ":type=NegotiateFilter,name=outcomes");
+        metrics.success();
+        metrics.success();
+        metrics.unauthorized();
+
+        assertEquals(2L, server.getAttribute(outcomes, "SuccessCount"));
+        assertEquals(1L, server.getAttribute(outcomes, "UnauthorizedCount"));
+        assertEquals(NegotiateFilterMetrics.Stage.values().length + 1,
+                server.queryNames(new ObjectName(DOMAIN + ":type=NegotiateFilter,*"), null).size());
+    }
+
+    @Test
+    public void destroyUnregistersTheMBeans() throws Exception {
+        metrics.destroy();
+
+        assertTrue(server.queryNames(new ObjectName(DOMAIN + ":type=NegotiateFilter,*"), null).isEmpty());
+        assertFalse(server.isRegistered(new ObjectName(DOMAIN + ":type=NegotiateFilter,name=outcomes")));
+    }
+}
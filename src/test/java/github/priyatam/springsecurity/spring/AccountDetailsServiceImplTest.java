@@ -0,0 +1,50 @@
+package github.priyatam.springsecurity.spring;
+
+import github.priyatam.springsecurity.domain.User;
+import github.priyatam.springsecurity.utils.AccountContextSupport;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import javax.persistence.NoResultException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AccountDetailsServiceImplTest {
+
+    private final AccountContextSupport accountContextSupport = mock(AccountContextSupport.class);
+    private final AccountDetailsServiceImpl accountDetailsService = new AccountDetailsServiceImpl();
+
+    @Before
+    public void setUp() {
+        accountDetailsService.setAccountContextSupport(accountContextSupport);
+    }
+
+    @Test
+    public void loadsTheAccountThroughAccountContextSupport() {
+        when(accountContextSupport.obtainAccount("alice")).thenReturn(User.newSnapshot(1L, "alice", "secret",
+                Arrays.asList(10L), Arrays.asList("ROLE_USER")));
+
+        UserDetails userDetails = accountDetailsService.loadUserByUsername("alice");
+
+        assertEquals("alice", userDetails.getUsername());
+        assertEquals("secret", userDetails.getPassword());
+        assertEquals("ROLE_USER", userDetails.getAuthorities().iterator().next().getAuthority());
+    }
+
+    @Test(expected = UsernameNotFoundException.class)
+    public void unknownAccountIsNotFound() {
+        when(accountContextSupport.obtainAccount("mallory")).thenThrow(new NoResultException("No account mallory"));
+
+        accountDetailsService.loadUserByUsername("mallory");
+    }
+
+    @Test(expected = UsernameNotFoundException.class)
+    public void emptyLoginIsNotFound() {
+        accountDetailsService.loadUserByUsername(" ");
+    }
+}
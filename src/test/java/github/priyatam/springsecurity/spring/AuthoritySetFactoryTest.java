@@ -0,0 +1,142 @@
+package github.priyatam.springsecurity.spring;
+
+import org.junit.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.GrantedAuthorityImpl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class AuthoritySetFactoryTest {
+
+    @Test
+    public void sameRolesGiveTheSameSet() {
+        Collection<GrantedAuthority> first = AuthoritySetFactory.of(Arrays.asList("ROLE_USER", "ROLE_ADMIN"));
+        Collection<GrantedAuthority> second = AuthoritySetFactory.of(Arrays.asList("ROLE_USER", "ROLE_ADMIN"));
+
+        assertSame(first, second);
+    }
+
+    @Test
+    public void orderAndDuplicatesAreIgnored() {
+        Collection<GrantedAuthority> set = AuthoritySetFactory.of(Arrays.asList("ROLE_USER", "ROLE_ADMIN", "ROLE_USER"));
+
+        assertSame(set, AuthoritySetFactory.of(Arrays.asList("ROLE_ADMIN", "ROLE_USER")));
+        assertEquals(2, set.size());
+        assertEquals(Arrays.asList("ROLE_ADMIN", "ROLE_USER"), roles(set));
+    }
+
+    @Test
+    public void rolesAreCaseSensitive() {
+        Collection<GrantedAuthority> upper = AuthoritySetFactory.of(Arrays.asList("ROLE_USER"));
+        Collection<GrantedAuthority> lower = AuthoritySetFactory.of(Arrays.asList("role_user"));
+
+        assertFalse(upper.equals(lower));
+        assertFalse(upper.contains(new GrantedAuthorityImpl("role_user")));
+    }
+
+    @Test
+    public void containsAnyAuthorityOfTheRole() {
+        Collection<GrantedAuthority> set = AuthoritySetFactory.of(Arrays.asList("ROLE_A", "ROLE_B", "ROLE_C"));
+
+        assertTrue(set.contains(new GrantedAuthorityImpl("ROLE_A")));
+        assertTrue(set.contains(new GrantedAuthorityImpl("ROLE_C")));
+        assertFalse(set.contains(new GrantedAuthorityImpl("ROLE_D")));
+        assertFalse(set.contains("ROLE_A"));
+        assertFalse(set.contains(null));
+    }
+
+    @Test
+    public void equalsOtherSetsOfTheSameAuthorities() {
+        Collection<GrantedAuthority> set = AuthoritySetFactory.of(Arrays.asList("ROLE_A", "ROLE_B"));
+        Set<GrantedAuthority> hashSet = new HashSet<GrantedAuthority>();
+        hashSet.add(new GrantedAuthorityImpl("ROLE_B"));
+        hashSet.add(new GrantedAuthorityImpl("ROLE_A"));
+
+        assertTrue(set.equals(hashSet));
+        assertTrue(hashSet.equals(set));
+        assertEquals(hashSet.hashCode(), set.hashCode());
+    }
+
+    @Test
+    public void membersAreCanonicalAuthorities() {
+        Collection<GrantedAuthority> set = AuthoritySetFactory.of(Arrays.asList("ROLE_MEMBER"));
+
+        assertSame(AuthoritySetFactory.authority("ROLE_MEMBER"), set.iterator().next());
+        assertSame(AuthoritySetFactory.authority("ROLE_MEMBER"), AuthoritySetFactory.authority("ROLE_MEMBER"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void setIsImmutable() {
+        AuthoritySetFactory.of(Arrays.asList("ROLE_A")).add(new GrantedAuthorityImpl("ROLE_B"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void iteratorCannotRemove() {
+        Iterator<GrantedAuthority> iterator = AuthoritySetFactory.of(Arrays.asList("ROLE_A")).iterator();
+        iterator.next();
+        iterator.remove();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nullRoleIsRejected() {
+        AuthoritySetFactory.of(Arrays.asList("ROLE_A", null));
+    }
+
+    @Test
+    public void noRoleGivesTheEmptySet() {
+        assertSame(AuthoritySetFactory.EMPTY, AuthoritySetFactory.of(null));
+        assertSame(AuthoritySetFactory.EMPTY, AuthoritySetFactory.of(Collections.<String>emptyList()));
+        assertTrue(AuthoritySetFactory.EMPTY.isEmpty());
+    }
+
+    @Test
+    public void deserializedSetIsCanonical() throws Exception {
+        Collection<GrantedAuthority> set = AuthoritySetFactory.of(Arrays.asList("ROLE_A", "ROLE_SERIAL"));
+
+        assertSame(set, roundTrip(set));
+    }
+
+    @Test
+    public void tellsCanonicalSets() {
+        assertTrue(AuthoritySetFactory.isCanonical(AuthoritySetFactory.of(Arrays.asList("ROLE_A"))));
+        assertTrue(AuthoritySetFactory.isCanonical(AuthoritySetFactory.EMPTY));
+        assertFalse(AuthoritySetFactory.isCanonical(new HashSet<GrantedAuthority>()));
+    }
+
+    private static List<String> roles(Collection<GrantedAuthority> authorities) {
+        List<String> roles = new ArrayList<String>();
+        for (GrantedAuthority authority : authorities) {
+            roles.add(authority.getAuthority());
+        }
+        return roles;
+    }
+
+    private static Object roundTrip(Object object) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(object);
+        out.close();
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        try {
+            return in.readObject();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package github.priyatam.springsecurity.stateless;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+import javax.crypto.KeyGenerator;
+import javax.servlet.http.Cookie;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.security.KeyStore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SignedAuthorizationCookieTest {
+
+    private File keyStoreFile;
+    private SignedAuthorizationCookie authorizationCookie;
+
+    @Before
+    public void setUp() throws Exception {
+        keyStoreFile = File.createTempFile("authz-keys", ".jceks");
+        KeyStore keyStore = KeyStore.getInstance("JCEKS");
+        keyStore.load(null, null);
+        keyStore.setEntry("key-1", new KeyStore.SecretKeyEntry(KeyGenerator.getInstance("HmacSHA256").generateKey()),
+                new KeyStore.PasswordProtection("changeit".toCharArray()));
+        OutputStream out = new FileOutputStream(keyStoreFile);
+        try {
+            keyStore.store(out, "changeit".toCharArray());
+        } finally {
+            out.close();
+        }
+
+        SigningKeyRing keyRing = new SigningKeyRing();
+        keyRing.setKeyStoreFile(keyStoreFile);
+        keyRing.setKeyStorePassword("changeit");
+        keyRing.afterPropertiesSet();
+
+        authorizationCookie = new SignedAuthorizationCookie();
+        authorizationCookie.setKeyRing(keyRing);
+    }
+
+    @After
+    public void tearDown() {
+        keyStoreFile.delete();
+    }
+
+    @Test
+    public void issuedCookieVerifies() {
+        Cookie cookie = issue(new TestingAuthenticationToken("alice", null, "ROLE_USER", "ROLE_ADMIN"));
+
+        SignedCookieAuthentication authentication = authorizationCookie.verify(requestWith(cookie));
+
+        assertNotNull(authentication);
+        assertEquals("alice", authentication.getName());
+        assertEquals(2, authentication.getAuthorities().size());
+        assertTrue(authentication.isAuthenticated());
+    }
+
+    @Test
+    public void issuedCookieIsHttpOnlyAndSecure() {
+        Cookie cookie = issue(new TestingAuthenticationToken("alice", null, "ROLE_USER"));
+
+        assertTrue(cookie.isHttpOnly());
+        assertTrue(cookie.getSecure());
+        assertEquals(1800, cookie.getMaxAge());
+    }
+
+    @Test
+    public void tamperedCookieIsRejected() {
+        Cookie cookie = issue(new TestingAuthenticationToken("alice", null, "ROLE_USER"));
+        String[] parts = cookie.getValue().split("\\.");
+        Cookie forged = issue(new TestingAuthenticationToken("mallory", null, "ROLE_ADMIN"));
+        String[] forgedParts = forged.getValue().split("\\.");
+
+        Cookie tampered = new Cookie(cookie.getName(),
+                parts[0] + "." + parts[1] + "." + forgedParts[2] + "." + parts[3]);
+
+        assertNull(authorizationCookie.verify(requestWith(tampered)));
+    }
+
+    @Test
+    public void expiredCookieIsRejected() {
+        authorizationCookie.setMaxAge(-1);
+        Cookie cookie = issue(new TestingAuthenticationToken("alice", null, "ROLE_USER"));
+
+        assertNull(authorizationCookie.verify(requestWith(cookie)));
+    }
+
+    @Test
+    public void malformedCookieIsRejected() {
+        assertNull(authorizationCookie.verify(requestWith(new Cookie("AUTHZ", "v1.key-1.!!!.???"))));
+        assertNull(authorizationCookie.verify(requestWith(new Cookie("AUTHZ", "garbage"))));
+        assertNull(authorizationCookie.verify(new MockHttpServletRequest()));
+    }
+
+    @Test
+    public void unsupportedCharactersAreNotIssued() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        authorizationCookie.issue(response, new TestingAuthenticationToken("a|b", null, "ROLE_USER"));
+
+        assertEquals(0, response.getCookies().length);
+    }
+
+    @Test
+    public void logoutExpiresTheCookie() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        authorizationCookie.logout(new MockHttpServletRequest(), response, null);
+
+        Cookie cookie = response.getCookie("AUTHZ");
+        assertNotNull(cookie);
+        assertEquals(0, cookie.getMaxAge());
+        assertEquals("", cookie.getValue());
+        assertTrue(cookie.isHttpOnly());
+    }
+
+    private Cookie issue(Authentication authentication) {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        authorizationCookie.issue(response, authentication);
+        return response.getCookie("AUTHZ");
+    }
+
+    private static MockHttpServletRequest requestWith(Cookie cookie) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(new Cookie[]{cookie});
+        return request;
+    }
+}
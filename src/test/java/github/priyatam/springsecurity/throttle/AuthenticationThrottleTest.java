@@ -0,0 +1,62 @@
+package github.priyatam.springsecurity.throttle;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AuthenticationThrottleTest {
+
+    private AuthenticationThrottle throttle;
+
+    @Before
+    public void setUp() throws Exception {
+        throttle = new AuthenticationThrottle();
+        throttle.setAddressCapacity(5);
+        throttle.setAddressRefillPerSecond(0.001);
+        throttle.setPrincipalCapacity(2);
+        throttle.setPrincipalRefillPerSecond(0.001);
+        throttle.setJmxName("github.priyatam.springsecurity.test:type=AuthenticationThrottle");
+        throttle.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        throttle.destroy();
+    }
+
+    @Test
+    public void usernameIsRejectedAfterItsFailures() {
+        throttle.failure("10.0.0.1", "CORP\\Alice");
+        throttle.failure("10.0.0.2", "alice");
+
+        assertFalse(throttle.isAdmitted("10.0.0.3", "ALICE"));
+        assertTrue(throttle.isAdmitted("10.0.0.3", "bob"));
+        assertEquals(2, throttle.getFailureCount());
+    }
+
+    @Test
+    public void addressIsRejectedAfterItsFailures() {
+        for (int i = 0; i < 5; i++) {
+            throttle.failure("10.0.0.1", "user" + i);
+        }
+
+        assertFalse(throttle.isAdmitted("10.0.0.1", null));
+        assertTrue(throttle.isAdmitted("10.0.0.2", null));
+    }
+
+    @Test
+    public void successClearsTheUsernameButNotTheAddress() {
+        for (int i = 0; i < 5; i++) {
+            throttle.failure("10.0.0.1", "alice");
+        }
+
+        throttle.success("10.0.0.1", "alice");
+
+        assertTrue(throttle.isAdmitted("10.0.0.2", "alice"));
+        assertFalse(throttle.isAdmitted("10.0.0.1", "alice"));
+    }
+}
@@ -0,0 +1,88 @@
+package github.priyatam.springsecurity.throttle;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TokenBucketLimiterTest {
+
+    @Test
+    public void unknownKeyIsAdmittedWithoutBucket() {
+        TokenBucketLimiter limiter = new TokenBucketLimiter(3, 0.001, 60, 100, 4);
+
+        assertTrue(limiter.isAdmitted("10.0.0.1"));
+        assertEquals(0, limiter.size());
+        assertEquals(1, limiter.getAdmittedCount());
+    }
+
+    @Test
+    public void keyIsRejectedOnceItsBurstIsUsed() {
+        TokenBucketLimiter limiter = new TokenBucketLimiter(3, 0.001, 60, 100, 4);
+
+        assertTrue(limiter.consume("alice"));
+        assertTrue(limiter.consume("alice"));
+        assertTrue(limiter.consume("alice"));
+        assertFalse(limiter.consume("alice"));
+
+        assertFalse(limiter.isAdmitted("alice"));
+        assertTrue(limiter.isAdmitted("bob"));
+        assertEquals(1, limiter.getRejectedCount());
+    }
+
+    @Test
+    public void bucketRefillsOverTime() throws Exception {
+        TokenBucketLimiter limiter = new TokenBucketLimiter(1, 100, 60, 100, 4);
+        assertTrue(limiter.consume("alice"));
+        assertFalse(limiter.isAdmitted("alice"));
+
+        Thread.sleep(50);
+
+        assertTrue(limiter.isAdmitted("alice"));
+    }
+
+    @Test
+    public void resetRestoresTheBurst() {
+        TokenBucketLimiter limiter = new TokenBucketLimiter(1, 0.001, 60, 100, 4);
+        limiter.consume("alice");
+        assertFalse(limiter.isAdmitted("alice"));
+
+        limiter.reset("alice");
+
+        assertTrue(limiter.isAdmitted("alice"));
+        assertEquals(0, limiter.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedBucketIsEvictedPastTheBound() {
+        TokenBucketLimiter limiter = new TokenBucketLimiter(1, 0.001, 60, 2, 1);
+        limiter.consume("a");
+        limiter.consume("b");
+        limiter.isAdmitted("a");
+
+        limiter.consume("c");
+
+        assertEquals(2, limiter.size());
+        assertEquals(1, limiter.getEvictedCount());
+        assertTrue(limiter.isAdmitted("b"));
+        assertFalse(limiter.isAdmitted("a"));
+    }
+
+    @Test
+    public void idleBucketsAreEvicted() throws Exception {
+        TokenBucketLimiter limiter = new TokenBucketLimiter(1, 1000, 0, 100, 1);
+        limiter.consume("a");
+
+        Thread.sleep(10);
+        limiter.consume("b");
+
+        assertEquals(1, limiter.size());
+        assertEquals(1, limiter.getEvictedCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityBelowOneIsRejected() {
+        new TokenBucketLimiter(0.5, 1, 60, 100, 4);
+    }
+}
@@ -0,0 +1,102 @@
+package github.priyatam.springsecurity.utils;
+
+import github.priyatam.springsecurity.cache.AccountCache;
+import github.priyatam.springsecurity.cache.UnknownUserCache;
+import github.priyatam.springsecurity.domain.AuthorizationSnapshot;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.persistence.EntityManager;
+import javax.persistence.FlushModeType;
+import javax.persistence.NoResultException;
+import javax.persistence.TypedQuery;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AccountContextSupportTest {
+
+    private final AccountContextSupport accountContextSupport = new AccountContextSupport();
+    private final AccountCache accountCache = new AccountCache();
+    private final UnknownUserCache unknownUserCache = new UnknownUserCache();
+    private EntityManager entityManager;
+    private TypedQuery<Object[]> query;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        accountCache.initialize();
+        unknownUserCache.initialize();
+        entityManager = mock(EntityManager.class);
+        query = mock(TypedQuery.class);
+        when(entityManager.createNamedQuery("User.SNAPSHOT_BY_USERNAME", Object[].class)).thenReturn(query);
+        when(query.setParameter(anyString(), anyString())).thenReturn(query);
+        when(query.setFlushMode(FlushModeType.COMMIT)).thenReturn(query);
+        when(query.setHint(anyString(), eq(Boolean.TRUE))).thenReturn(query);
+
+        ReflectionTestUtils.setField(accountContextSupport, "entityManager", entityManager);
+        ReflectionTestUtils.setField(accountContextSupport, "accountCache", accountCache);
+        ReflectionTestUtils.setField(accountContextSupport, "unknownUserCache", unknownUserCache);
+    }
+
+    @After
+    public void tearDown() {
+        unknownUserCache.destroy();
+    }
+
+    @Test
+    public void authorizationMissFillsTheAccountCache() {
+        when(query.setParameter("username", "alice")).thenReturn(query);
+        when(query.getResultList()).thenReturn(Arrays.asList(
+                new Object[]{"alice", "ROLE_USER", "secret", 1L, 10L},
+                new Object[]{"alice", "ROLE_ADMIN", "secret", 1L, 11L}));
+
+        AuthorizationSnapshot first = accountContextSupport.obtainAuthorization("alice");
+        AuthorizationSnapshot second = accountContextSupport.obtainAuthorization("alice");
+
+        assertEquals(Arrays.asList("ROLE_USER", "ROLE_ADMIN"), first.getRoleNames());
+        assertEquals(first.getRoleNames(), second.getRoleNames());
+        assertNotNull(accountCache.get("alice"));
+        assertEquals(1, accountCache.getLoadCount());
+        verify(query, times(1)).getResultList();
+    }
+
+    @Test
+    public void unknownUserIsRememberedOnAuthorizationMiss() {
+        when(query.getResultList()).thenReturn(new ArrayList<Object[]>());
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                accountContextSupport.obtainAuthorization("mallory");
+                fail();
+            } catch (NoResultException e) {
+                // expected
+            }
+        }
+
+        assertTrue(unknownUserCache.isUnknown("mallory"));
+        verify(query, times(1)).getResultList();
+    }
+
+    @Test
+    public void accountWithoutRolesHasNoRoleNames() {
+        List<Object[]> rows = new ArrayList<Object[]>();
+        rows.add(new Object[]{"bob", null, "secret", 2L, null});
+        when(query.getResultList()).thenReturn(rows);
+
+        assertTrue(accountContextSupport.obtainAuthorization("bob").getRoleNames().isEmpty());
+    }
+}
@@ -0,0 +1,170 @@
+package github.priyatam.springsecurity.utils;
+
+import github.priyatam.springsecurity.domain.Role;
+import github.priyatam.springsecurity.domain.User;
+import org.hibernate.ejb.Ejb3Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.TypedQuery;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BlockingCallExecutorTest {
+
+    private BlockingCallExecutor executor;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = new BlockingCallExecutor();
+        executor.setMode("pool");
+        executor.setPoolThreads(2);
+        executor.setDirectoryTimeout(100);
+        executor.setJmxName("github.priyatam.springsecurity.test:type=BlockingCallExecutor");
+        executor.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.destroy();
+    }
+
+    @Test
+    public void databaseCallsRunOnTheCallingThread() throws Exception {
+        Thread thread = executor.call(BlockingCallExecutor.Kind.DATABASE, new CurrentThread());
+
+        assertSame(Thread.currentThread(), thread);
+        assertEquals(1, executor.getDatabaseCallCount());
+    }
+
+    @Test
+    public void directoryCallsAreOffloaded() throws Exception {
+        Thread thread = executor.call(BlockingCallExecutor.Kind.DIRECTORY, new CurrentThread());
+
+        assertNotSame(Thread.currentThread(), thread);
+        assertEquals(1, executor.getDirectoryCallCount());
+    }
+
+    @Test
+    public void slowDirectoryCallsTimeOut() throws Exception {
+        try {
+            executor.call(BlockingCallExecutor.Kind.DIRECTORY, new Callable<Object>() {
+                public Object call() throws Exception {
+                    Thread.sleep(1000);
+                    return null;
+                }
+            });
+            fail();
+        } catch (BlockingCallExecutor.BlockingCallTimeoutException e) {
+            assertEquals(1, executor.getDirectoryTimeoutCount());
+        }
+    }
+
+    @Test
+    public void timedOutDirectoryCallHoldsItsPermitUntilItReturns() throws Exception {
+        BlockingCallExecutor capped = new BlockingCallExecutor();
+        capped.setMode("pool");
+        capped.setPoolThreads(2);
+        capped.setDirectoryTimeout(50);
+        capped.setMaxConcurrentDirectoryCalls(1);
+        capped.setDirectoryPermitWait(10);
+        capped.setJmxName("github.priyatam.springsecurity.test:type=CappedBlockingCallExecutor");
+        capped.afterPropertiesSet();
+        final CountDownLatch domainController = new CountDownLatch(1);
+        try {
+            try {
+                capped.call(BlockingCallExecutor.Kind.DIRECTORY, new Callable<Object>() {
+                    public Object call() {
+                        // like a native call, not interruptible
+                        while (true) {
+                            try {
+                                domainController.await();
+                                return null;
+                            } catch (InterruptedException e) {
+                                // keep waiting
+                            }
+                        }
+                    }
+                });
+                fail();
+            } catch (BlockingCallExecutor.BlockingCallTimeoutException e) {
+                assertEquals(1, capped.getDirectoryTimeoutCount());
+            }
+
+            try {
+                capped.call(BlockingCallExecutor.Kind.DIRECTORY, new CurrentThread());
+                fail();
+            } catch (BlockingCallExecutor.BlockingCallTimeoutException e) {
+                assertEquals(1, capped.getDirectoryRejectedCount());
+            }
+
+            domainController.countDown();
+            capped.setDirectoryPermitWait(1000);
+            assertNotSame(Thread.currentThread(), capped.call(BlockingCallExecutor.Kind.DIRECTORY, new CurrentThread()));
+        } finally {
+            domainController.countDown();
+            capped.destroy();
+        }
+    }
+
+    @Test
+    public void failuresAreCountedAndRethrown() throws Exception {
+        try {
+            executor.call(BlockingCallExecutor.Kind.DATABASE, new Callable<Object>() {
+                public Object call() {
+                    throw new IllegalStateException("down");
+                }
+            });
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals(1, executor.getDatabaseFailureCount());
+        }
+    }
+
+    @Test
+    public void databaseTimeoutIsAcceptedByHibernate() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("hibernate.connection.driver_class", "org.h2.Driver");
+        properties.setProperty("hibernate.connection.url", "jdbc:h2:mem:blocking-call-executor");
+        properties.setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        properties.setProperty("hibernate.hbm2ddl.auto", "create");
+        // User is a reserved word in H2
+        properties.setProperty("hibernate.globally_quoted_identifiers", "true");
+        properties.setProperty("hibernate.cache.use_second_level_cache", "false");
+        EntityManagerFactory entityManagerFactory = new Ejb3Configuration()
+                .addAnnotatedClass(User.class).addAnnotatedClass(Role.class)
+                .addProperties(properties).buildEntityManagerFactory();
+        try {
+            final EntityManager entityManager = entityManagerFactory.createEntityManager();
+            List<User> users = executor.call(BlockingCallExecutor.Kind.DATABASE, new Callable<List<User>>() {
+                public List<User> call() {
+                    TypedQuery<User> query = entityManager.createNamedQuery("User.FIND_BY_USERNAME", User.class);
+                    return executor.applyDatabaseTimeout(query).setParameter("username", "alice").getResultList();
+                }
+            });
+
+            assertTrue(users.isEmpty());
+            assertEquals(0, executor.getDatabaseFailureCount());
+            entityManager.close();
+        } finally {
+            entityManagerFactory.close();
+        }
+    }
+
+    private static class CurrentThread implements Callable<Thread> {
+        public Thread call() {
+            return Thread.currentThread();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package github.priyatam.springsecurity.utils;
+
+import github.priyatam.springsecurity.domain.AccountContext;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpSession;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LazyAccountContextTest {
+
+    private final AccountContextSupport accountContextSupport = new AccountContextSupport();
+
+    @After
+    public void tearDown() {
+        accountContextSupport.resetContext();
+    }
+
+    @Test
+    public void sessionIdIsCapturedUpFront() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockHttpSession session = new MockHttpSession();
+        request.setSession(session);
+
+        accountContextSupport.processLazyAccountContext(request);
+        session.invalidate();
+
+        assertEquals(session.getId(), AccountContext.getAccountContext().getSessionId());
+    }
+
+    @Test
+    public void noSessionIsCreated() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+
+        accountContextSupport.processLazyAccountContext(request);
+
+        assertNull(AccountContext.getAccountContext().getSessionId());
+        assertNull(request.getSession(false));
+    }
+
+    @Test
+    public void anonymousContextHasNoRolesNorAccount() {
+        accountContextSupport.processLazyAccountContext(new MockHttpServletRequest());
+
+        AccountContext accountContext = AccountContext.getAccountContext();
+        assertNull(accountContext.getUsername());
+        assertNull(accountContext.getAccount());
+    }
+}
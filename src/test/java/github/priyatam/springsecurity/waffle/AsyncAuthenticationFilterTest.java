@@ -0,0 +1,357 @@
+package github.priyatam.springsecurity.waffle;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import waffle.servlet.spi.SecurityFilterProviderCollection;
+import waffle.windows.auth.IWindowsIdentity;
+import waffle.windows.auth.PrincipalFormat;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.Part;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AsyncAuthenticationFilterTest {
+
+    private final SecurityFilterProviderCollection provider = mock(SecurityFilterProviderCollection.class);
+    private final CustomAuthenticationTokenFactory tokenFactory = mock(CustomAuthenticationTokenFactory.class);
+    private final IWindowsIdentity windowsIdentity = mock(IWindowsIdentity.class);
+    private final CustomAuthenticationToken token = mock(CustomAuthenticationToken.class);
+    private final CountDownLatch domainController = new CountDownLatch(1);
+    private AsyncAuthenticationFilter filter;
+
+    @Before
+    public void setUp() throws Exception {
+        when(provider.isSecurityPackageSupported("Negotiate")).thenReturn(true);
+        when(windowsIdentity.getFqn()).thenReturn(CustomAuthenticationToken.LDAP_DOMAIN + "\\alice");
+        when(tokenFactory.createToken(any(IWindowsIdentity.class), any(PrincipalFormat.class),
+                any(PrincipalFormat.class))).thenReturn(token);
+
+        filter = new AsyncAuthenticationFilter();
+        filter.setProvider(provider);
+        filter.setTokenFactory(tokenFactory);
+        filter.setHandshakeThreads(1);
+        filter.setHandshakeQueueSize(1);
+        filter.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() {
+        domainController.countDown();
+        filter.destroy();
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void successfulLoginIsDispatchedBackToTheContainer() throws Exception {
+        when(provider.doFilter(any(HttpServletRequest.class), any(HttpServletResponse.class))).thenReturn(windowsIdentity);
+        AsyncRequest request = negotiate();
+        MockHttpServletResponse response = request.response;
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request, response, chain);
+        request.asyncContext.await();
+
+        assertEquals(1, request.asyncContext.dispatches);
+        assertNull(chain.getRequest());
+
+        // the ASYNC dispatch publishes the authentication and resumes the chain
+        filter.doFilter(request, response, chain);
+
+        assertSame(token, SecurityContextHolder.getContext().getAuthentication());
+        assertSame(request, chain.getRequest());
+        assertEquals(0, request.asyncContext.completions);
+    }
+
+    @Test
+    public void handshakeToContinueIsReplayedOnTheResponse() throws Exception {
+        when(provider.doFilter(any(HttpServletRequest.class), any(HttpServletResponse.class))).thenAnswer(
+                new Answer<IWindowsIdentity>() {
+                    public IWindowsIdentity answer(InvocationOnMock invocation) throws Exception {
+                        HttpServletResponse response = (HttpServletResponse) invocation.getArguments()[1];
+                        response.addHeader("WWW-Authenticate", "Negotiate token");
+                        response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+                        response.flushBuffer();
+                        return null;
+                    }
+                });
+        AsyncRequest request = negotiate();
+        MockHttpServletResponse response = request.response;
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request, response, chain);
+        request.asyncContext.await();
+
+        assertEquals(1, request.asyncContext.completions);
+        assertEquals(0, request.asyncContext.dispatches);
+        assertEquals(HttpServletResponse.SC_UNAUTHORIZED, response.getStatus());
+        assertEquals("Negotiate token", response.getHeader("WWW-Authenticate"));
+        assertNull(chain.getRequest());
+    }
+
+    @Test
+    public void failureIsRethrownOnTheDispatch() throws Exception {
+        when(provider.doFilter(any(HttpServletRequest.class), any(HttpServletResponse.class))).thenReturn(windowsIdentity);
+        when(tokenFactory.createToken(any(IWindowsIdentity.class), any(PrincipalFormat.class),
+                any(PrincipalFormat.class))).thenThrow(new IllegalStateException("broken"));
+        AsyncRequest request = negotiate();
+        MockHttpServletResponse response = request.response;
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request, response, chain);
+        request.asyncContext.await();
+        try {
+            filter.doFilter(request, response, chain);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("broken", e.getMessage());
+        }
+        assertNull(chain.getRequest());
+    }
+
+    @Test
+    public void timedOutHandshakeGets503AndItsOutcomeIsDiscarded() throws Exception {
+        final CountDownLatch handshakeStarted = new CountDownLatch(1);
+        final CountDownLatch handshakeDone = new CountDownLatch(1);
+        when(provider.doFilter(any(HttpServletRequest.class), any(HttpServletResponse.class))).thenAnswer(
+                new Answer<IWindowsIdentity>() {
+                    public IWindowsIdentity answer(InvocationOnMock invocation) throws Exception {
+                        handshakeStarted.countDown();
+                        try {
+                            domainController.await();
+                            return windowsIdentity;
+                        } finally {
+                            handshakeDone.countDown();
+                        }
+                    }
+                });
+        AsyncRequest request = negotiate();
+        MockHttpServletResponse response = request.response;
+
+        filter.doFilter(request, response, new MockFilterChain());
+        assertTrue(handshakeStarted.await(5, TimeUnit.SECONDS));
+        request.asyncContext.timeout();
+
+        assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, response.getStatus());
+        assertEquals("1", response.getHeader("Retry-After"));
+        assertEquals(1, request.asyncContext.completions);
+
+        // the cancelled handshake ends, its 401 is not written
+        assertTrue(handshakeDone.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        assertEquals(0, request.asyncContext.dispatches);
+        assertEquals(1, request.asyncContext.completions);
+        assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, response.getStatus());
+    }
+
+    @Test
+    public void fullPoolGets503() throws Exception {
+        when(provider.doFilter(any(HttpServletRequest.class), any(HttpServletResponse.class))).thenAnswer(
+                new Answer<IWindowsIdentity>() {
+                    public IWindowsIdentity answer(InvocationOnMock invocation) throws Exception {
+                        domainController.await();
+                        return null;
+                    }
+                });
+
+        // one running, one queued
+        for (int i = 0; i < 2; i++) {
+            AsyncRequest pending = negotiate();
+            filter.doFilter(pending, pending.response, new MockFilterChain());
+        }
+
+        AsyncRequest request = negotiate();
+        MockHttpServletResponse response = request.response;
+        filter.doFilter(request, response, new MockFilterChain());
+
+        assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, response.getStatus());
+        assertEquals(1, request.asyncContext.completions);
+    }
+
+    @Test
+    public void requestWithoutAsyncSupportIsAuthenticatedOnTheCallingThread() throws Exception {
+        when(provider.doFilter(any(HttpServletRequest.class), any(HttpServletResponse.class))).thenReturn(windowsIdentity);
+        AsyncRequest request = negotiate();
+        request.asyncSupported = false;
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request, request.response, chain);
+
+        assertNull(request.asyncContext);
+        assertSame(token, SecurityContextHolder.getContext().getAuthentication());
+        assertSame(request, chain.getRequest());
+    }
+
+    private static AsyncRequest negotiate() {
+        AsyncRequest request = new AsyncRequest();
+        request.addHeader("Authorization", "Negotiate dG9rZW4=");
+        return request;
+    }
+
+    /**
+     * Servlet 3 request on top of the Servlet 2.5 mock of spring-test 3.0, with its response.
+     */
+    private static class AsyncRequest extends MockHttpServletRequest {
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        boolean asyncSupported = true;
+        TestAsyncContext asyncContext;
+
+        public AsyncContext startAsync() {
+            return startAsync(this, response);
+        }
+
+        public AsyncContext startAsync(ServletRequest request, ServletResponse response) {
+            asyncContext = new TestAsyncContext(request, response);
+            return asyncContext;
+        }
+
+        public boolean isAsyncStarted() {
+            return asyncContext != null;
+        }
+
+        public boolean isAsyncSupported() {
+            return asyncSupported;
+        }
+
+        public AsyncContext getAsyncContext() {
+            return asyncContext;
+        }
+
+        public DispatcherType getDispatcherType() {
+            return DispatcherType.REQUEST;
+        }
+
+        public ServletContext getServletContext() {
+            return null;
+        }
+
+        public boolean authenticate(HttpServletResponse response) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void login(String username, String password) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void logout() {
+            throw new UnsupportedOperationException();
+        }
+
+        public Collection<Part> getParts() {
+            throw new UnsupportedOperationException();
+        }
+
+        public Part getPart(String name) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Records dispatches and completions; the response is the one passed to the filter.
+     */
+    private static class TestAsyncContext implements AsyncContext {
+        private final ServletRequest request;
+        private final ServletResponse response;
+        private final List<AsyncListener> listeners = new ArrayList<AsyncListener>();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private long timeout;
+        volatile int dispatches;
+        volatile int completions;
+
+        TestAsyncContext(ServletRequest request, ServletResponse response) {
+            this.request = request;
+            this.response = response;
+        }
+
+        void await() throws InterruptedException {
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        }
+
+        void timeout() throws Exception {
+            for (AsyncListener listener : listeners) {
+                listener.onTimeout(new AsyncEvent(this));
+            }
+        }
+
+        public ServletRequest getRequest() {
+            return request;
+        }
+
+        public ServletResponse getResponse() {
+            return response;
+        }
+
+        public boolean hasOriginalRequestAndResponse() {
+            return true;
+        }
+
+        public void dispatch() {
+            dispatches++;
+            done.countDown();
+        }
+
+        public void dispatch(String path) {
+            dispatch();
+        }
+
+        public void dispatch(ServletContext context, String path) {
+            dispatch();
+        }
+
+        public void complete() {
+            completions++;
+            done.countDown();
+        }
+
+        public void start(Runnable run) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void addListener(AsyncListener listener) {
+            listeners.add(listener);
+        }
+
+        public void addListener(AsyncListener listener, ServletRequest request, ServletResponse response) {
+            listeners.add(listener);
+        }
+
+        public <T extends AsyncListener> T createListener(Class<T> type) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void setTimeout(long timeout) {
+            this.timeout = timeout;
+        }
+
+        public long getTimeout() {
+            return timeout;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package github.priyatam.springsecurity.waffle;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.codec.Base64;
+import org.springframework.security.core.context.SecurityContextHolder;
+import waffle.servlet.spi.SecurityFilterProviderCollection;
+import waffle.windows.auth.IWindowsIdentity;
+import waffle.windows.auth.PrincipalFormat;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CustomAuthenticationFilterTest {
+
+    private final SecurityFilterProviderCollection provider = mock(SecurityFilterProviderCollection.class);
+    private final CustomAuthenticationTokenFactory tokenFactory = mock(CustomAuthenticationTokenFactory.class);
+    private final IWindowsIdentity windowsIdentity = mock(IWindowsIdentity.class);
+    private final CustomAuthenticationToken newToken = mock(CustomAuthenticationToken.class);
+    private final CustomAuthenticationFilter filter = new CustomAuthenticationFilter();
+
+    @Before
+    public void setUp() throws Exception {
+        when(provider.isSecurityPackageSupported("Negotiate")).thenReturn(true);
+        when(provider.isSecurityPackageSupported("Basic")).thenReturn(true);
+        when(provider.doFilter(any(HttpServletRequest.class), any(HttpServletResponse.class))).thenReturn(windowsIdentity);
+        when(windowsIdentity.getFqn()).thenReturn(CustomAuthenticationToken.LDAP_DOMAIN + "\\alice");
+        when(tokenFactory.createToken(any(IWindowsIdentity.class), any(PrincipalFormat.class),
+                any(PrincipalFormat.class))).thenReturn(newToken);
+
+        filter.setProvider(provider);
+        filter.setTokenFactory(tokenFactory);
+        filter.setAuthenticationMaxAge(60);
+        filter.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void recentTokenIsReused() throws Exception {
+        CustomAuthenticationToken existing = existingToken("alice", 10);
+        MockHttpServletRequest request = request("Negotiate dG9rZW4=");
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        verify(provider, never()).doFilter(any(HttpServletRequest.class), any(HttpServletResponse.class));
+        assertSame(existing, SecurityContextHolder.getContext().getAuthentication());
+        assertSame(request, chain.getRequest());
+    }
+
+    @Test
+    public void tokenOlderThanTheMaxAgeIsRenegotiated() throws Exception {
+        existingToken("alice", 120);
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request("Negotiate dG9rZW4="), new MockHttpServletResponse(), chain);
+
+        verify(provider).doFilter(any(HttpServletRequest.class), any(HttpServletResponse.class));
+        assertSame(newToken, SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    @Test
+    public void noMaxAgeAlwaysRenegotiates() throws Exception {
+        filter.setAuthenticationMaxAge(0);
+        existingToken("alice", 0);
+
+        filter.doFilter(request("Negotiate dG9rZW4="), new MockHttpServletResponse(), new MockFilterChain());
+
+        verify(provider).doFilter(any(HttpServletRequest.class), any(HttpServletResponse.class));
+        assertSame(newToken, SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    @Test
+    public void basicHeaderOfTheSameUserReusesTheToken() throws Exception {
+        CustomAuthenticationToken existing = existingToken("alice", 10);
+
+        filter.doFilter(request(basic("DOMAIN\\alice:secret")), new MockHttpServletResponse(), new MockFilterChain());
+
+        verify(provider, never()).doFilter(any(HttpServletRequest.class), any(HttpServletResponse.class));
+        assertSame(existing, SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    @Test
+    public void basicHeaderOfAnotherUserIsRenegotiated() throws Exception {
+        existingToken("alice", 10);
+
+        filter.doFilter(request(basic("bob:secret")), new MockHttpServletResponse(), new MockFilterChain());
+
+        verify(provider).doFilter(any(HttpServletRequest.class), any(HttpServletResponse.class));
+        assertSame(newToken, SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    /**
+     * Make current an authenticated token of the passed user, created the passed number of seconds ago.
+     */
+    private static CustomAuthenticationToken existingToken(String username, long ageSeconds) {
+        CustomAuthenticationToken token = mock(CustomAuthenticationToken.class);
+        when(token.isAuthenticated()).thenReturn(true);
+        when(token.getName()).thenReturn(username);
+        when(token.getAuthenticationTime()).thenReturn(System.currentTimeMillis() - ageSeconds * 1000);
+        SecurityContextHolder.getContext().setAuthentication(token);
+        return token;
+    }
+
+    private static MockHttpServletRequest request(String authorization) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/app/home");
+        request.addHeader("Authorization", authorization);
+        return request;
+    }
+
+    private static String basic(String credentials) throws Exception {
+        return "Basic " + new String(Base64.encode(credentials.getBytes("UTF-8")), "UTF-8");
+    }
+}
@@ -0,0 +1,56 @@
+package github.priyatam.springsecurity.waffle;
+
+import github.priyatam.springsecurity.domain.AuthorizationSnapshot;
+import github.priyatam.springsecurity.utils.AccountContextSupport;
+import github.priyatam.springsecurity.utils.BlockingCallExecutor;
+import org.junit.Test;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import javax.persistence.NoResultException;
+import javax.persistence.QueryTimeoutException;
+import java.util.Arrays;
+import java.util.Collection;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CustomAuthenticationTokenTest {
+
+    private final AccountContextSupport accountContextSupport = mock(AccountContextSupport.class);
+
+    @Test
+    public void loadsTheRolesOfTheAccount() {
+        when(accountContextSupport.obtainAuthorization("alice"))
+                .thenReturn(new AuthorizationSnapshot("alice", Arrays.asList("ROLE_USER")));
+
+        Collection<GrantedAuthority> authorities = CustomAuthenticationToken.loadAuthorities(accountContextSupport, "alice");
+
+        assertEquals(1, authorities.size());
+        assertEquals("ROLE_USER", authorities.iterator().next().getAuthority());
+    }
+
+    @Test(expected = UsernameNotFoundException.class)
+    public void unknownAccountIsNotFound() {
+        when(accountContextSupport.obtainAuthorization("mallory")).thenThrow(new NoResultException("No account"));
+
+        CustomAuthenticationToken.loadAuthorities(accountContextSupport, "mallory");
+    }
+
+    @Test(expected = AuthenticationServiceException.class)
+    public void queryTimeoutIsAServiceFailure() {
+        when(accountContextSupport.obtainAuthorization("alice")).thenThrow(new QueryTimeoutException("slow"));
+
+        CustomAuthenticationToken.loadAuthorities(accountContextSupport, "alice");
+    }
+
+    @Test(expected = AuthenticationServiceException.class)
+    public void rejectedCallIsAServiceFailure() {
+        when(accountContextSupport.obtainAuthorization("alice"))
+                .thenThrow(new BlockingCallExecutor.BlockingCallTimeoutException("saturated"));
+
+        CustomAuthenticationToken.loadAuthorities(accountContextSupport, "alice");
+    }
+}